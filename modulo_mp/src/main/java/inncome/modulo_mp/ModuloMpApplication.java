@@ -2,8 +2,10 @@ package inncome.modulo_mp;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class ModuloMpApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,126 @@
+package inncome.modulo_mp.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * DataSource que publica el tamaño real de los batches de escritura en {@code mp.db.batch.size}
+ * (tags {@code operation} y {@code table}).
+ *
+ * <p>Cuenta los {@code addBatch()} de cada {@link PreparedStatement} hasta su
+ * {@code executeBatch()}, asi que mide lo que efectivamente viaja por JDBC, ya sea desde
+ * Hibernate ({@code hibernate.jdbc.batch_size}) o desde {@code JdbcTemplate.batchUpdate}. Un
+ * {@code executeUpdate()} suelto cuenta como un batch de 1, para ver los caminos que todavia
+ * escriben fila por fila.</p>
+ *
+ * @see JdbcBatchMetricsConfig
+ */
+public class BatchMetricsDataSource extends DelegatingDataSource {
+
+    private static final Pattern WRITE = Pattern.compile(
+            "^\\s*(insert\\s+into|update|delete\\s+from)\\s+`?([\\w.]+)", Pattern.CASE_INSENSITIVE);
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    private final Map<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    public BatchMetricsDataSource(DataSource target, ObjectProvider<MeterRegistry> meterRegistry) {
+        super(target);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(super.getConnection(username, password));
+    }
+
+    private Connection wrap(Connection connection) {
+        return proxy(Connection.class, connection, (proxy, method, args) -> {
+            Object result = invoke(proxy, connection, method, args);
+            if (result instanceof PreparedStatement statement && method.getName().equals("prepareStatement")) {
+                return wrap(statement, (String) args[0]);
+            }
+            return result;
+        });
+    }
+
+    private PreparedStatement wrap(PreparedStatement statement, String sql) {
+        Matcher matcher = WRITE.matcher(sql);
+        if (!matcher.find()) {
+            return statement; // Lecturas: sin proxy
+        }
+        DistributionSummary summary = summary(matcher.group(1), matcher.group(2));
+        int[] pending = new int[1]; // Un statement no se comparte entre hilos
+
+        return proxy(PreparedStatement.class, statement, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "addBatch" -> pending[0]++;
+                case "clearBatch" -> pending[0] = 0;
+                case "executeBatch", "executeLargeBatch" -> {
+                    if (pending[0] > 0) {
+                        summary.record(pending[0]);
+                    }
+                    pending[0] = 0;
+                }
+                case "executeUpdate", "executeLargeUpdate" -> summary.record(1);
+                default -> {
+                }
+            }
+            return invoke(proxy, statement, method, args);
+        });
+    }
+
+    private DistributionSummary summary(String operation, String table) {
+        String op = operation.toLowerCase(Locale.ROOT).split("\\s+")[0];
+        String name = table.toLowerCase(Locale.ROOT);
+        return summaries.computeIfAbsent(op + ":" + name, key -> DistributionSummary.builder("mp.db.batch.size")
+                .description("Filas por round trip de escritura JDBC")
+                .tag("operation", op)
+                .tag("table", name)
+                .register(meterRegistry.getObject()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object invoke(Object proxy, Object target, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals" -> {
+                return proxy == args[0];
+            }
+            case "hashCode" -> {
+                return System.identityHashCode(proxy);
+            }
+            default -> {
+                try {
+                    return method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getTargetException();
+                }
+            }
+        }
+    }
+}
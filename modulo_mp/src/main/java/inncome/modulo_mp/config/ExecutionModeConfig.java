@@ -0,0 +1,39 @@
+package inncome.modulo_mp.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Modo de ejecucion del trabajo bloqueante (SDK de MercadoPago, JPA, WebClient con block()).
+ *
+ * <p>Con {@code spring.threads.virtual.enabled=true} Tomcat atiende cada request en un virtual
+ * thread, asi que {@code POST /payment}, el webhook y todas las llamadas bloqueantes del SDK que
+ * cuelgan de ellos corren en virtual threads. El tope de checkouts concurrentes deja de ser el
+ * pool de Tomcat y pasa a ser el pool de conexiones hacia MercadoPago.</p>
+ *
+ * <p>El scheduler {@code blockingScheduler} es donde el camino reactivo ejecuta los accesos
+ * bloqueantes: virtual threads en modo virtual, {@code boundedElastic} en modo plataforma.</p>
+ *
+ * @since 1.0
+ */
+@Configuration
+public class ExecutionModeConfig {
+
+    @Bean(destroyMethod = "dispose")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public Scheduler virtualThreadBlockingScheduler() {
+        return Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "mp-blocking");
+    }
+
+    @Bean(destroyMethod = "")
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public Scheduler platformBlockingScheduler() {
+        return Schedulers.boundedElastic(); // Compartido por Reactor, no se cierra aca
+    }
+}
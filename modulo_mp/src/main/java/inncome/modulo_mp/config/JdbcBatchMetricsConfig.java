@@ -0,0 +1,48 @@
+package inncome.modulo_mp.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Envuelve el DataSource de la aplicacion en un {@link BatchMetricsDataSource}.
+ *
+ * <p>El pool (Hikari) sigue siendo el mismo; sus metricas y el health check lo encuentran
+ * desenvolviendo el {@code DelegatingDataSource}. Solo se envuelve el DataSource que usa la
+ * aplicacion: el unico que hay o, con replica, el {@code @Primary} de {@link ReadReplicaConfig}.
+ * Los pools de primario y replica quedan sin envolver, asi cada batch se registra una sola vez y
+ * se pueden seguir inyectando como {@code HikariDataSource}.</p>
+ *
+ * @since 1.0
+ */
+@Configuration
+public class JdbcBatchMetricsConfig {
+
+    @Bean
+    public static BeanPostProcessor batchMetricsDataSourcePostProcessor(ObjectProvider<MeterRegistry> meterRegistry,
+                                                                        ConfigurableListableBeanFactory beanFactory) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof BatchMetricsDataSource)
+                        && isApplicationDataSource(beanFactory, beanName)) {
+                    return new BatchMetricsDataSource(dataSource, meterRegistry);
+                }
+                return bean;
+            }
+        };
+    }
+
+    private static boolean isApplicationDataSource(ConfigurableListableBeanFactory beanFactory, String beanName) {
+        if (!beanFactory.containsBeanDefinition(beanName)) {
+            return false;
+        }
+        return beanFactory.getBeanDefinition(beanName).isPrimary()
+                || beanFactory.getBeanNamesForType(DataSource.class, true, false).length == 1;
+    }
+}
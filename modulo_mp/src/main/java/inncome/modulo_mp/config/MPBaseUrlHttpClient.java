@@ -0,0 +1,48 @@
+package inncome.modulo_mp.config;
+
+import com.mercadopago.exceptions.MPApiException;
+import com.mercadopago.exceptions.MPException;
+import com.mercadopago.net.MPHttpClient;
+import com.mercadopago.net.MPRequest;
+import com.mercadopago.net.MPResponse;
+
+/**
+ * Cliente HTTP del SDK que redirige las llamadas a otro host de MercadoPago.
+ *
+ * <p>El SDK tiene fijo {@code https://api.mercadopago.com}; este wrapper reescribe el prefijo
+ * de cada request hacia {@code mercado.pago.base-url} (por ejemplo el simulador local usado en
+ * tests y benchmarks) y delega el envio en el cliente real.</p>
+ *
+ * @since 1.0
+ */
+public class MPBaseUrlHttpClient implements MPHttpClient {
+
+    public static final String MP_BASE_URL = "https://api.mercadopago.com";
+
+    private final MPHttpClient delegate;
+
+    private final String baseUrl;
+
+    public MPBaseUrlHttpClient(MPHttpClient delegate, String baseUrl) {
+        this.delegate = delegate;
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    @Override
+    public MPResponse send(MPRequest request) throws MPException, MPApiException {
+        String uri = request.getUri();
+        if (uri != null && uri.startsWith(MP_BASE_URL)) {
+            uri = baseUrl + uri.substring(MP_BASE_URL.length());
+        }
+
+        return delegate.send(MPRequest.builder()
+                .uri(uri)
+                .method(request.getMethod())
+                .headers(request.getHeaders())
+                .payload(request.getPayload())
+                .connectionRequestTimeout(request.getConnectionRequestTimeout())
+                .connectionTimeout(request.getConnectionTimeout())
+                .socketTimeout(request.getSocketTimeout())
+                .build());
+    }
+}
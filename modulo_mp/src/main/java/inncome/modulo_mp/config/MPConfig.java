@@ -1,6 +1,9 @@
 package inncome.modulo_mp.config;
 
 import com.mercadopago.MercadoPagoConfig;
+import com.mercadopago.client.payment.PaymentClient;
+import com.mercadopago.client.preference.PreferenceClient;
+import com.mercadopago.net.MPDefaultHttpClient;
 import inncome.modulo_mp.persistence.entity.CompanyToken;
 import inncome.modulo_mp.persistence.repository.CompanyTokenRepository;
 import lombok.Getter;
@@ -31,8 +34,46 @@ public class MPConfig {
     @Value("${mercado.pago.client.secret}")
     private String clientSecret;
 
+    @Value("${mercado.pago.base-url:https://api.mercadopago.com}")
+    private String baseUrl; // Host de la API de MercadoPago
+
+    @Value("${mercado.pago.sdk.max-connections:200}")
+    private int sdkMaxConnections; // Pool HTTP del SDK (el default del SDK es 10)
+
+    @Value("${mercado.pago.sdk.connection-request-timeout-ms:2000}")
+    private int sdkConnectionRequestTimeoutMs; // Espera maxima por una conexion libre del pool
+
+    @Value("${mercado.pago.sdk.connection-timeout-ms:2000}")
+    private int sdkConnectionTimeoutMs;
+
+    @Value("${mercado.pago.sdk.socket-timeout-ms:10000}")
+    private int sdkSocketTimeoutMs;
+
     @PostConstruct
     public void init() {
-        MercadoPagoConfig.setAccessToken(accessToken);
+        MercadoPagoConfig.setAccessToken(accessToken); // Solo como default, cada llamada pasa sus MPRequestOptions
+
+        // Con virtual threads el limite real de concurrencia es este pool, no los hilos de Tomcat.
+        // Las esperas del pool usan locks de java.util.concurrent, no pinnean el carrier thread.
+        MercadoPagoConfig.setMaxConnections(sdkMaxConnections);
+        MercadoPagoConfig.setConnectionRequestTimeout(sdkConnectionRequestTimeoutMs);
+        MercadoPagoConfig.setConnectionTimeout(sdkConnectionTimeoutMs);
+        MercadoPagoConfig.setSocketTimeout(sdkSocketTimeoutMs);
+
+        // Permite apuntar el SDK a otro host (simulador local en tests y benchmarks)
+        if (!MPBaseUrlHttpClient.MP_BASE_URL.equals(baseUrl)) {
+            MercadoPagoConfig.setHttpClient(new MPBaseUrlHttpClient(new MPDefaultHttpClient(), baseUrl));
+        }
+    }
+
+    // Los clientes del SDK no guardan estado por request, se comparten entre hilos
+    @Bean
+    public PreferenceClient preferenceClient() {
+        return new PreferenceClient();
+    }
+
+    @Bean
+    public PaymentClient paymentClient() {
+        return new PaymentClient();
     }
 }
@@ -0,0 +1,82 @@
+package inncome.modulo_mp.config;
+
+import com.mercadopago.core.MPRequestOptions;
+import inncome.modulo_mp.persistence.entity.CompanyToken;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro de credenciales de MercadoPago por compañia.
+ *
+ * <p>Reemplaza el uso de {@code MercadoPagoConfig.setAccessToken(...)}, que es estatico y global:
+ * con pagos divididos concurrentes de distintas compañias un request podia terminar usando el
+ * token de otro. En su lugar cada llamada al SDK recibe su propio {@link MPRequestOptions}
+ * con el access token correspondiente, asi distintos tenants se atienden en paralelo.</p>
+ *
+ * <p>Las opciones se cachean por compañia y se regeneran solas cuando cambia el access token.</p>
+ *
+ * @since 1.0
+ */
+@Component
+public class MPCredentialRegistry {
+
+    private final MPConfig mpConfig;
+
+    private final Map<Long, MPRequestOptions> companyOptions = new ConcurrentHashMap<>();
+
+    private volatile MPRequestOptions platformOptions;
+
+    public MPCredentialRegistry(MPConfig mpConfig) {
+        this.mpConfig = mpConfig;
+    }
+
+    /**
+     * Opciones con el access token propio de la plataforma (pagos sin split).
+     *
+     * @return MPRequestOptions con el token global configurado
+     */
+    public MPRequestOptions platform() {
+        MPRequestOptions options = platformOptions;
+        if (options == null) {
+            options = build(mpConfig.getAccessToken());
+            platformOptions = options;
+        }
+        return options;
+    }
+
+    /**
+     * Opciones con el access token de la compañia, usadas en pagos divididos.
+     *
+     * @param companyToken compañia con su access token vigente
+     * @return MPRequestOptions con el token de la compañia
+     * @throws IllegalArgumentException si la compañia no tiene id o access token
+     */
+    public MPRequestOptions forCompany(CompanyToken companyToken) {
+        if (companyToken == null || companyToken.getId() == null || companyToken.getAccessToken() == null) {
+            throw new IllegalArgumentException("La compañia no tiene credenciales de MercadoPago");
+        }
+
+        return companyOptions.compute(companyToken.getId(), (id, current) ->
+                current != null && Objects.equals(current.getAccessToken(), companyToken.getAccessToken())
+                        ? current
+                        : build(companyToken.getAccessToken()));
+    }
+
+    /**
+     * Descarta las opciones cacheadas de una compañia (por ejemplo, despues de un refresh de token).
+     *
+     * @param companyId id de la compañia
+     */
+    public void evict(Long companyId) {
+        companyOptions.remove(companyId);
+    }
+
+    private MPRequestOptions build(String accessToken) {
+        return MPRequestOptions.builder()
+                .accessToken(accessToken)
+                .build();
+    }
+}
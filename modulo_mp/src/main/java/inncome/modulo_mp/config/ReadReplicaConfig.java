@@ -0,0 +1,118 @@
+package inncome.modulo_mp.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Separa lecturas y escrituras entre el primario ({@code spring.datasource}) y una replica de lectura
+ * ({@code mercado.pago.datasource.replica.*}). Solo se activa con
+ * {@code mercado.pago.datasource.replica.enabled=true}; si no, la aplicacion usa el DataSource de siempre.
+ *
+ * <p>El criterio es el de la transaccion: las {@code @Transactional(readOnly = true)} (listado, export,
+ * lecturas de {@code SimpleJpaRepository} fuera de una transaccion de escritura) van a la replica y todo
+ * lo demas al primario. Se apoya en {@link LazyConnectionDataSourceProxy}: la conexion fisica recien se
+ * pide en la primera sentencia, cuando la transaccion ya marco el handle como read-only, y ahi se elige
+ * el pool. Las lecturas que preceden a una escritura (claim de webhooks, token para el checkout,
+ * recuperacion de pagos) estan fijadas al primario con {@code @Transactional} en el repositorio.</p>
+ *
+ * <p>Si {@link ReplicaLagMonitor} marca la replica como atrasada las lecturas van al primario. Cada
+ * conexion entregada cuenta en {@code mp.db.route} con el tag {@code route}: {@code primary},
+ * {@code replica} o {@code replica_fallback}.</p>
+ *
+ * @since 1.0
+ */
+@Configuration
+@ConditionalOnProperty(name = "mercado.pago.datasource.replica.enabled", havingValue = "true")
+public class ReadReplicaConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    @ConfigurationProperties("mercado.pago.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(DataSourceProperties properties,
+                                              @Value("${mercado.pago.datasource.replica.url}") String url,
+                                              @Value("${mercado.pago.datasource.replica.username:}") String username,
+                                              @Value("${mercado.pago.datasource.replica.password:}") String password) {
+        // Sin usuario propio se usan las credenciales del primario
+        HikariDataSource dataSource = DataSourceBuilder.create().type(HikariDataSource.class)
+                .url(url)
+                .username(username.isBlank() ? properties.determineUsername() : username)
+                .password(username.isBlank() ? properties.determinePassword() : password)
+                .build();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(@Qualifier("replicaDataSource") DataSource replica,
+                                               @Value("${mercado.pago.datasource.replica.max-lag-s:5}") long maxLagSeconds,
+                                               MeterRegistry meterRegistry) {
+        return new ReplicaLagMonitor(replica, maxLagSeconds, meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica,
+                                 ReplicaLagMonitor lagMonitor, MeterRegistry meterRegistry) {
+        return routingDataSource(primary, replica, lagMonitor, meterRegistry);
+    }
+
+    /**
+     * Arma el DataSource que enruta por read-only; separado de la configuracion para poder probarlo
+     * con dos bases embebidas.
+     */
+    public static LazyConnectionDataSourceProxy routingDataSource(DataSource primary, DataSource replica,
+                                                                  ReplicaLagMonitor lagMonitor, MeterRegistry meterRegistry) {
+        Counter primaryRoute = route(meterRegistry, "primary");
+        Counter replicaRoute = route(meterRegistry, "replica");
+        Counter fallbackRoute = route(meterRegistry, "replica_fallback");
+
+        LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(new DelegatingDataSource(primary) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                primaryRoute.increment();
+                return super.getConnection();
+            }
+        });
+        routing.setReadOnlyDataSource(new DelegatingDataSource(replica) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                if (lagMonitor.isHealthy()) {
+                    replicaRoute.increment();
+                    return super.getConnection();
+                }
+                fallbackRoute.increment();
+                return primary.getConnection();
+            }
+        });
+        return routing;
+    }
+
+    private static Counter route(MeterRegistry meterRegistry, String route) {
+        return Counter.builder("mp.db.route").tag("route", route).register(meterRegistry);
+    }
+}
@@ -0,0 +1,101 @@
+package inncome.modulo_mp.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Mide el atraso de la replica de lectura y decide si las transacciones readOnly pueden ir a ella.
+ *
+ * <p>Cada {@code lag-check-interval-ms} corre {@code SHOW REPLICA STATUS} y lee
+ * {@code Seconds_Behind_Source}. Si el atraso supera {@code max-lag-s}, si la replicacion esta
+ * detenida (atraso null) o si la replica no responde, las lecturas vuelven al primario hasta el
+ * proximo chequeo que la encuentre al dia. Una base sin estado de replica (un endpoint de
+ * lectura administrado, una base embebida en pruebas) cuenta como atraso 0. Con
+ * {@code max-lag-s} negativo no se chequea y la replica siempre se usa.</p>
+ *
+ * <p>Publica {@code mp.db.replica.lag.seconds} (-1 si no se pudo medir) y
+ * {@code mp.db.replica.healthy}.</p>
+ *
+ * @see ReadReplicaConfig
+ * @since 1.0
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+
+    private final DataSource replica;
+
+    private final long maxLagSeconds;
+
+    private volatile boolean healthy;
+
+    private volatile long lagSeconds = -1;
+
+    public ReplicaLagMonitor(DataSource replica, long maxLagSeconds, MeterRegistry meterRegistry) {
+        this.replica = replica;
+        this.maxLagSeconds = maxLagSeconds;
+        // Hasta el primer chequeo las lecturas van al primario
+        this.healthy = maxLagSeconds < 0;
+
+        Gauge.builder("mp.db.replica.lag.seconds", this, m -> m.lagSeconds).register(meterRegistry);
+        Gauge.builder("mp.db.replica.healthy", this, m -> m.healthy ? 1 : 0).register(meterRegistry);
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    @Scheduled(fixedDelayString = "${mercado.pago.datasource.replica.lag-check-interval-ms:5000}")
+    public void check() {
+        if (maxLagSeconds < 0) {
+            return;
+        }
+        boolean wasHealthy = healthy;
+        try {
+            Long lag = readLag();
+            lagSeconds = lag != null ? lag : -1;
+            healthy = lag != null && lag <= maxLagSeconds;
+        } catch (SQLException e) {
+            lagSeconds = -1;
+            healthy = false;
+            log.debug("No se pudo medir el atraso de la replica", e);
+        }
+        if (wasHealthy != healthy) {
+            if (healthy) {
+                log.info("Replica al dia (atraso {}s), las lecturas vuelven a la replica", lagSeconds);
+            } else {
+                log.warn("Replica atrasada o caida (atraso {}s, maximo {}s), las lecturas van al primario", lagSeconds, maxLagSeconds);
+            }
+        }
+    }
+
+    private Long readLag() throws SQLException {
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement()) {
+            ResultSet rs;
+            try {
+                rs = statement.executeQuery("SHOW REPLICA STATUS");
+            } catch (SQLException e) {
+                // 1227: falta el permiso REPLICATION CLIENT, no se puede asumir que esta al dia
+                if (e.getErrorCode() == 1227 || !connection.isValid(1)) {
+                    throw e;
+                }
+                return 0L; // La base no soporta el comando: no es una replica MySQL, no hay atraso que medir
+            }
+            try (rs) {
+                if (!rs.next()) {
+                    return 0L;
+                }
+                long lag = rs.getLong("Seconds_Behind_Source");
+                return rs.wasNull() ? null : lag;
+            }
+        }
+    }
+}
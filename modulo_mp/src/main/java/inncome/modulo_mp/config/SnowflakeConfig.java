@@ -0,0 +1,43 @@
+package inncome.modulo_mp.config;
+
+import inncome.modulo_mp.persistence.id.SnowflakeIdGenerator;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Nodo del generador de ids Snowflake ({@code PaymentEntity}, {@code CompanyToken} y los inserts
+ * por JDBC).
+ *
+ * <p>Cada instancia necesita su propio nodo en {@code mercado.pago.snowflake.node-id}
+ * ({@code MP_NODE_ID}, 0-1023): dos instancias con el mismo nodo generan las mismas claves
+ * primarias, asi que sin nodo la aplicacion no arranca. La excepcion es el modo de instancia unica
+ * ({@code mercado.pago.snowflake.single-instance=true}, perfil {@code single-instance}), que usa el
+ * nodo 0.</p>
+ *
+ * @since 1.0
+ */
+@Slf4j
+@Configuration
+public class SnowflakeConfig {
+
+    @Value("${mercado.pago.snowflake.node-id:}")
+    private String nodeId;
+
+    @Value("${mercado.pago.snowflake.single-instance:false}")
+    private boolean singleInstance;
+
+    @PostConstruct
+    public void init() {
+        if (nodeId != null && !nodeId.isBlank()) {
+            SnowflakeIdGenerator.configure(Long.parseLong(nodeId.trim()));
+        } else if (singleInstance) {
+            log.info("Modo de instancia unica: el generador de ids usa el nodo 0");
+            SnowflakeIdGenerator.configure(0);
+        } else {
+            throw new IllegalStateException("Falta mercado.pago.snowflake.node-id (MP_NODE_ID): cada instancia necesita un nodo "
+                    + "distinto, 0-1023. Con una sola instancia se puede usar el perfil single-instance");
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package inncome.modulo_mp.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Cliente HTTP compartido para todas las llamadas salientes a la API de MercadoPago.
+ *
+ * <p>Antes cada orden y cada llamada OAuth hacian {@code webClientBuilder.build()} con la
+ * configuracion por defecto de reactor-netty, pagando un handshake TLS por request. Aca se
+ * arma un unico {@link WebClient} por host de MercadoPago con un pool de conexiones ajustado,
+ * timeouts de conexion/respuesta y metricas del pool publicadas en Micrometer
+ * ({@code reactor.netty.connection.provider.*} y {@code reactor.netty.http.client.*}).</p>
+ *
+ * @since 1.0
+ */
+@Configuration
+public class WebClientConfig {
+
+    @Value("${mercado.pago.http.max-connections:200}")
+    private int maxConnections; // Conexiones maximas abiertas contra MP
+
+    @Value("${mercado.pago.http.pending-acquire-max-count:1000}")
+    private int pendingAcquireMaxCount; // Requests que pueden esperar una conexion libre
+
+    @Value("${mercado.pago.http.pending-acquire-timeout-ms:2000}")
+    private long pendingAcquireTimeoutMs;
+
+    @Value("${mercado.pago.http.max-idle-time-s:30}")
+    private long maxIdleTimeSeconds;
+
+    @Value("${mercado.pago.http.max-life-time-s:300}")
+    private long maxLifeTimeSeconds;
+
+    @Value("${mercado.pago.http.evict-in-background-s:30}")
+    private long evictInBackgroundSeconds;
+
+    @Value("${mercado.pago.http.connect-timeout-ms:2000}")
+    private int connectTimeoutMs;
+
+    @Value("${mercado.pago.http.response-timeout-ms:10000}")
+    private long responseTimeoutMs;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider mercadoPagoConnectionProvider() {
+        return ConnectionProvider.builder("mercadopago")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofSeconds(maxIdleTimeSeconds))
+                .maxLifeTime(Duration.ofSeconds(maxLifeTimeSeconds))
+                .evictInBackground(Duration.ofSeconds(evictInBackgroundSeconds))
+                .lifo() // Reutiliza primero la conexion mas caliente, las frias expiran solas
+                .metrics(true)
+                .build();
+    }
+
+    /**
+     * WebClient unico contra el host de MercadoPago configurado en {@code mercado.pago.base-url}.
+     *
+     * <p>Si el host es HTTPS se negocia HTTP/2 via ALPN con fallback a HTTP/1.1. Las URIs de las
+     * metricas se normalizan para que los ids no generen una serie por request.</p>
+     *
+     * @param webClientBuilder builder de Spring Boot con los codecs y la observabilidad ya configurados
+     * @param mpConfig configuracion de MercadoPago con la URL base
+     * @param mercadoPagoConnectionProvider pool de conexiones compartido
+     * @return WebClient listo para usar con URIs relativas ("/v1/orders", "/oauth/token", etc)
+     */
+    @Bean
+    public WebClient mercadoPagoWebClient(WebClient.Builder webClientBuilder,
+                                          MPConfig mpConfig,
+                                          ConnectionProvider mercadoPagoConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(mercadoPagoConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs))
+                .metrics(true, uri -> uri.replaceAll("/\\d+", "/{id}"));
+
+        if (mpConfig.getBaseUrl().startsWith("https")) {
+            httpClient = httpClient
+                    .protocol(HttpProtocol.H2, HttpProtocol.HTTP11)
+                    .secure();
+        }
+
+        return webClientBuilder.clone()
+                .baseUrl(mpConfig.getBaseUrl())
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
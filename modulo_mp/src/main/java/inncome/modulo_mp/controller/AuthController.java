@@ -2,6 +2,7 @@ package inncome.modulo_mp.controller;
 
 import com.mercadopago.exceptions.MPApiException;
 import com.mercadopago.exceptions.MPException;
+import inncome.modulo_mp.exception.BadRequestException;
 import inncome.modulo_mp.persistence.entity.CompanyToken;
 import inncome.modulo_mp.service.serviceImpl.MercadoPagoAuthServiceImpl;
 import inncome.modulo_mp.service.serviceImpl.OAuthServiceImpl;
@@ -118,7 +119,7 @@ public class AuthController {
             ),
             @ApiResponse(
                     responseCode = "400",
-                    description = "Parámetros de callback inválidos",
+                    description = "Parámetros de callback inválidos, o state desconocido, ya usado o vencido",
                     content = @Content
             ),
             @ApiResponse(
@@ -137,16 +138,18 @@ public class AuthController {
             @RequestParam String code, //Recibe un codigo de autorizacion
 
             @Parameter(
-                    description = "Identificador único para la transacción, en este caso es el id de la empresa",
+                    description = "State aleatorio generado en el endpoint de inicio, identifica el handshake y se usa una sola vez",
                     required = true,
-                    example = "123"
+                    example = "hQ7s3Jk0x9Vb2mNq4RtYuWcZ1aLpE6dF"
             )
             @RequestParam String state
 
     ) throws Exception {
         try {
-            authService.changeCodeForToken(code, Optional.of(Long.valueOf(state)));
+            authService.changeCodeForToken(code, state);
             return ResponseEntity.ok("Autorizacion completada");
+        } catch (BadRequestException e) {
+            throw e;
         } catch (Exception e) {
             throw new Exception(e.getMessage());
         }
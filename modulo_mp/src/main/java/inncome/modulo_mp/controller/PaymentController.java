@@ -1,10 +1,17 @@
 package inncome.modulo_mp.controller;
 
 import com.mercadopago.exceptions.MPApiException;
+import inncome.modulo_mp.exception.BadRequestException;
+import inncome.modulo_mp.exception.IdempotencyKeyConflictException;
+import inncome.modulo_mp.persistence.dto.PaymentPageDto;
 import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
 import inncome.modulo_mp.persistence.dto.PaymentResponseDto;
-import inncome.modulo_mp.persistence.entity.PaymentEntity;
+import inncome.modulo_mp.persistence.entity.WebhookEvent;
+import inncome.modulo_mp.service.serviceImpl.PaymentExportService;
+import inncome.modulo_mp.service.serviceImpl.PaymentQueryService;
 import inncome.modulo_mp.service.serviceImpl.PaymentServiceImpl;
+import inncome.modulo_mp.service.serviceImpl.ReactivePaymentServiceImpl;
+import inncome.modulo_mp.service.serviceImpl.WebhookIngestionService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -13,11 +20,19 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.time.Instant;
 import java.util.Map;
+import java.util.Optional;
 
 @Slf4j
 @RestController
@@ -27,8 +42,117 @@ public class PaymentController {
 
     private final PaymentServiceImpl paymentService;
 
-    public PaymentController(PaymentServiceImpl paymentService) {
+    private final ReactivePaymentServiceImpl reactivePaymentService;
+
+    private final WebhookIngestionService webhookIngestionService;
+
+    private final PaymentQueryService paymentQueryService;
+
+    private final PaymentExportService paymentExportService;
+
+    public PaymentController(PaymentServiceImpl paymentService, ReactivePaymentServiceImpl reactivePaymentService,
+                             WebhookIngestionService webhookIngestionService, PaymentQueryService paymentQueryService,
+                             PaymentExportService paymentExportService) {
         this.paymentService = paymentService;
+        this.reactivePaymentService = reactivePaymentService;
+        this.webhookIngestionService = webhookIngestionService;
+        this.paymentQueryService = paymentQueryService;
+        this.paymentExportService = paymentExportService;
+    }
+
+    /**
+     * Listado de pagos con filtros y paginacion por cursor
+     * @return PaymentPageDto con los pagos y el cursor de la pagina siguiente
+     */
+    @Operation(
+            summary = "Listar pagos",
+            description = "Lista los pagos del más nuevo al más viejo, con filtros opcionales por compañía, estado, método de pago, " +
+                    "comprador y rango de fechas (from inclusive, to exclusive). La paginación es por cursor: para la página " +
+                    "siguiente se envía el nextCursor de la respuesta anterior con los mismos filtros."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Página de pagos",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = PaymentPageDto.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Cursor, estado o tamaño de página inválido",
+                    content = @Content
+            )
+    })
+    @GetMapping()
+    public ResponseEntity<PaymentPageDto> listPayments(
+            @Parameter(description = "ID de la compañía (split payment)", example = "123")
+            @RequestParam(required = false) Long companyId,
+            @Parameter(description = "Estado del pago", example = "approved")
+            @RequestParam(required = false) String status,
+            @Parameter(description = "Método de pago", example = "visa")
+            @RequestParam(required = false) String paymentMethod,
+            @Parameter(description = "Correo del comprador", example = "juan.perez@email.com")
+            @RequestParam(required = false) String payerEmail,
+            @Parameter(description = "Número de documento del comprador", example = "12345678")
+            @RequestParam(required = false) String payerNumber,
+            @Parameter(description = "Fecha de creación desde (ISO-8601, inclusive)", example = "2025-01-01T00:00:00Z")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @Parameter(description = "Fecha de creación hasta (ISO-8601, exclusive)", example = "2025-02-01T00:00:00Z")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @Parameter(description = "nextCursor de la página anterior")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Pagos por página (por defecto 50, máximo 200)", example = "50")
+            @RequestParam(required = false) Integer size
+    ) {
+        PaymentQueryService.PaymentFilter filter = new PaymentQueryService.PaymentFilter(
+                companyId, status, paymentMethod, payerEmail, payerNumber, from, to);
+        return ResponseEntity.ok(paymentQueryService.findPayments(filter, cursor, size));
+    }
+
+    /**
+     * Export de pagos para conciliacion, escrito en streaming sobre la respuesta
+     */
+    @Operation(
+            summary = "Exportar pagos",
+            description = "Exporta los pagos creados en el rango (from inclusive, to exclusive) en NDJSON o CSV, opcionalmente " +
+                    "comprimido con gzip. La respuesta se escribe a medida que se leen los pagos, sin importar el tamaño del export. " +
+                    "Sin rango exporta el día anterior completo (UTC)."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Archivo del export (application/x-ndjson, text/csv o application/gzip)",
+                    content = @Content
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Formato o rango de fechas inválido",
+                    content = @Content
+            )
+    })
+    @GetMapping("/export")
+    public void exportPayments(
+            @Parameter(description = "Fecha de creación desde (ISO-8601, inclusive)", example = "2025-01-01T00:00:00Z")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @Parameter(description = "Fecha de creación hasta (ISO-8601, exclusive)", example = "2025-01-02T00:00:00Z")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @Parameter(description = "ID de la compañía (split payment)", example = "123")
+            @RequestParam(required = false) Long companyId,
+            @Parameter(description = "Formato: ndjson o csv", example = "csv")
+            @RequestParam(required = false) String format,
+            @Parameter(description = "Comprimir con gzip", example = "true")
+            @RequestParam(required = false) Boolean gzip,
+            HttpServletResponse response
+    ) throws IOException {
+        // Se valida antes de escribir nada, asi un error todavia puede responder 400
+        PaymentExportService.ExportRequest request = paymentExportService.request(from, to, companyId, format, gzip);
+
+        response.setContentType(request.gzip() ? "application/gzip" : request.format().contentType() + ";charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(request.fileName()).build().toString());
+        paymentExportService.export(request, response.getOutputStream());
     }
 
     @Operation(
@@ -53,6 +177,11 @@ public class PaymentController {
                     description = "Datos de pago inválidos o faltantes",
                     content = @Content
             ),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "La Idempotency-Key ya se usó con otro pago, o el primer intento con esa clave sigue en curso después de esperarlo",
+                    content = @Content
+            ),
             @ApiResponse(
                     responseCode = "500",
                     description = "Error interno de MercadoPago o del servidor",
@@ -265,12 +394,22 @@ public class PaymentController {
                             }
                     )
             )
-            @RequestBody PaymentRequestDto paymentRequestDto
+            @RequestBody PaymentRequestDto paymentRequestDto,
+
+            @Parameter(
+                    description = "Clave única del intento de pago, generada por el cliente. Los reintentos con la misma clave " +
+                            "devuelven la respuesta del primero sin crear otro pago; si el primero sigue en curso, lo esperan",
+                    required = false,
+                    example = "5f0c6a4e-8d3b-4b8e-9a51-2f7d1c3e9b10"
+            )
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey
     ) throws Exception {
         try {
-            PaymentResponseDto paymentResponseDto = paymentService.generatePayment(paymentRequestDto);
+            PaymentResponseDto paymentResponseDto = paymentService.generatePayment(paymentRequestDto, idempotencyKey);
 
             return ResponseEntity.status(200).body(paymentResponseDto);
+        } catch (IdempotencyKeyConflictException | BadRequestException e) {
+            throw e;
         } catch (MPApiException e) {
             throw new Exception("Error en Mercado Pago: " + e.getApiResponse().getContent());
         } catch (Exception e) {
@@ -278,6 +417,36 @@ public class PaymentController {
         }
     }
 
+    /**
+     * Variante no bloqueante de la creacion de pagos
+     * @param paymentRequestDto mismo body que POST /payment
+     * @return Mono con el pago creado
+     */
+    @Operation(
+            summary = "Crear un nuevo pago (no bloqueante)",
+            description = "Mismo contrato que POST /payment, pero la llamada a MercadoPago se hace con WebClient sin bloquear " +
+                    "un hilo por checkout. Acepta los mismos métodos y tipos de pago."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Pago creado exitosamente",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = PaymentResponseDto.class)
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "Error interno de MercadoPago o del servidor",
+                    content = @Content
+            )
+    })
+    @PostMapping("/reactive")
+    public Mono<PaymentResponseDto> createPaymentReactive(@RequestBody PaymentRequestDto paymentRequestDto) {
+        return reactivePaymentService.generatePayment(paymentRequestDto);
+    }
+
     /**
      * Webhook
      * @param body body mandado en la peticion
@@ -287,18 +456,19 @@ public class PaymentController {
     @Operation(
             summary = "Webhook de notificaciones de pago",
             description = "Endpoint que recibe las notificaciones de MercadoPago cuando cambia el estado de un pago. " +
-                    "Procesa la notificación y actualiza el estado del pago en la base de datos. " +
+                    "Valida la notificación, la encola y responde de inmediato; un pool de workers consulta el pago en MercadoPago " +
+                    "y actualiza su estado en la base de datos, con reintentos y dead-letter. " +
                     "El webhook incluye información completa del evento como ID, fecha de creación, acción realizada, etc."
     )
     @ApiResponses(value = {
             @ApiResponse(
                     responseCode = "200",
-                    description = "Webhook procesado correctamente",
+                    description = "Webhook recibido y encolado",
                     content = @Content(
                             mediaType = "application/json",
                             schema = @Schema(
                                     type = "object",
-                                    example = "{\"message\": \"Webhook procesado correctamente\", \"paymentId\": 123456789, \"status\": \"approved\"}"
+                                    example = "{\"message\": \"Webhook recibido\", \"paymentId\": 123456789, \"eventId\": 42}"
                             )
                     )
             ),
@@ -310,11 +480,6 @@ public class PaymentController {
                             schema = @Schema(type = "string", example = "Type no válido")
                     )
             ),
-            @ApiResponse(
-                    responseCode = "404",
-                    description = "Pago no encontrado en la base de datos",
-                    content = @Content
-            ),
             @ApiResponse(
                     responseCode = "500",
                     description = "Error interno del servidor al procesar el webhook",
@@ -365,25 +530,22 @@ public class PaymentController {
             }
 
             Long paymentId = Long.parseLong(data.get("id").toString());
-            log.info("Procesando webhook para payment ID: {}", paymentId);
 
-            // Buscar el pago en la base de datos
-            PaymentEntity paymentEntity = paymentService.findById(paymentId);
-            if (paymentEntity == null) {
-                log.error("Pago no encontrado en base de datos: {}", paymentId);
-                return ResponseEntity.notFound().build();
+            // Se encola y se responde enseguida; la consulta a MP la hacen los workers
+            Optional<WebhookEvent> event = webhookIngestionService.enqueue(body, paymentId.toString());
+            if (event.isEmpty()) {
+                // Duplicado: se confirma igual para que MP no lo reenvie
+                return ResponseEntity.ok(Map.of(
+                        "message", "Webhook duplicado",
+                        "paymentId", paymentId
+                ));
             }
-
-            // Actualizar el estado del pago consultando MercadoPago
-            PaymentEntity updatedPayment = paymentService.updatePaymentStatusFromMP(paymentId);
-
-            log.info("Pago actualizado: PaymentID={}, DatabaseID={}, Status={}, StatusDetail={}",
-                    paymentId, updatedPayment.getId(), updatedPayment.getStatus(), updatedPayment.getStatusDetail());
+            log.info("Webhook encolado para payment ID: {} (evento {})", paymentId, event.get().getId());
 
             return ResponseEntity.ok(Map.of(
-                    "message", "Webhook procesado correctamente",
+                    "message", "Webhook recibido",
                     "paymentId", paymentId,
-                    "status", updatedPayment.getStatus()
+                    "eventId", event.get().getId()
             ));
 
         } catch (NumberFormatException e) {
@@ -0,0 +1,7 @@
+package inncome.modulo_mp.exception;
+
+public class BadRequestException extends RuntimeException {
+    public BadRequestException(String message) {
+        super(message);
+    }
+}
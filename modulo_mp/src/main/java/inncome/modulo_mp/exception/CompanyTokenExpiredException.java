@@ -0,0 +1,7 @@
+package inncome.modulo_mp.exception;
+
+public class CompanyTokenExpiredException extends RuntimeException {
+    public CompanyTokenExpiredException(String message) {
+        super(message);
+    }
+}
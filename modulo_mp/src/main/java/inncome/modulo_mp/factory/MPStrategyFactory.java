@@ -2,7 +2,10 @@ package inncome.modulo_mp.factory;
 
 import inncome.modulo_mp.service.serviceImpl.PaymentAccountMoneyStrategy;
 import inncome.modulo_mp.service.serviceImpl.PaymentCardStrategy;
+import inncome.modulo_mp.service.serviceImpl.ReactivePaymentAccountMoneyStrategy;
+import inncome.modulo_mp.service.serviceImpl.ReactivePaymentCardStrategy;
 import inncome.modulo_mp.strategy.PaymentGenerationStrategy;
+import inncome.modulo_mp.strategy.ReactivePaymentGenerationStrategy;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 
@@ -27,4 +30,16 @@ public class MPStrategyFactory {
                 throw new IllegalArgumentException("Tipo de pago no soportado: " + paymentType);
         }
     }
+
+    public ReactivePaymentGenerationStrategy getReactiveStrategy(String paymentType) {
+        switch (paymentType.toLowerCase()) {
+            case "credit_card":
+            case "debit_card":
+                return applicationContext.getBean(ReactivePaymentCardStrategy.class);
+            case "account_money":
+                return applicationContext.getBean(ReactivePaymentAccountMoneyStrategy.class);
+            default:
+                throw new IllegalArgumentException("Tipo de pago no soportado: " + paymentType);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package inncome.modulo_mp.persistence.converter;
+
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Guarda {@link PaymentStatus} como su codigo SMALLINT.
+ */
+@Converter
+public class PaymentStatusConverter implements AttributeConverter<PaymentStatus, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(PaymentStatus status) {
+        return status == null ? null : status.code();
+    }
+
+    @Override
+    public PaymentStatus convertToEntityAttribute(Short code) {
+        return code == null ? null : PaymentStatus.fromCode(code);
+    }
+}
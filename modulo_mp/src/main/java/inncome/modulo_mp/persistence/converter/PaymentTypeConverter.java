@@ -0,0 +1,22 @@
+package inncome.modulo_mp.persistence.converter;
+
+import inncome.modulo_mp.persistence.entity.Enum.PaymentType;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Guarda {@link PaymentType} como su codigo SMALLINT.
+ */
+@Converter
+public class PaymentTypeConverter implements AttributeConverter<PaymentType, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(PaymentType type) {
+        return type == null ? null : type.code();
+    }
+
+    @Override
+    public PaymentType convertToEntityAttribute(Short code) {
+        return code == null ? null : PaymentType.fromCode(code);
+    }
+}
@@ -0,0 +1,37 @@
+package inncome.modulo_mp.persistence.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentType;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Fila del export de pagos para conciliacion; se lee con una proyeccion, nunca como entidad.
+ * El orden de los componentes es el de las columnas del CSV. Los ids van como string, igual que
+ * en {@link PaymentSummaryDto}.
+ */
+@JsonPropertyOrder({"id", "paymentId", "externalReference", "status", "statusDetail", "paymentType", "paymentMethod",
+        "totalAmount", "marketplaceFee", "netAmount", "currency", "companyId", "payerEmail", "dateCreated", "dateApproved"})
+public record PaymentExportRow(
+        @JsonFormat(shape = JsonFormat.Shape.STRING)
+        Long id,
+        String paymentId,
+        String externalReference,
+        PaymentStatus status,
+        String statusDetail,
+        PaymentType paymentType,
+        String paymentMethod,
+        BigDecimal totalAmount,
+        BigDecimal marketplaceFee,
+        BigDecimal netAmount,
+        String currency,
+        @JsonFormat(shape = JsonFormat.Shape.STRING)
+        Long companyId,
+        String payerEmail,
+        Instant dateCreated,
+        Instant dateApproved
+) {
+}
@@ -0,0 +1,17 @@
+package inncome.modulo_mp.persistence.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+/**
+ * Una pagina del listado de pagos.
+ */
+@Schema(description = "Pagina de pagos, del mas nuevo al mas viejo")
+public record PaymentPageDto(
+        @Schema(description = "Pagos de la pagina")
+        List<PaymentSummaryDto> items,
+        @Schema(description = "Cursor para pedir la pagina siguiente; null si no hay mas pagos", example = "MTczNjUyNzc5Mjo5OTAwMDAwMDA6NzMwMTkyMzQ4MTIzNTQ1Ng")
+        String nextCursor
+) {
+}
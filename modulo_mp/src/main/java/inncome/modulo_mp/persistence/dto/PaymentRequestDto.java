@@ -1,5 +1,6 @@
 package inncome.modulo_mp.persistence.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -114,4 +115,12 @@ public class PaymentRequestDto {
             required = false
     )
     private Optional<String> issuerId;
+
+    @JsonIgnore
+    @Schema(hidden = true)
+    private String externalReference; // La genera el servicio antes de llamar a MP, no la manda el cliente
+
+    @JsonIgnore
+    @Schema(hidden = true)
+    private String idempotencyKey; // Header Idempotency-Key del request, se reenvia a MP
 }
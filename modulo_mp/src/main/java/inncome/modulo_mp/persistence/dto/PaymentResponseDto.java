@@ -1,11 +1,15 @@
 package inncome.modulo_mp.persistence.dto;
 
 import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
 @Builder
+@AllArgsConstructor
+@NoArgsConstructor // Jackson la lee de payment_idempotency al reproducir una respuesta
 @Schema(description = "Respuesta con los datos del pago procesado por MercadoPago")
 public class PaymentResponseDto {
 
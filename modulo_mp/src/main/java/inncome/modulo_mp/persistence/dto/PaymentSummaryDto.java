@@ -0,0 +1,47 @@
+package inncome.modulo_mp.persistence.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentType;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Proyeccion de un pago para los listados: solo las columnas que se muestran, sin cargar la
+ * entidad completa en el contexto de persistencia.
+ *
+ * <p>Los ids son Snowflake de 64 bits, mas grandes que 2^53: se serializan como string para que
+ * un cliente JavaScript no los redondee.</p>
+ */
+@Schema(description = "Resumen de un pago para listados")
+public record PaymentSummaryDto(
+        @Schema(description = "ID local del pago", type = "string", example = "7301923481235456")
+        @JsonFormat(shape = JsonFormat.Shape.STRING)
+        Long id,
+        @Schema(description = "ID del pago en MercadoPago", example = "123456789")
+        String paymentId,
+        @Schema(description = "Estado del pago", example = "approved")
+        PaymentStatus status,
+        @Schema(description = "Detalle del estado", example = "accredited")
+        String statusDetail,
+        @Schema(description = "Tipo de pago", example = "credit_card")
+        PaymentType paymentType,
+        @Schema(description = "Metodo de pago", example = "visa")
+        String paymentMethod,
+        @Schema(description = "Correo del comprador", example = "juan.perez@email.com")
+        String payerEmail,
+        @Schema(description = "Monto total", example = "1500.00")
+        BigDecimal totalAmount,
+        @Schema(description = "Divisa", example = "ARS")
+        String currency,
+        @Schema(description = "Compañia del split payment, null para pagos de la plataforma", type = "string", example = "7301923481235457")
+        @JsonFormat(shape = JsonFormat.Shape.STRING)
+        Long companyId,
+        @Schema(description = "Fecha de creacion del pago")
+        Instant dateCreated,
+        @Schema(description = "Fecha de aprobacion del pago")
+        Instant dateApproved
+) {
+}
@@ -1,16 +1,19 @@
 package inncome.modulo_mp.persistence.entity;
 
+import inncome.modulo_mp.persistence.id.SnowflakeId;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
+
 @Entity
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class CompanyToken {
 
     // Este ID deberia ser el de la empresa,
@@ -18,7 +21,7 @@ public class CompanyToken {
     // obtener el id por una llamada, luego,
     // en el modulo de mercado pago se almacenan valores de los tokens, etc
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     private Long id;
 
     @Column(name = "mercadopago_id")
@@ -34,12 +37,15 @@ public class CompanyToken {
     private String refreshToken;
 
     @Column(name = "token_expiration_date")
-    private Long expiresIn;
+    private Long expiresIn; // Segundos de validez que devolvio MP en el ultimo intercambio
+
+    @Column(name = "access_token_expires_at")
+    private Instant expiresAt; // Vencimiento absoluto del access token; null en filas anteriores
+
+    @Column(name = "refresh_locked_until")
+    private Instant refreshLockedUntil; // Lease del refresh, para que una sola instancia refresque la compañia
 
     @Column(name = "public_key")
     private String publicKey = null;
 
-    @Column(name = "code_verifier")
-    private String codeVerifier; // Codigo verificador que se necesita para el access token
-
 }
@@ -0,0 +1,158 @@
+package inncome.modulo_mp.persistence.entity.Enum;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Estados de un pago y transiciones permitidas.
+ *
+ * <p>Los estados de MercadoPago avanzan en un solo sentido
+ * (pending → in_process → approved/rejected → refunded/charged_back); una notificacion
+ * atrasada no puede volver un pago aprobado a pendiente. Cada estado conoce sus predecesores
+ * validos, que se usan en el {@code WHERE status IN (...)} del update condicional.
+ * Repetir el mismo estado esta permitido para poder actualizar el status_detail.</p>
+ *
+ * <p>{@link #FAILED} es una suposicion local (timeout hacia MP, pago no encontrado al recuperar):
+ * MP pudo haber procesado el cobro igual, asi que cualquier estado real de MP puede reemplazarlo.</p>
+ *
+ * <p>En la base se guarda el {@link #code()} (columna {@code status_code}, SMALLINT); los codigos
+ * son fijos, no dependen del orden de declaracion.</p>
+ */
+public enum PaymentStatus {
+    CREATING(1),        // Local: registro insertado antes de llamar a MP
+    FAILED(2),          // Local: la llamada a MP fallo; MP lo puede corregir
+    PENDING(10),
+    ACTION_REQUIRED(11), // API Orders: el pago espera una accion del comprador (3DS, etc)
+    IN_PROCESS(12),
+    AUTHORIZED(13),
+    PROCESSED(14),       // API Orders: la orden se cobro
+    APPROVED(20),
+    REJECTED(21),
+    CANCELLED(22),
+    IN_MEDIATION(30),
+    REFUNDED(31),
+    CHARGED_BACK(32);
+
+    // Valores de la API Orders que son el mismo estado con otro nombre
+    private static final Map<String, PaymentStatus> ALIASES = Map.of(
+            "created", PENDING,
+            "processing", IN_PROCESS,
+            "canceled", CANCELLED,
+            "expired", CANCELLED,
+            "failed", REJECTED
+    );
+
+    private final short code;
+
+    PaymentStatus(int code) {
+        this.code = (short) code;
+    }
+
+    private static final Map<PaymentStatus, Set<PaymentStatus>> PREDECESSORS = new EnumMap<>(PaymentStatus.class);
+
+    static {
+        allow(CREATING);
+        allow(FAILED, CREATING);
+        allow(PENDING, CREATING, FAILED);
+        allow(ACTION_REQUIRED, CREATING, PENDING);
+        allow(IN_PROCESS, CREATING, FAILED, PENDING, ACTION_REQUIRED);
+        allow(AUTHORIZED, CREATING, FAILED, PENDING, ACTION_REQUIRED, IN_PROCESS);
+        allow(PROCESSED, CREATING, FAILED, PENDING, ACTION_REQUIRED, IN_PROCESS, AUTHORIZED);
+        allow(APPROVED, CREATING, FAILED, PENDING, ACTION_REQUIRED, IN_PROCESS, AUTHORIZED, PROCESSED, IN_MEDIATION);
+        allow(REJECTED, CREATING, FAILED, PENDING, ACTION_REQUIRED, IN_PROCESS, AUTHORIZED);
+        allow(CANCELLED, CREATING, FAILED, PENDING, ACTION_REQUIRED, IN_PROCESS, AUTHORIZED);
+        allow(IN_MEDIATION, APPROVED, PROCESSED);
+        allow(REFUNDED, APPROVED, PROCESSED, IN_MEDIATION, CHARGED_BACK);
+        allow(CHARGED_BACK, APPROVED, PROCESSED, IN_MEDIATION);
+    }
+
+    private static void allow(PaymentStatus status, PaymentStatus... predecessors) {
+        Set<PaymentStatus> allowed = EnumSet.of(status, predecessors);
+        PREDECESSORS.put(status, Collections.unmodifiableSet(allowed));
+    }
+
+    /**
+     * Valor que usa MercadoPago y que se devuelve en la API.
+     */
+    @JsonValue
+    public String value() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Codigo que se guarda en la columna status_code.
+     */
+    public short code() {
+        return code;
+    }
+
+    /**
+     * Estado de un valor de MercadoPago. Los alias de la API Orders van primero: su "failed" es un
+     * rechazo de MP, no el {@link #FAILED} local.
+     */
+    public static Optional<PaymentStatus> from(String value) {
+        if (value == null) {
+            return Optional.empty();
+        }
+        String normalized = value.toLowerCase(Locale.ROOT);
+        return Optional.ofNullable(ALIASES.get(normalized)).or(() -> fromValue(normalized));
+    }
+
+    /**
+     * Estado por su {@link #value()}, el que devuelve la API (incluye los estados locales); para
+     * los filtros de los listados.
+     */
+    public static Optional<PaymentStatus> fromValue(String value) {
+        if (value == null) {
+            return Optional.empty();
+        }
+        String normalized = value.toLowerCase(Locale.ROOT);
+        return Arrays.stream(values())
+                .filter(status -> status.value().equals(normalized))
+                .findFirst();
+    }
+
+    /**
+     * Estado de una respuesta de MercadoPago; uno desconocido se toma como pendiente y lo
+     * corrige el webhook.
+     */
+    public static PaymentStatus fromMercadoPago(String value) {
+        return from(value).orElse(PENDING);
+    }
+
+    public static PaymentStatus fromCode(short code) {
+        for (PaymentStatus status : values()) {
+            if (status.code == code) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("Codigo de estado desconocido: " + code);
+    }
+
+    /**
+     * Estados desde los que se puede pasar a este (incluido el mismo).
+     */
+    public Set<PaymentStatus> allowedPredecessors() {
+        return PREDECESSORS.get(this);
+    }
+
+    /**
+     * Los predecesores como codigos de la columna, para el {@code IN (...)} de los updates por JDBC.
+     */
+    public List<Short> allowedPredecessorCodes() {
+        return allowedPredecessors().stream().map(PaymentStatus::code).toList();
+    }
+
+    public boolean canTransitionTo(PaymentStatus next) {
+        return next.allowedPredecessors().contains(this);
+    }
+}
@@ -1,7 +1,69 @@
 package inncome.modulo_mp.persistence.entity.Enum;
 
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Tipos de pago de MercadoPago ({@code payment_type_id}).
+ *
+ * <p>En la base se guarda el {@link #code()} (columna {@code payment_type_code}, SMALLINT).
+ * Un tipo que MercadoPago agregue y no este aca se guarda como {@link #OTHER}.</p>
+ */
 public enum PaymentType {
-    DEBIT_CARD,
-    CREDIT_CARD,
-    ACCOUNT_MONEY
+    DEBIT_CARD(1),
+    CREDIT_CARD(2),
+    ACCOUNT_MONEY(3),
+    PREPAID_CARD(4),
+    TICKET(5),
+    BANK_TRANSFER(6),
+    ATM(7),
+    DIGITAL_CURRENCY(8),
+    DIGITAL_WALLET(9),
+    VOUCHER_CARD(10),
+    CRYPTO_TRANSFER(11),
+    OTHER(99);
+
+    private final short code;
+
+    PaymentType(int code) {
+        this.code = (short) code;
+    }
+
+    /**
+     * Valor que usa MercadoPago, por ejemplo credit_card.
+     */
+    @JsonValue
+    public String value() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public short code() {
+        return code;
+    }
+
+    public static Optional<PaymentType> from(String value) {
+        if (value == null) {
+            return Optional.empty();
+        }
+        String normalized = value.toLowerCase(Locale.ROOT);
+        return Arrays.stream(values())
+                .filter(type -> type.value().equals(normalized))
+                .findFirst();
+    }
+
+    public static PaymentType fromMercadoPago(String value) {
+        return from(value).orElse(OTHER);
+    }
+
+    public static PaymentType fromCode(short code) {
+        for (PaymentType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        return OTHER;
+    }
 }
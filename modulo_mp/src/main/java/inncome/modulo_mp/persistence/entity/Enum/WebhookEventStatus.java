@@ -0,0 +1,8 @@
+package inncome.modulo_mp.persistence.entity.Enum;
+
+public enum WebhookEventStatus {
+    PENDING,    // En cola, esperando un worker (o el proximo reintento)
+    PROCESSING, // Tomado por un worker
+    DONE,       // Procesado
+    DEAD        // Agoto los reintentos, requiere revision manual
+}
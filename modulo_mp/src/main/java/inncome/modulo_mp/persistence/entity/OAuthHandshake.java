@@ -0,0 +1,37 @@
+package inncome.modulo_mp.persistence.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Handshake OAuth en curso, para compartirlo entre instancias ({@code mercado.pago.oauth.state.mode=db}).
+ * Se crea en {@code /oauth/start} y se borra al usarlo en el callback.
+ */
+@Entity
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "oauth_handshake", indexes = {
+        @Index(name = "idx_oauth_handshake_expires_at", columnList = "expires_at")
+})
+public class OAuthHandshake {
+
+    @Id
+    @Column(name = "state", length = 64)
+    private String state; // State aleatorio enviado a MP
+
+    @Column(name = "company_id", nullable = false)
+    private Long companyId;
+
+    @Column(name = "code_verifier", nullable = false, length = 128)
+    private String codeVerifier;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+}
@@ -1,30 +1,54 @@
 package inncome.modulo_mp.persistence.entity;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import inncome.modulo_mp.persistence.converter.PaymentStatusConverter;
+import inncome.modulo_mp.persistence.converter.PaymentTypeConverter;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentType;
+import inncome.modulo_mp.persistence.id.SnowflakeId;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+
 @Entity
 @Data
-@Builder
+@Builder(toBuilder = true)
 @AllArgsConstructor
 @NoArgsConstructor
+@Table(name = "payment_entity", indexes = {
+        @Index(name = "ux_payment_entity_payment_id", columnList = "payment_id", unique = true),
+        @Index(name = "idx_payment_entity_external_reference", columnList = "external_reference"),
+        @Index(name = "idx_payment_entity_status_created_at", columnList = "status_code, created_at"),
+        // Listado por keyset (mp_created_at, id): un indice por filtro soportado
+        @Index(name = "idx_payment_entity_mp_created_at", columnList = "mp_created_at, id"),
+        @Index(name = "idx_payment_entity_company_created", columnList = "company_id, mp_created_at, id"),
+        @Index(name = "idx_payment_entity_status_code_created", columnList = "status_code, mp_created_at, id"),
+        @Index(name = "idx_payment_entity_method_created", columnList = "payment_method_id, mp_created_at, id"),
+        @Index(name = "idx_payment_entity_payer_email_created", columnList = "payer_email, mp_created_at, id"),
+        @Index(name = "idx_payment_entity_payer_number_created", columnList = "payer_identification_number, mp_created_at, id")
+})
 public class PaymentEntity {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId // Generado en la aplicacion: IDENTITY deshabilita el batch de inserts
     private Long id;
 
     @JsonProperty("payment_id")
     @Column(name = "payment_id")
     private String payment_id; // ID del pago que genera MercadoPago
 
-    @NotBlank
+    @NotNull
     @JsonProperty("status")
-    private String status; // Estado del pago
+    @Convert(converter = PaymentStatusConverter.class)
+    @Column(name = "status_code")
+    private PaymentStatus status; // Estado del pago
 
     @NotBlank
     @JsonProperty("description")
@@ -35,23 +59,25 @@ public class PaymentEntity {
     @Column(name ="status_detail")
     private String statusDetail; // Detalles del pago, por si fue rechazado
 
-    @NotBlank
+    @NotNull
     @JsonProperty("paymentType")
-    @Column(name = "payment_type_id")
-    private String paymentType; // Tipo de pago, tarjeta de credito, etc
+    @Convert(converter = PaymentTypeConverter.class)
+    @Column(name = "payment_type_code")
+    private PaymentType paymentType; // Tipo de pago, tarjeta de credito, etc
 
     @NotBlank
     @JsonProperty("paymentMethod")
-    @Column(name = "payment_method_id")
+    @Column(name = "payment_method_id", length = 32)
     private String paymentMethod; // Metodo de pago, visa, mastercard, etc
 
     @NotBlank
     @JsonProperty("payerType")
-    @Column(name = "payer_identification_type")
+    @Column(name = "payer_identification_type", length = 16)
     private String payerType; // Tipo de documento de quien realiza el pago
 
     @NotBlank
     @JsonProperty("payerEmail")
+    @Column(name = "payer_email")
     private String payerEmail; // Correo del comprador
 
     @NotBlank
@@ -59,30 +85,47 @@ public class PaymentEntity {
     @Column(name = "payer_identification_number")
     private String payerNumber; // Numero de documento
 
+    @NotNull
     @JsonProperty("totalAmount")
-    @Column(name = "transaction_amount")
-    private double totalAmount; // Total que se pago
+    @Column(name = "amount", precision = 15, scale = 2)
+    private BigDecimal totalAmount; // Total que se pago
 
-    @Column(name = "commission")
+    @Column(name = "marketplace_fee", precision = 15, scale = 2)
     @JsonProperty("commission")
-    private double marketplaceFee; // Comision que se lleva la empresa
+    private BigDecimal marketplaceFee; // Comision que se lleva la empresa
 
     @JsonProperty("sellerTotal")
-    @Column(name = "net_received_amount")
-    private double netReceivedAmount; // Lo que se lleva el vendedor
+    @Column(name = "net_amount", precision = 15, scale = 2)
+    private BigDecimal netReceivedAmount; // Lo que se lleva el vendedor
 
     @NotBlank
     @JsonProperty("currency")
-    @Column(name = "currency_id")
-    private String currencyId; // Divisa
+    @Column(name = "currency", columnDefinition = "char(3)")
+    private String currencyId; // Divisa, codigo ISO 4217
 
-    @NotBlank
+    @NotNull
     @JsonProperty("dateCreated")
-    @Column(name = "date_created")
-    private String dateCreated; // Fecha que se creo el pago
+    @Column(name = "mp_created_at")
+    private Instant dateCreated; // Fecha que se creo el pago
 
-    @NotBlank
     @JsonProperty("dateApproved")
-    @Column(name = "date_approved")
-    private String dateApproved; // Fecha que se aprobo el pago
+    @Column(name = "mp_approved_at")
+    private Instant dateApproved; // Fecha que se aprobo el pago, vacia mientras se crea
+
+    @JsonProperty("companyId")
+    @Column(name = "company_id")
+    private Long companyId; // Compañia del split payment, null para pagos de la plataforma
+
+    @JsonProperty("externalReference")
+    @Column(name = "external_reference", length = 64)
+    private String externalReference; // Referencia enviada a MP, permite recuperar el pago tras una caida
+
+    @JsonProperty("createdAt")
+    @Column(name = "created_at")
+    private LocalDateTime createdAt; // Momento en que se creo el registro local
+
+    @Version
+    @JsonProperty("version")
+    @Column(name = "version", columnDefinition = "bigint not null default 0")
+    private Long version; // Lock optimista; los updates condicionales de estado tambien lo incrementan
 }
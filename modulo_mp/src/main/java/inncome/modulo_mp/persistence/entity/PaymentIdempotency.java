@@ -0,0 +1,38 @@
+package inncome.modulo_mp.persistence.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Resultado de un {@code POST /payment} con {@code Idempotency-Key}, compartido entre instancias.
+ * La PK hace de lock: el primer insert ejecuta el pago. Mientras el pago esta en curso
+ * {@code response} es null y {@code expires_at} es el lease del intento.
+ */
+@Entity
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "payment_idempotency", indexes = {
+        @Index(name = "idx_payment_idempotency_expires_at", columnList = "expires_at")
+})
+public class PaymentIdempotency {
+
+    @Id
+    @Column(name = "idempotency_key", length = 128)
+    private String idempotencyKey; // Header Idempotency-Key del cliente
+
+    @Column(name = "request_hash", length = 64, nullable = false)
+    private String requestHash; // SHA-256 del body, para detectar la clave reusada con otro pago
+
+    @Column(name = "response", columnDefinition = "TEXT")
+    private String response; // PaymentResponseDto en JSON; null mientras el pago esta en curso
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+}
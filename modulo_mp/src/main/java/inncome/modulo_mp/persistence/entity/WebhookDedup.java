@@ -0,0 +1,31 @@
+package inncome.modulo_mp.persistence.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Clave de notificacion ya recibida, para deduplicar webhooks entre instancias
+ * ({@code mercado.pago.webhook.dedup.mode=db}). La PK hace de lock: el primer insert gana.
+ */
+@Entity
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "webhook_dedup", indexes = {
+        @Index(name = "idx_webhook_dedup_expires_at", columnList = "expires_at")
+})
+public class WebhookDedup {
+
+    @Id
+    @Column(name = "dedup_key", length = 160)
+    private String dedupKey; // notificationId:dataId
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,78 @@
+package inncome.modulo_mp.persistence.entity;
+
+import inncome.modulo_mp.persistence.entity.Enum.WebhookEventStatus;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+/**
+ * Notificacion de MercadoPago recibida por el webhook y pendiente de procesar (outbox local).
+ *
+ * <p>El webhook solo valida e inserta la fila; los workers la toman despues en lotes con un
+ * update condicional sobre {@code status} que marca el {@code claim_token} del lote, asi una
+ * misma notificacion nunca se procesa dos veces aunque haya varias instancias.</p>
+ */
+@Entity
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "webhook_event", indexes = {
+        @Index(name = "idx_webhook_event_status_next_attempt", columnList = "status, next_attempt_at"),
+        @Index(name = "idx_webhook_event_data_id_status", columnList = "data_id, status"),
+        @Index(name = "idx_webhook_event_claim_token", columnList = "claim_token")
+})
+public class WebhookEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "notification_id", length = 64)
+    private String notificationId; // Id de la notificacion que manda MP
+
+    @Column(name = "type", length = 32)
+    private String type; // payment, merchant_order, etc
+
+    @Column(name = "action", length = 64)
+    private String action; // payment.created, payment.updated, etc
+
+    @Column(name = "data_id", length = 64, nullable = false)
+    private String dataId; // Id del recurso en MP, para pagos el payment id
+
+    @Column(name = "payload", columnDefinition = "TEXT")
+    private String payload; // Body original, para poder revisar los DEAD
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 16, nullable = false)
+    private WebhookEventStatus status;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "locked_until")
+    private LocalDateTime lockedUntil; // Si un worker muere con la fila tomada, se libera al vencer
+
+    @Column(name = "claim_token", length = 36)
+    private String claimToken; // Lote que tomo el evento
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "notified_at")
+    private Instant notifiedAt; // date_created de la notificacion mas nueva que se junto en este evento
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+}
@@ -0,0 +1,20 @@
+package inncome.modulo_mp.persistence.id;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marca un {@code @Id} cuyo valor se genera en la aplicacion con {@link SnowflakeIdGenerator}.
+ *
+ * <p>A diferencia de {@code GenerationType.IDENTITY}, Hibernate conoce el id antes del insert
+ * y puede agrupar los inserts en batches de JDBC ({@code hibernate.jdbc.batch_size}).</p>
+ */
+@IdGeneratorType(SnowflakeIdGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface SnowflakeId {
+}
@@ -0,0 +1,56 @@
+package inncome.modulo_mp.persistence.id;
+
+import inncome.modulo_mp.utils.Snowflake;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+
+import java.lang.reflect.Member;
+
+/**
+ * Generador de Hibernate para los ids {@link SnowflakeId}.
+ *
+ * <p>Todas las entidades comparten un unico {@link Snowflake}, con el nodo que fija
+ * {@link inncome.modulo_mp.config.SnowflakeConfig} al arrancar. Mientras no haya nodo no se
+ * genera ningun id.</p>
+ */
+public class SnowflakeIdGenerator implements IdentifierGenerator {
+
+    private static volatile Snowflake snowflake;
+
+    public SnowflakeIdGenerator(SnowflakeId config, Member member, CustomIdGeneratorCreationContext context) {
+        // El nodo no sale de las settings de Hibernate: lo fija SnowflakeConfig
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        return snowflake().nextId();
+    }
+
+    /**
+     * Generador compartido, para los caminos que insertan por JDBC sin pasar por Hibernate.
+     *
+     * @throws IllegalStateException si todavia no se configuro el nodo
+     */
+    public static Snowflake snowflake() {
+        Snowflake current = snowflake;
+        if (current == null) {
+            throw new IllegalStateException("El generador de ids no tiene nodo configurado (mercado.pago.snowflake.node-id)");
+        }
+        return current;
+    }
+
+    /**
+     * Fija el nodo del generador compartido. Se puede repetir con el mismo nodo, no cambiarlo: los
+     * ids ya generados con el anterior podrian repetirse.
+     *
+     * @param nodeId nodo de esta instancia, 0-1023
+     */
+    public static synchronized void configure(long nodeId) {
+        if (snowflake == null) {
+            snowflake = new Snowflake(nodeId);
+        } else if (snowflake.nodeId() != nodeId) {
+            throw new IllegalStateException("El generador de ids ya usa el nodo " + snowflake.nodeId() + ", no se puede cambiar a " + nodeId);
+        }
+    }
+}
@@ -1,14 +1,58 @@
 package inncome.modulo_mp.persistence.repository;
 
 import inncome.modulo_mp.persistence.entity.CompanyToken;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 @RepositoryRestResource(exported = false)
 public interface CompanyTokenRepository extends JpaRepository<CompanyToken, Long> {
+    // Token para el checkout y el flujo OAuth: se lee del primario, el refresh rota el refresh_token
+    @Transactional
     Optional<CompanyToken> findCompanyTokenById(Optional<Long> id);
+
+    /**
+     * Compañias cuyo access token vence antes de {@code threshold} (o sin vencimiento conocido),
+     * recorridas por id en lotes.
+     */
+    @Query("select t.id from CompanyToken t where t.refreshToken is not null " +
+            "and (t.expiresAt is null or t.expiresAt < :threshold) and t.id > :afterId order by t.id")
+    List<Long> findIdsToRefresh(@Param("threshold") Instant threshold, @Param("afterId") Long afterId, Pageable page);
+
+    /**
+     * Toma el refresh de la compañia hasta {@code until}. Devuelve 0 si otra instancia ya lo tiene.
+     */
+    @Transactional
+    @Modifying
+    @Query("update CompanyToken t set t.refreshLockedUntil = :until " +
+            "where t.id = :id and (t.refreshLockedUntil is null or t.refreshLockedUntil < :now)")
+    int claimRefresh(@Param("id") Long id, @Param("now") Instant now, @Param("until") Instant until);
+
+    /**
+     * Guarda el resultado de un refresh y libera el lease, sin pisar el resto de la fila.
+     */
+    @Transactional
+    @Modifying
+    @Query("update CompanyToken t set t.accessToken = :accessToken, t.refreshToken = :refreshToken, " +
+            "t.expiresIn = :expiresIn, t.expiresAt = :expiresAt, t.refreshLockedUntil = null where t.id = :id")
+    int updateTokens(@Param("id") Long id, @Param("accessToken") String accessToken, @Param("refreshToken") String refreshToken,
+                     @Param("expiresIn") Long expiresIn, @Param("expiresAt") Instant expiresAt);
+
+    /**
+     * Libera el lease despues de un refresh fallido, para que el proximo ciclo lo reintente.
+     */
+    @Transactional
+    @Modifying
+    @Query("update CompanyToken t set t.refreshLockedUntil = null where t.id = :id")
+    int releaseRefresh(@Param("id") Long id);
 }
@@ -0,0 +1,45 @@
+package inncome.modulo_mp.persistence.repository;
+
+import inncome.modulo_mp.persistence.entity.OAuthHandshake;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+@RepositoryRestResource(exported = false)
+public interface OAuthHandshakeRepository extends JpaRepository<OAuthHandshake, String> {
+
+    /**
+     * Insert plano (sin el select previo de {@code save()}).
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "insert into oauth_handshake (state, company_id, code_verifier, expires_at) " +
+            "values (:state, :companyId, :codeVerifier, :expiresAt)", nativeQuery = true)
+    int insert(@Param("state") String state, @Param("companyId") Long companyId,
+               @Param("codeVerifier") String codeVerifier, @Param("expiresAt") LocalDateTime expiresAt);
+
+    // Se lee del primario: el handshake se acaba de escribir en /oauth/start
+    @Transactional
+    Optional<OAuthHandshake> findByState(String state);
+
+    /**
+     * Borra el handshake; devuelve 0 si otro callback ya lo uso.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from OAuthHandshake h where h.state = :state")
+    int deleteByState(@Param("state") String state);
+
+    @Transactional
+    @Modifying
+    @Query("delete from OAuthHandshake h where h.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
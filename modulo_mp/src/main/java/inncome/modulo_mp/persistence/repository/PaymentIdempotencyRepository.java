@@ -0,0 +1,60 @@
+package inncome.modulo_mp.persistence.repository;
+
+import inncome.modulo_mp.persistence.entity.PaymentIdempotency;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+@RepositoryRestResource(exported = false)
+public interface PaymentIdempotencyRepository extends JpaRepository<PaymentIdempotency, String> {
+
+    /**
+     * Insert plano (sin el select previo de {@code save()}); falla por PK duplicada si la clave ya existe.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "insert into payment_idempotency (idempotency_key, request_hash, expires_at) " +
+            "values (:key, :requestHash, :expiresAt)", nativeQuery = true)
+    int insert(@Param("key") String key, @Param("requestHash") String requestHash, @Param("expiresAt") LocalDateTime expiresAt);
+
+    /**
+     * Toma una clave vencida (resultado viejo o intento abandonado) que todavia no borro la limpieza.
+     * Devuelve 0 si sigue vigente.
+     */
+    @Transactional
+    @Modifying
+    @Query("update PaymentIdempotency p set p.requestHash = :requestHash, p.response = null, p.expiresAt = :expiresAt " +
+            "where p.idempotencyKey = :key and p.expiresAt < :now")
+    int renewIfExpired(@Param("key") String key, @Param("requestHash") String requestHash,
+                       @Param("expiresAt") LocalDateTime expiresAt, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update PaymentIdempotency p set p.response = :response, p.expiresAt = :expiresAt where p.idempotencyKey = :key")
+    int complete(@Param("key") String key, @Param("response") String response, @Param("expiresAt") LocalDateTime expiresAt);
+
+    /**
+     * Libera la clave si el pago fallo, para que el reintento vuelva a ejecutarlo.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from PaymentIdempotency p where p.idempotencyKey = :key and p.response is null")
+    int deleteInProgress(@Param("key") String key);
+
+    // Se lee del primario: lo escribe otra instancia mientras se espera
+    @Transactional
+    Optional<PaymentIdempotency> findByIdempotencyKey(String key);
+
+    @Transactional
+    @Modifying
+    @Query("delete from PaymentIdempotency p where p.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
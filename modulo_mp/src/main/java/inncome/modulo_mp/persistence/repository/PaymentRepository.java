@@ -1,11 +1,85 @@
 package inncome.modulo_mp.persistence.repository;
 
+import inncome.modulo_mp.persistence.dto.PaymentExportRow;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
 import inncome.modulo_mp.persistence.entity.PaymentEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 @RepositoryRestResource(exported = false)
 public interface PaymentRepository extends JpaRepository<PaymentEntity, Long> {
+    // Lecturas previas a una escritura: van al primario (@Transactional sin readOnly), nunca a la replica
+    @Transactional
+    List<PaymentEntity> findByStatusAndCreatedAtBefore(PaymentStatus status, LocalDateTime createdAt);
+
+    // El campo se llama payment_id, un metodo derivado lo leeria como la propiedad anidada payment.id
+    @Query("select p from PaymentEntity p where p.payment_id = :paymentId")
+    Optional<PaymentEntity> findByPaymentId(@Param("paymentId") String paymentId);
+
+    // Se lee del primario: la fila se acaba de actualizar (ver PaymentRecordService#complete)
+    @Transactional
+    @Query("select p from PaymentEntity p where p.id = :id")
+    Optional<PaymentEntity> findLatestById(@Param("id") Long id);
+
+    /**
+     * Completa un registro local con los datos devueltos por MercadoPago, solo si sigue en el estado
+     * esperado. Si un webhook ya lo actualizo no se pisan su estado ni su payment_id.
+     *
+     * @return 1 si se completo, 0 si el registro ya no esta en el estado esperado
+     */
+    @Transactional
+    @Modifying
+    @Query("update PaymentEntity p set p.payment_id = :#{#payment.payment_id}, p.status = :#{#payment.status}, " +
+            "p.statusDetail = :#{#payment.statusDetail}, p.description = :#{#payment.description}, " +
+            "p.paymentType = :#{#payment.paymentType}, p.paymentMethod = :#{#payment.paymentMethod}, " +
+            "p.payerType = :#{#payment.payerType}, p.payerEmail = :#{#payment.payerEmail}, p.payerNumber = :#{#payment.payerNumber}, " +
+            "p.totalAmount = :#{#payment.totalAmount}, p.marketplaceFee = :#{#payment.marketplaceFee}, " +
+            "p.netReceivedAmount = :#{#payment.netReceivedAmount}, p.currencyId = :#{#payment.currencyId}, " +
+            "p.dateCreated = :#{#payment.dateCreated}, p.dateApproved = :#{#payment.dateApproved}, p.version = p.version + 1 " +
+            "where p.id = :id and p.status = :expected")
+    int completeIfStatus(@Param("id") Long id, @Param("expected") PaymentStatus expected, @Param("payment") PaymentEntity payment);
+
+    /**
+     * Cambia el estado de un registro local solo si sigue en el estado esperado.
+     *
+     * @return 1 si se aplico, 0 si el registro ya no esta en el estado esperado
+     */
+    @Transactional
+    @Modifying
+    @Query("update PaymentEntity p set p.status = :status, p.statusDetail = :statusDetail, p.version = p.version + 1 " +
+            "where p.id = :id and p.status = :expected")
+    int updateStatusIfStatus(@Param("id") Long id, @Param("expected") PaymentStatus expected,
+                             @Param("status") PaymentStatus status, @Param("statusDetail") String statusDetail);
+
+    /**
+     * Pagos creados en el rango, en orden, como un cursor de solo avance: el driver trae las filas
+     * de a {@code fetchSize} y no se arma ninguna lista. Hay que consumirlo dentro de una
+     * transaccion y cerrarlo (try-with-resources).
+     */
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = AvailableHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("select new inncome.modulo_mp.persistence.dto.PaymentExportRow(p.id, p.payment_id, p.externalReference, p.status, " +
+            "p.statusDetail, p.paymentType, p.paymentMethod, p.totalAmount, p.marketplaceFee, p.netReceivedAmount, p.currencyId, " +
+            "p.companyId, p.payerEmail, p.dateCreated, p.dateApproved) from PaymentEntity p " +
+            "where p.dateCreated >= :from and p.dateCreated < :to and (:companyId is null or p.companyId = :companyId) " +
+            "order by p.dateCreated, p.id")
+    Stream<PaymentExportRow> streamForExport(@Param("from") Instant from, @Param("to") Instant to, @Param("companyId") Long companyId);
 }
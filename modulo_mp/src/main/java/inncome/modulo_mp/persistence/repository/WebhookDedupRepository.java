@@ -0,0 +1,38 @@
+package inncome.modulo_mp.persistence.repository;
+
+import inncome.modulo_mp.persistence.entity.WebhookDedup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+@RepositoryRestResource(exported = false)
+public interface WebhookDedupRepository extends JpaRepository<WebhookDedup, String> {
+
+    /**
+     * Insert plano (sin el select previo de {@code save()}); falla por PK duplicada si la clave ya existe.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "insert into webhook_dedup (dedup_key, expires_at) values (:key, :expiresAt)", nativeQuery = true)
+    int insert(@Param("key") String key, @Param("expiresAt") LocalDateTime expiresAt);
+
+    /**
+     * Reusa una clave vencida que todavia no borro la limpieza. Devuelve 0 si sigue vigente.
+     */
+    @Transactional
+    @Modifying
+    @Query("update WebhookDedup d set d.expiresAt = :expiresAt where d.dedupKey = :key and d.expiresAt < :now")
+    int renewIfExpired(@Param("key") String key, @Param("expiresAt") LocalDateTime expiresAt, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("delete from WebhookDedup d where d.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -0,0 +1,90 @@
+package inncome.modulo_mp.persistence.repository;
+
+import inncome.modulo_mp.persistence.entity.Enum.WebhookEventStatus;
+import inncome.modulo_mp.persistence.entity.WebhookEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+@RepositoryRestResource(exported = false)
+public interface WebhookEventRepository extends JpaRepository<WebhookEvent, Long> {
+
+    // Las lecturas del claim van al primario (@Transactional sin readOnly), nunca a la replica
+    @Transactional
+    @Query("select e.id from WebhookEvent e where e.status = :status and e.nextAttemptAt <= :now order by e.nextAttemptAt")
+    List<Long> findReadyIds(@Param("status") WebhookEventStatus status, @Param("now") LocalDateTime now, Pageable page);
+
+    /**
+     * Toma en lote los eventos todavia PENDING, marcandolos con el token del lote. Los que ya tomo
+     * otro worker (u otra instancia) no cambian; despues se leen con {@link #findByClaimToken}.
+     */
+    @Transactional
+    @Modifying
+    @Query("update WebhookEvent e set e.status = inncome.modulo_mp.persistence.entity.Enum.WebhookEventStatus.PROCESSING, " +
+            "e.attempts = e.attempts + 1, e.lockedUntil = :lockedUntil, e.claimToken = :token " +
+            "where e.id in :ids and e.status = inncome.modulo_mp.persistence.entity.Enum.WebhookEventStatus.PENDING")
+    int claim(@Param("ids") List<Long> ids, @Param("token") String token, @Param("lockedUntil") LocalDateTime lockedUntil);
+
+    @Transactional
+    List<WebhookEvent> findByClaimToken(String claimToken);
+
+    /**
+     * Devuelve a la cola los eventos cuyo worker murio sin terminarlos.
+     */
+    @Transactional
+    @Modifying
+    @Query("update WebhookEvent e set e.status = inncome.modulo_mp.persistence.entity.Enum.WebhookEventStatus.PENDING, " +
+            "e.lockedUntil = null, e.nextAttemptAt = :now " +
+            "where e.status = inncome.modulo_mp.persistence.entity.Enum.WebhookEventStatus.PROCESSING and e.lockedUntil < :now")
+    int releaseExpiredLocks(@Param("now") LocalDateTime now);
+
+    /**
+     * Cierra en DONE los eventos procesados, solo si siguen tomados por este lote. Si el lock vencio
+     * y el evento volvio a la cola, o ya lo tomo otro worker, no se toca.
+     *
+     * @return cantidad de eventos cerrados
+     */
+    @Transactional
+    @Modifying
+    @Query("update WebhookEvent e set e.status = inncome.modulo_mp.persistence.entity.Enum.WebhookEventStatus.DONE, " +
+            "e.processedAt = :now, e.lastError = null, e.lockedUntil = null " +
+            "where e.id in :ids and e.claimToken = :token " +
+            "and e.status = inncome.modulo_mp.persistence.entity.Enum.WebhookEventStatus.PROCESSING")
+    int finish(@Param("ids") List<Long> ids, @Param("token") String token, @Param("now") LocalDateTime now);
+
+    /**
+     * Devuelve a la cola (PENDING) o deja en DEAD un evento que fallo, con la misma condicion que
+     * {@link #finish}.
+     *
+     * @return 1 si se aplico, 0 si el evento ya no esta tomado por este lote
+     */
+    @Transactional
+    @Modifying
+    @Query("update WebhookEvent e set e.status = :status, e.nextAttemptAt = :nextAttemptAt, e.lastError = :lastError, " +
+            "e.lockedUntil = null where e.id = :id and e.claimToken = :token " +
+            "and e.status = inncome.modulo_mp.persistence.entity.Enum.WebhookEventStatus.PROCESSING")
+    int release(@Param("id") Long id, @Param("token") String token, @Param("status") WebhookEventStatus status,
+                @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("lastError") String lastError);
+
+    long countByStatus(WebhookEventStatus status);
+
+    /**
+     * Junta una notificacion nueva con el evento PENDING del mismo pago, adelantando su
+     * {@code notifiedAt}. Devuelve 0 si no hay ninguno pendiente (o ya lo tomo un worker).
+     */
+    @Transactional
+    @Modifying
+    @Query("update WebhookEvent e set e.notifiedAt = greatest(coalesce(e.notifiedAt, :notifiedAt), :notifiedAt) " +
+            "where e.dataId = :dataId and e.status = inncome.modulo_mp.persistence.entity.Enum.WebhookEventStatus.PENDING")
+    int collapseIntoPending(@Param("dataId") String dataId, @Param("notifiedAt") Instant notifiedAt);
+}
@@ -5,6 +5,7 @@ import inncome.modulo_mp.persistence.entity.CompanyToken;
 import java.util.Optional;
 
 public interface MercadoPagoAuthService {
-    void changeCodeForToken(String code, Optional<Long> companyTokenId) throws Exception;
+    void changeCodeForToken(String code, String state) throws Exception;
     void refreshToken(CompanyToken companyToken) throws Exception;
+    CompanyToken ensureValidToken(CompanyToken companyToken) throws Exception;
 }
@@ -6,5 +6,6 @@ import inncome.modulo_mp.persistence.entity.PaymentEntity;
 
 public interface PaymentService {
     PaymentResponseDto generatePayment (PaymentRequestDto dto) throws Exception;
+    PaymentResponseDto generatePayment (PaymentRequestDto dto, String idempotencyKey) throws Exception;
     PaymentEntity findById (Long payment_id) throws Exception;
 }
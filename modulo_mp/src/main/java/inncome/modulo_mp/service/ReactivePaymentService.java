@@ -0,0 +1,9 @@
+package inncome.modulo_mp.service;
+
+import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
+import inncome.modulo_mp.persistence.dto.PaymentResponseDto;
+import reactor.core.publisher.Mono;
+
+public interface ReactivePaymentService {
+    Mono<PaymentResponseDto> generatePayment (PaymentRequestDto dto);
+}
@@ -0,0 +1,95 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import inncome.modulo_mp.persistence.entity.CompanyToken;
+import inncome.modulo_mp.persistence.repository.CompanyTokenRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Cache en memoria de las credenciales de cada compañia, delante de {@link CompanyTokenRepository}.
+ *
+ * <p>Las filas de {@code company_token} solo cambian en el callback OAuth y en el refresh, pero cada
+ * pago dividido las leia de la base. Con la cache el checkout resuelve la compañia sin ir a la base;
+ * {@link MercadoPagoAuthServiceImpl} invalida la entrada cada vez que cambia el token. Otra instancia
+ * que refresque el token deja esta cache vieja como mucho {@code ttl-s}.</p>
+ *
+ * <p>Se guarda una copia y se devuelve otra en cada lectura: la entidad es mutable y el refresh la
+ * modifica, asi que nunca se comparte entre requests.</p>
+ *
+ * <p>Metricas de la cache con {@code cache=mp.company_token}: {@code cache.gets} (hit/miss, de ahi el
+ * hit ratio), {@code cache.load.duration} y {@code cache.evictions}.</p>
+ *
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class CompanyTokenCache {
+
+    @Autowired
+    private CompanyTokenRepository companyTokenRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${mercado.pago.company-token.cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${mercado.pago.company-token.cache.ttl-s:300}")
+    private long ttlS;
+
+    private LoadingCache<Long, CompanyToken> tokens;
+
+    @PostConstruct
+    public void init() {
+        tokens = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlS))
+                .recordStats()
+                .build(id -> companyTokenRepository.findCompanyTokenById(Optional.of(id)).orElse(null)); // null no se cachea
+        CaffeineCacheMetrics.monitor(meterRegistry, tokens, "mp.company_token");
+    }
+
+    /**
+     * Devuelve una copia de las credenciales de la compañia, cargandolas de la base si no estan en cache.
+     *
+     * @param companyId id de la compañia
+     * @return la compañia, o vacio si no existe
+     */
+    public Optional<CompanyToken> get(Optional<Long> companyId) {
+        return companyId.map(tokens::get).map(token -> token.toBuilder().build());
+    }
+
+    /**
+     * Descarta la compañia de la cache. Dentro de una transaccion se vuelve a descartar despues del
+     * commit, para que una lectura concurrente no deje cacheado el valor anterior.
+     *
+     * @param companyId id de la compañia
+     */
+    public void invalidate(Long companyId) {
+        if (companyId == null) {
+            return;
+        }
+        tokens.invalidate(companyId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    tokens.invalidate(companyId);
+                }
+            });
+        }
+        log.debug("Credenciales de la compañia {} descartadas de la cache", companyId);
+    }
+}
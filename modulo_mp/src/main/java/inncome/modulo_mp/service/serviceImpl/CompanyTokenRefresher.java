@@ -0,0 +1,179 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import inncome.modulo_mp.persistence.entity.CompanyToken;
+import inncome.modulo_mp.persistence.repository.CompanyTokenRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Refresca en segundo plano los tokens OAuth de las compañias antes de que venzan, para que el
+ * checkout nunca tenga que llamar a {@code /oauth/token}.
+ *
+ * <p>Cada {@code interval-ms} recorre por id, en lotes de {@code batch-size}, las compañias cuyo
+ * access token vence dentro de {@code lead-time-h} (o que todavia no tienen vencimiento absoluto) y
+ * las refresca con a lo sumo {@code concurrency} llamadas en paralelo. Cada refresh espera antes un
+ * jitter aleatorio de hasta {@code jitter-ms} para no mandar a MP una rafaga de requests juntos.
+ * El ciclo corre en un hilo propio: el tick del scheduler solo lo lanza, asi un ciclo largo no
+ * demora el poll de webhooks ni el flush del write-behind.</p>
+ *
+ * <p>Cada refresh pasa por {@link MercadoPagoAuthServiceImpl#refreshIfExpiringBefore}, asi que se
+ * agrupa con un refresh del checkout en curso para la misma compañia, y con varias instancias cada
+ * compañia se toma con un lease en la fila; si otra instancia la tiene, se saltea. Un refresh fallido
+ * libera el lease y se reintenta en el proximo ciclo. Metricas en {@code mp.oauth.refresh} con
+ * {@code trigger=background}.</p>
+ *
+ * @see MercadoPagoAuthServiceImpl#refreshToken(CompanyToken)
+ * @since 1.0
+ */
+@Slf4j
+@Service
+public class CompanyTokenRefresher {
+
+    @Autowired
+    private CompanyTokenRepository companyTokenRepository;
+
+    @Autowired
+    private MercadoPagoAuthServiceImpl authService;
+
+    @Value("${mercado.pago.oauth.refresh.enabled:true}")
+    private boolean enabled;
+
+    @Value("${mercado.pago.oauth.refresh.lead-time-h:72}")
+    private long leadTimeHours; // Anticipacion respecto del vencimiento del access token
+
+    @Value("${mercado.pago.oauth.refresh.batch-size:100}")
+    private int batchSize;
+
+    @Value("${mercado.pago.oauth.refresh.concurrency:4}")
+    private int concurrency;
+
+    @Value("${mercado.pago.oauth.refresh.jitter-ms:2000}")
+    private long jitterMs;
+
+    private ExecutorService executor;
+
+    // Corre el ciclo fuera del scheduler de Spring, para no frenar al resto de las tareas @Scheduled
+    private ExecutorService cycleExecutor;
+
+    private final AtomicBoolean cycleRunning = new AtomicBoolean();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "mp-token-refresh-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        cycleExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mp-token-refresh-cycle");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cycleExecutor.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Lanza un ciclo de refresh y vuelve enseguida. Si el ciclo anterior todavia no termino (por
+     * ejemplo el primero, con todas las filas sin vencimiento), se saltea este tick.
+     */
+    @Scheduled(initialDelayString = "${mercado.pago.oauth.refresh.initial-delay-ms:30000}",
+            fixedDelayString = "${mercado.pago.oauth.refresh.interval-ms:60000}")
+    public void refreshExpiring() {
+        if (!enabled || !cycleRunning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            cycleExecutor.execute(() -> {
+                try {
+                    refreshCycle();
+                } catch (Exception e) {
+                    log.error("Error inesperado en el ciclo de refresh de tokens", e);
+                } finally {
+                    cycleRunning.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            cycleRunning.set(false); // Apagando
+        }
+    }
+
+    /**
+     * Recorre por id las compañias a refrescar y espera cada lote antes de pedir el siguiente.
+     */
+    void refreshCycle() {
+        Instant threshold = Instant.now().plus(Duration.ofHours(leadTimeHours));
+        long afterId = Long.MIN_VALUE;
+        List<Long> ids;
+        do {
+            ids = companyTokenRepository.findIdsToRefresh(threshold, afterId, PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+            refreshBatch(ids, threshold);
+            afterId = ids.get(ids.size() - 1);
+        } while (ids.size() == batchSize);
+    }
+
+    /**
+     * Refresca un lote con concurrencia acotada y espera a que termine antes de pedir el siguiente.
+     */
+    private void refreshBatch(List<Long> ids, Instant threshold) {
+        List<Future<?>> futures = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            futures.add(executor.submit(() -> refreshOne(id, threshold)));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                log.error("Error inesperado refrescando tokens", e.getCause());
+            }
+        }
+    }
+
+    private void refreshOne(Long id, Instant threshold) {
+        try {
+            if (jitterMs > 0) {
+                TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(jitterMs));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        try {
+            authService.refreshIfExpiringBefore(id, threshold, "background");
+        } catch (Exception e) {
+            log.warn("No se pudo refrescar el token de la compañia {}: {}", id, e.getMessage());
+        }
+    }
+}
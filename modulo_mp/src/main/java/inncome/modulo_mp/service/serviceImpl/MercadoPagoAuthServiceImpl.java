@@ -8,19 +8,27 @@ import com.mercadopago.net.MPResponse;
 import com.mercadopago.resources.oauth.CreateOauthCredential;
 import com.mercadopago.resources.oauth.RefreshOauthCredential;
 import inncome.modulo_mp.config.MPConfig;
+import inncome.modulo_mp.config.MPCredentialRegistry;
+import inncome.modulo_mp.exception.BadRequestException;
+import inncome.modulo_mp.exception.CompanyTokenExpiredException;
 import inncome.modulo_mp.exception.ResourceNotFoundException;
 import inncome.modulo_mp.persistence.dto.ResponseMpDto;
 import inncome.modulo_mp.persistence.entity.CompanyToken;
 import inncome.modulo_mp.persistence.repository.CompanyTokenRepository;
 import inncome.modulo_mp.service.MercadoPagoAuthService;
+import inncome.modulo_mp.utils.SingleFlight;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.Optional;
@@ -38,24 +46,49 @@ public class MercadoPagoAuthServiceImpl implements MercadoPagoAuthService {
     private MPConfig mpConfig;
 
     @Autowired
-    private WebClient.Builder webClientBuilder;
+    private WebClient mercadoPagoWebClient;
+
+    @Autowired
+    private CompanyTokenCache companyTokenCache;
+
+    @Autowired
+    private MPCredentialRegistry credentialRegistry;
+
+    @Autowired
+    private OAuthStateStore oAuthStateStore;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${mercado.pago.oauth.refresh.lease-s:120}")
+    private long refreshLeaseSeconds;
+
+    // Refresh en curso por compañia, compartido entre el checkout y el refresher
+    private SingleFlight<Long, CompanyToken> refreshes;
+
+    @PostConstruct
+    public void init() {
+        refreshes = new SingleFlight<>("oauth-refresh", meterRegistry);
+    }
 
     /**
      * Intercambia el código de autorización OAuth por tokens de acceso de MercadoPago.
      *
      * <p>Este metodo realiza el flujo de autorización OAuth 2.0 con MercadoPago para obtener
      * los tokens de acceso necesarios para realizar operaciones en la API. Utiliza el
-     * código de autorización recibido del callback de OAuth junto con el code_verifier
-     * almacenado previamente para completar el intercambio PKCE (Proof Key for Code Exchange).</p>
+     * código de autorización recibido del callback de OAuth junto con el code_verifier que
+     * {@link OAuthStateStore} guardo bajo el state para completar el intercambio PKCE
+     * (Proof Key for Code Exchange). Cada state se puede usar una sola vez.</p>
      *
      * <p>Los tokens obtenidos (access_token, refresh_token) se almacenan en la entidad
-     * CompanyToken correspondiente junto con el tiempo de expiración y el ID de usuario
-     * de MercadoPago.</p>
+     * CompanyToken correspondiente junto con el vencimiento absoluto y el ID de usuario
+     * de MercadoPago, y se invalida la compañia en {@link CompanyTokenCache}.</p>
      *
      * @param code el código de autorización OAuth recibido del callback de MercadoPago
-     * @param companyTokenId el ID opcional de la empresa para la cual se están obteniendo los tokens
+     * @param state el state generado en el inicio del flujo, que identifica el handshake
      *
-     * @throws ResourceNotFoundException si no se encuentra la CompanyToken con el ID proporcionado
+     * @throws BadRequestException si el state no existe, ya se uso o vencio
+     * @throws ResourceNotFoundException si no se encuentra la CompanyToken del handshake
      * @throws RuntimeException si ocurre un error durante la comunicación con la API de MercadoPago
      *
      * @see ResponseMpDto
@@ -64,15 +97,16 @@ public class MercadoPagoAuthServiceImpl implements MercadoPagoAuthService {
      */
     @Override
     @Transactional
-    public void changeCodeForToken(String code, Optional<Long> companyTokenId) {
-        CompanyToken companyToken = companyTokenRepository.findCompanyTokenById(companyTokenId).orElseThrow(() -> new ResourceNotFoundException("ID no encontrado"));
+    public void changeCodeForToken(String code, String state) {
+        OAuthStateStore.Handshake handshake = oAuthStateStore.consume(state).orElseThrow(() -> new BadRequestException("State invalido o vencido"));
+        CompanyToken companyToken = companyTokenRepository.findCompanyTokenById(Optional.of(handshake.companyId())).orElseThrow(() -> new ResourceNotFoundException("ID no encontrado"));
 
-        ResponseMpDto data = webClientBuilder.build()
+        ResponseMpDto data = mercadoPagoWebClient
                 .post()
-                .uri("https://api.mercadopago.com/oauth/token")
+                .uri("/oauth/token")
                 .body(BodyInserters.fromFormData("client_id", mpConfig.getClientId())
                         .with("client_secret", mpConfig.getClientSecret())
-                        .with("code_verifier", companyToken.getCodeVerifier())
+                        .with("code_verifier", handshake.codeVerifier())
                         .with("code", code)
                         .with("grant_type", "authorization_code")
                         .with("redirect_uri", "https://api.app.inncome.net/api/mp/oauth/callback"))
@@ -83,23 +117,25 @@ public class MercadoPagoAuthServiceImpl implements MercadoPagoAuthService {
         companyToken.setAccessToken(data.getAccessToken());
         companyToken.setRefreshToken(data.getRefreshToken());
         companyToken.setExpiresIn(data.getExpiresIn());
+        companyToken.setExpiresAt(expiresAt(data.getExpiresIn()));
         companyToken.setMercadoPagoId(data.getMercadoPagoId());
+        companyTokenCache.invalidate(companyToken.getId());
 
     }
 
     /**
-     * Refresca el token de acceso de MercadoPago cuando es necesario.
+     * Refresca el token de acceso de MercadoPago de una compañia.
      *
-     * <p>Este metodo verifica si el token de acceso actual ha expirado o está próximo a expirar
-     * y realiza una solicitud para obtener un nuevo token utilizando el refresh_token almacenado.
-     * El proceso sigue el flujo estándar de OAuth 2.0 para renovación de tokens.</p>
+     * <p>Se llama a traves de {@link #refreshIfExpiringBefore}, desde {@link CompanyTokenRefresher} antes
+     * del vencimiento o desde el checkout si el token ya vencio. Usa el
+     * refresh_token almacenado siguiendo el flujo estándar de OAuth 2.0 y guarda el nuevo access_token,
+     * el nuevo refresh_token (MP lo rota en cada refresh) y el vencimiento absoluto.</p>
      *
-     * <p>La verificación se basa en el tiempo de expiración almacenado en la entidad CompanyToken.
-     * Si el token necesita ser refrescado, se actualiza tanto el refresh_token como el tiempo
-     * de expiración en la base de datos.</p>
+     * <p>La llamada a MercadoPago se hace sin transaccion abierta; el resultado se guarda con un update
+     * puntual que no pisa el resto de la fila y libera el lease del refresh. Despues se invalida la
+     * compañia en {@link CompanyTokenCache} y en {@link MPCredentialRegistry}.</p>
      *
-     * @param companyToken la entidad CompanyToken que contiene los tokens actuales y la información
-     *                     de expiración que se utilizará para determinar si es necesario refrescar
+     * @param companyToken la compañia con el refresh_token vigente; se actualiza con los tokens nuevos
      *
      * @throws RuntimeException si ocurre un error durante la comunicación con la API de MercadoPago
      *                         o si la respuesta no es válida
@@ -109,23 +145,131 @@ public class MercadoPagoAuthServiceImpl implements MercadoPagoAuthService {
      * @since 1.0
      */
     @Override
-    @Transactional
     public void refreshToken(CompanyToken companyToken) {
-        if  (companyToken.getExpiresIn() == 2629056L ) {
-            ResponseMpDto data = webClientBuilder.build()
-                    .post()
-                    .uri("https://api.mercadopago.com/oauth/token")
-                    .body(BodyInserters.fromFormData(
-                            "client_secret", mpConfig.getClientSecret())
-                            .with("grant_type", "refresh_token")
-                            .with("test_token", "true"))
-                    .retrieve()
-                    .bodyToMono(ResponseMpDto.class)
-                    .block();
-
-            companyToken.setRefreshToken(data.getRefreshToken());
-            companyToken.setExpiresIn(data.getExpiresIn());
+        ResponseMpDto data = mercadoPagoWebClient
+                .post()
+                .uri("/oauth/token")
+                .body(BodyInserters.fromFormData("client_id", mpConfig.getClientId())
+                        .with("client_secret", mpConfig.getClientSecret())
+                        .with("grant_type", "refresh_token")
+                        .with("refresh_token", companyToken.getRefreshToken()))
+                .retrieve()
+                .bodyToMono(ResponseMpDto.class)
+                .block();
+
+        if (data == null || data.getAccessToken() == null) {
+            throw new IllegalStateException("Respuesta de refresh vacia para la compañia " + companyToken.getId());
+        }
+
+        Instant expiresAt = expiresAt(data.getExpiresIn());
+        companyTokenRepository.updateTokens(companyToken.getId(), data.getAccessToken(), data.getRefreshToken(),
+                data.getExpiresIn(), expiresAt);
+
+        companyToken.setAccessToken(data.getAccessToken());
+        companyToken.setRefreshToken(data.getRefreshToken());
+        companyToken.setExpiresIn(data.getExpiresIn());
+        companyToken.setExpiresAt(expiresAt);
+        companyToken.setRefreshLockedUntil(null);
+        companyTokenCache.invalidate(companyToken.getId());
+        credentialRegistry.evict(companyToken.getId());
+    }
+
+    /**
+     * Devuelve la compañia con un access token vigente.
+     *
+     * <p>En el caso normal el token ya lo renovo {@link CompanyTokenRefresher} y no se llama a
+     * MercadoPago. Si vencio igual (el refresh en segundo plano no llego a tiempo) se refresca en el
+     * momento con {@link #refreshIfExpiringBefore}: todos los pagos concurrentes de esa compañia
+     * comparten un unico intercambio con {@code /oauth/token}.</p>
+     *
+     * <p>Las filas anteriores al vencimiento absoluto ({@code expiresAt} null) se consideran vigentes
+     * hasta que {@link CompanyTokenRefresher} las refresque.</p>
+     *
+     * @param companyToken la compañia del pago dividido
+     *
+     * @return la misma compañia si el token sigue vigente, o una copia con el token nuevo
+     *
+     * @throws CompanyTokenExpiredException si el token vencio y otra instancia lo esta renovando
+     * @throws Exception si falla el refresh contra MercadoPago
+     */
+    @Override
+    public CompanyToken ensureValidToken(CompanyToken companyToken) throws Exception {
+        Instant now = Instant.now();
+        if (companyToken.getExpiresAt() == null || validAt(companyToken, now)) {
+            return companyToken;
         }
+        return refreshIfExpiringBefore(companyToken.getId(), now, "checkout")
+                .orElseThrow(() -> new CompanyTokenExpiredException("El token de MercadoPago de la compañia "
+                        + companyToken.getId() + " esta vencido, se esta renovando en otra instancia"));
+    }
+
+    /**
+     * Refresca el token de la compañia si vence antes de {@code threshold}, con una sola llamada en
+     * curso por compañia.
+     *
+     * <p>Los llamadores concurrentes de la misma compañia se agrupan con {@link SingleFlight}: el primero
+     * hace el intercambio y el resto espera y recibe el mismo resultado. No hay un lock global, cada
+     * compañia tiene su propia entrada, asi que un refresh lento no frena a las demas. Dentro del
+     * refresh se vuelve a leer la fila (del primario): si otro hilo o instancia ya lo renovo no se llama
+     * a MP, y entre instancias se toma el lease de la fila.</p>
+     *
+     * <p>Metricas: {@code mp.oauth.refresh{result=refreshed|fresh|leased|failed, trigger}} por cada
+     * refresh ejecutado, y {@code mp.singleflight.calls{name=oauth-refresh, result=coalesced}} por cada
+     * llamador que se sumo a uno en curso; un salto de ese contador es una tormenta de refresh.</p>
+     *
+     * @param companyId id de la compañia
+     * @param threshold se refresca si el token vence antes de este instante
+     * @param trigger quien pide el refresh, para las metricas ({@code checkout} o {@code background})
+     *
+     * @return copia de la compañia con token vigente, o vacio si otra instancia tiene el lease
+     *
+     * @throws ResourceNotFoundException si la compañia no existe
+     * @throws Exception si falla el refresh contra MercadoPago
+     */
+    public Optional<CompanyToken> refreshIfExpiringBefore(Long companyId, Instant threshold, String trigger) throws Exception {
+        CompanyToken refreshed = refreshes.execute(companyId, () -> refreshOnce(companyId, threshold, trigger));
+        return Optional.ofNullable(refreshed).map(token -> token.toBuilder().build());
+    }
+
+    private CompanyToken refreshOnce(Long companyId, Instant threshold, String trigger) {
+        CompanyToken current = companyTokenRepository.findCompanyTokenById(Optional.of(companyId))
+                .orElseThrow(() -> new ResourceNotFoundException("No se encontro la compañia " + companyId));
+        if (validAt(current, threshold) || current.getRefreshToken() == null) {
+            // Lo renovo otra instancia: la copia cacheada de esta quedo vieja
+            companyTokenCache.invalidate(companyId);
+            countRefresh("fresh", trigger);
+            return current;
+        }
+
+        Instant now = Instant.now();
+        if (companyTokenRepository.claimRefresh(companyId, now, now.plusSeconds(refreshLeaseSeconds)) == 0) {
+            countRefresh("leased", trigger);
+            return null;
+        }
+        try {
+            refreshToken(current);
+        } catch (RuntimeException e) {
+            companyTokenRepository.releaseRefresh(companyId);
+            countRefresh("failed", trigger);
+            throw e;
+        }
+        countRefresh("refreshed", trigger);
+        log.info("Token de la compañia {} refrescado ({}), vence {}", companyId, trigger, current.getExpiresAt());
+        return current;
+    }
+
+    /**
+     * Sin vencimiento absoluto (filas anteriores) no se sabe, asi que se refresca.
+     */
+    private static boolean validAt(CompanyToken companyToken, Instant instant) {
+        return companyToken.getExpiresAt() != null && companyToken.getExpiresAt().isAfter(instant);
+    }
+
+    private void countRefresh(String result, String trigger) {
+        meterRegistry.counter("mp.oauth.refresh", "result", result, "trigger", trigger).increment();
+    }
 
+    private static Instant expiresAt(Long expiresIn) {
+        return expiresIn == null ? null : Instant.now().plusSeconds(expiresIn);
     }
 }
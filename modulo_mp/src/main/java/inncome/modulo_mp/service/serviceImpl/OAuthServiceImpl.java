@@ -6,7 +6,6 @@ import com.mercadopago.exceptions.MPApiException;
 import com.mercadopago.exceptions.MPException;
 import inncome.modulo_mp.config.MPConfig;
 import inncome.modulo_mp.persistence.entity.CompanyToken;
-import inncome.modulo_mp.persistence.repository.CompanyTokenRepository;
 import inncome.modulo_mp.service.OAuthService;
 import inncome.modulo_mp.utils.PKCEUtil;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,7 +15,6 @@ import org.springframework.web.util.UriComponentsBuilder;
 
 import java.net.URI;
 import java.security.NoSuchAlgorithmException;
-import java.util.Map;
 import java.util.Optional;
 
 import static org.apache.commons.compress.harmony.pack200.PackingUtils.log;
@@ -28,26 +26,35 @@ public class OAuthServiceImpl implements OAuthService {
     private MPConfig mpConfig;
 
     @Autowired
-    private CompanyTokenRepository companyTokenRepository;
+    private CompanyTokenCache companyTokenCache;
+
+    @Autowired
+    private OAuthStateStore oAuthStateStore;
+
+    private final OauthClient oauthClient = new OauthClient();
+
+    // URL base de autorizacion: depende solo de la aplicacion, se pide a MP una sola vez
+    private volatile String authorizationUrl;
 
     /**
      * Genera la URL de autorización OAuth para MercadoPago utilizando el flujo PKCE.
      *
      * <p>Este metodo inicia el proceso de autorización OAuth 2.0 con MercadoPago implementando
      * PKCE (Proof Key for Code Exchange) para mayor seguridad. Genera los códigos necesarios
-     * (code_verifier y code_challenge), los almacena en la entidad CompanyToken y construye
-     * la URL de autorización que debe ser utilizada para redirigir al usuario a MercadoPago.</p>
+     * (code_verifier y code_challenge), guarda el code_verifier en {@link OAuthStateStore} bajo un
+     * state aleatorio y construye la URL de autorización que debe ser utilizada para redirigir al
+     * usuario a MercadoPago.</p>
      *
      * <p>El flujo incluye:</p>
      * <ul>
      *   <li>Generación del code_verifier aleatorio</li>
      *   <li>Creación del code_challenge usando SHA256</li>
-     *   <li>Almacenamiento del code_verifier en la base de datos</li>
+     *   <li>Almacenamiento del code_verifier en el store de handshakes (sin escribir en company_token)</li>
      *   <li>Construcción de la URL con los parámetros OAuth necesarios</li>
      * </ul>
      *
      * @param companyTokenId el ID de la empresa para la cual se genera la autorización.
-     *                       Se utiliza como state parameter para mantener el contexto.
+     *                       Queda asociado al state del handshake para recuperarlo en el callback.
      *                       Si bien el parametro dice que es opcional, no lo es, solo lleva
      *                       Optional debido al tipado de Java para respetar tipos
      *
@@ -61,32 +68,40 @@ public class OAuthServiceImpl implements OAuthService {
      *
      * @see PKCEUtil#generateCodeVerifier()
      * @see PKCEUtil#generateCodeChallenge(String)
+     * @see OAuthStateStore
      * @see CompanyToken
      * @since 1.0
      */
     @Override
     public URI generateAuth(Optional<Long> companyTokenId) throws NoSuchAlgorithmException, MPException, MPApiException {
+        CompanyToken companyToken = companyTokenCache.get(companyTokenId).orElseThrow();
         String codeVerifier = PKCEUtil.generateCodeVerifier();
         String codeChallenge = PKCEUtil.generateCodeChallenge(codeVerifier);
-        CompanyToken companyToken = companyTokenRepository.findCompanyTokenById(companyTokenId).orElseThrow();
-        String state = companyToken.getId().toString();
-
-        companyToken.setCodeVerifier(codeVerifier);
-        companyTokenRepository.save(companyToken);
+        String state = PKCEUtil.generateState();
 
-        System.out.println("codeVerifier " + codeVerifier);
-        System.out.println("codeChallenge " + codeChallenge);
+        oAuthStateStore.save(state, new OAuthStateStore.Handshake(companyToken.getId(), codeVerifier));
 
-        String url = new OauthClient().getAuthorizationURL(
-                mpConfig.getClientId(),
-                mpConfig.getRedirectUri(),
-                MPRequestOptions.createDefault());
-
-        return UriComponentsBuilder.fromUriString(url)
+        return UriComponentsBuilder.fromUriString(authorizationUrl())
                 .queryParam("code_challenge", codeChallenge)
                 .queryParam("code_challenge_method", "S256")
                 .queryParam("state", state)
                 .build(true)
                 .toUri();
     }
+
+    /**
+     * Devuelve la URL base de autorizacion. El SDK consulta {@code /users/me} para armarla, asi que
+     * se resuelve en el primer inicio y despues se reutiliza.
+     */
+    private String authorizationUrl() throws MPException, MPApiException {
+        String url = authorizationUrl;
+        if (url == null) {
+            url = oauthClient.getAuthorizationURL(
+                    mpConfig.getClientId(),
+                    mpConfig.getRedirectUri(),
+                    MPRequestOptions.createDefault());
+            authorizationUrl = url;
+        }
+        return url;
+    }
 }
@@ -0,0 +1,137 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import inncome.modulo_mp.persistence.entity.OAuthHandshake;
+import inncome.modulo_mp.persistence.repository.OAuthHandshakeRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Guarda los handshakes OAuth en curso (el {@code code_verifier} de PKCE y la compañia) entre
+ * {@code /oauth/start} y el callback, indexados por el {@code state} aleatorio que viaja a MP.
+ *
+ * <p>Antes el verifier se escribia en la fila de {@code company_token}: cada inicio era un UPDATE y dos
+ * onboardings simultaneos de la misma compañia se pisaban el verifier. Ahora cada handshake tiene su
+ * propia entrada, vence a los {@code ttl-s} y se puede usar una sola vez.</p>
+ *
+ * <p>Por defecto vive en una cache en memoria, asi que el callback tiene que llegar a la misma
+ * instancia que hizo el inicio. Con {@code mercado.pago.oauth.state.mode=db} se guarda en la tabla
+ * {@code oauth_handshake} y cualquier instancia puede completarlo; las filas vencidas se borran cada
+ * {@code cleanup-interval-ms}.</p>
+ *
+ * <p>Metricas: {@code mp.oauth.handshake{result=started|completed|unknown}} y, en modo memoria, las de
+ * la cache con {@code cache=mp.oauth.state}.</p>
+ *
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class OAuthStateStore {
+
+    /**
+     * Datos del handshake que se necesitan en el callback.
+     */
+    public record Handshake(Long companyId, String codeVerifier) {
+    }
+
+    @Autowired
+    private OAuthHandshakeRepository handshakeRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${mercado.pago.oauth.state.mode:memory}")
+    private String mode;
+
+    @Value("${mercado.pago.oauth.state.ttl-s:600}")
+    private long ttlS;
+
+    @Value("${mercado.pago.oauth.state.max-size:10000}")
+    private long maxSize;
+
+    private Cache<String, Handshake> handshakes;
+
+    @PostConstruct
+    public void init() {
+        handshakes = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlS))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, handshakes, "mp.oauth.state");
+    }
+
+    /**
+     * Registra un handshake nuevo.
+     *
+     * @param state state aleatorio enviado a MP
+     * @param handshake compañia y code verifier
+     */
+    public void save(String state, Handshake handshake) {
+        if (isDbMode()) {
+            handshakeRepository.insert(state, handshake.companyId(), handshake.codeVerifier(),
+                    LocalDateTime.now().plusSeconds(ttlS));
+        } else {
+            handshakes.put(state, handshake);
+        }
+        count("started");
+    }
+
+    /**
+     * Devuelve el handshake y lo descarta, para que el mismo {@code state} no se pueda usar dos veces.
+     *
+     * @param state state recibido en el callback
+     * @return el handshake, o vacio si no existe, ya se uso o vencio
+     */
+    public Optional<Handshake> consume(String state) {
+        if (state == null || state.isBlank()) {
+            count("unknown");
+            return Optional.empty();
+        }
+        Optional<Handshake> handshake = isDbMode()
+                ? consumeFromDb(state)
+                : Optional.ofNullable(handshakes.asMap().remove(state));
+        count(handshake.isPresent() ? "completed" : "unknown");
+        return handshake;
+    }
+
+    /**
+     * Borra los handshakes vencidos de la tabla (solo en modo db).
+     */
+    @Scheduled(fixedDelayString = "${mercado.pago.oauth.state.cleanup-interval-ms:300000}")
+    public void cleanup() {
+        if (isDbMode()) {
+            int deleted = handshakeRepository.deleteExpired(LocalDateTime.now());
+            log.debug("Se borraron {} handshakes OAuth vencidos", deleted);
+        }
+    }
+
+    private Optional<Handshake> consumeFromDb(String state) {
+        Optional<OAuthHandshake> row = handshakeRepository.findByState(state);
+        // Si el delete no borra nada otro callback con el mismo state se adelanto
+        if (row.isEmpty() || handshakeRepository.deleteByState(state) == 0
+                || row.get().getExpiresAt().isBefore(LocalDateTime.now())) {
+            return Optional.empty();
+        }
+        return row.map(h -> new Handshake(h.getCompanyId(), h.getCodeVerifier()));
+    }
+
+    private boolean isDbMode() {
+        return "db".equalsIgnoreCase(mode);
+    }
+
+    private void count(String result) {
+        meterRegistry.counter("mp.oauth.handshake", "result", result).increment();
+    }
+}
@@ -1,6 +1,5 @@
 package inncome.modulo_mp.service.serviceImpl;
 
-import com.mercadopago.MercadoPagoConfig;
 import com.mercadopago.client.common.IdentificationRequest;
 import com.mercadopago.client.payment.PaymentClient;
 import com.mercadopago.client.payment.PaymentCreateRequest;
@@ -11,6 +10,7 @@ import com.mercadopago.resources.payment.Payment;
 import com.mercadopago.resources.payment.PaymentPayer;
 import com.mercadopago.resources.preference.Preference;
 import inncome.modulo_mp.config.MPConfig;
+import inncome.modulo_mp.config.MPCredentialRegistry;
 import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
 import inncome.modulo_mp.persistence.entity.CompanyToken;
 import inncome.modulo_mp.persistence.entity.Enum.PaymentType;
@@ -34,8 +34,14 @@ public class PaymentAccountMoneyStrategy implements PaymentGenerationStrategy {
 
     private final MPConfig mpConfig;
 
-    public PaymentAccountMoneyStrategy(MPConfig mpConfig) {
+    private final MPCredentialRegistry credentialRegistry;
+
+    private final PreferenceClient client;
+
+    public PaymentAccountMoneyStrategy(MPConfig mpConfig, MPCredentialRegistry credentialRegistry, PreferenceClient client) {
         this.mpConfig = mpConfig;
+        this.credentialRegistry = credentialRegistry;
+        this.client = client;
     }
 
     /**
@@ -50,7 +56,7 @@ public class PaymentAccountMoneyStrategy implements PaymentGenerationStrategy {
      * <ul>
      *   <li>Validación del metodo de pago (debe ser "account_money")</li>
      *   <li>Validación de la moneda requerida</li>
-     *   <li>Configuración del token de acceso según el tipo de pago</li>
+     *   <li>Selección de las credenciales del request según el tipo de pago</li>
      *   <li>Creación de la preferencia de MercadoPago</li>
      *   <li>Generación de la entidad de pago resultante</li>
      * </ul>
@@ -90,13 +96,7 @@ public class PaymentAccountMoneyStrategy implements PaymentGenerationStrategy {
     @Override
     public PaymentEntity generatePayment(PaymentRequestDto dto, CompanyToken companyToken) throws Exception {
 
-        if (!Objects.equals(dto.getPaymentMethodId(), PaymentType.ACCOUNT_MONEY.name().toLowerCase(Locale.ROOT)) || !Objects.equals(dto.getPaymentTypeId(), PaymentType.ACCOUNT_MONEY.name().toLowerCase(Locale.ROOT))) {
-            throw new Exception("El metodo de pago debe ser account_money");
-        } else if (dto.getCurrencyId().isEmpty()) {
-            throw new Exception("El tipo de moneda esta vacio");
-        }
-
-        PreferenceClient client = new PreferenceClient ();
+        validate(dto);
 
         IdentificationRequest identificationRequest = IdentificationRequest.builder()
                 .type(dto.getPayer().getIdentification().getType())
@@ -110,20 +110,16 @@ public class PaymentAccountMoneyStrategy implements PaymentGenerationStrategy {
 
         if (dto.getSplitPayment() && companyToken != null) {
 
-            MercadoPagoConfig.setAccessToken(companyToken.getAccessToken());
-
             double percentage = 0.1;
             double commision = dto.getTotalAmount() * percentage;
             double netAmount = dto.getTotalAmount() - commision;
 
             List<PreferenceItemRequest> items = createItemRequest(dto.getTitle(), dto.getDescription(), dto.getCurrencyId().get(), BigDecimal.valueOf(dto.getTotalAmount()));
 
-            Preference preference = createPreference(items, payer, commision, client);
+            Preference preference = createPreference(items, payer, commision, client, credentialRegistry.forCompany(companyToken), dto.getExternalReference());
 
             return getPaymentEntity(dto, commision, netAmount, items, preference);
         } else {
-            MercadoPagoConfig.setAccessToken(mpConfig.getAccessToken());
-
             PreferenceItemRequest itemRequest = PreferenceItemRequest.builder()
                     .id(dto.getTitle())
                     .title(dto.getTitle())
@@ -150,15 +146,31 @@ public class PaymentAccountMoneyStrategy implements PaymentGenerationStrategy {
                             "Inncome", dto.getTotalAmount()
                     ))
                     .notificationUrl("https://api.app.inncome.net/api/mp/payment/webhook")
+                    .externalReference(dto.getExternalReference())
                     .backUrls(backUrlsRequest)
                     .autoReturn("approved")
                     .build();
 
-            Preference preference = client.create(preferenceRequest);
+            Preference preference = client.create(preferenceRequest, credentialRegistry.platform());
 
             return getPaymentEntity(dto, 0.0, dto.getTotalAmount(), items, preference);
         }
     }
 
+    /**
+     * Verifica que el metodo y el tipo de pago sean "account_money" y que venga la moneda.
+     *
+     * @param dto el objeto de solicitud de pago
+     * @throws Exception si el metodo de pago no es "account_money" o la moneda está vacía
+     */
+    @Override
+    public void validate(PaymentRequestDto dto) throws Exception {
+        if (!Objects.equals(dto.getPaymentMethodId(), PaymentType.ACCOUNT_MONEY.name().toLowerCase(Locale.ROOT)) || !Objects.equals(dto.getPaymentTypeId(), PaymentType.ACCOUNT_MONEY.name().toLowerCase(Locale.ROOT))) {
+            throw new Exception("El metodo de pago debe ser account_money");
+        } else if (dto.getCurrencyId().isEmpty()) {
+            throw new Exception("El tipo de moneda esta vacio");
+        }
+    }
+
 
 }
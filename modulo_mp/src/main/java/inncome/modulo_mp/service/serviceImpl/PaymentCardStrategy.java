@@ -2,7 +2,6 @@ package inncome.modulo_mp.service.serviceImpl;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.mercadopago.MercadoPagoConfig;
 import com.mercadopago.client.common.IdentificationRequest;
 import com.mercadopago.client.payment.PaymentClient;
 import com.mercadopago.client.payment.PaymentCreateRequest;
@@ -13,6 +12,7 @@ import com.mercadopago.exceptions.MPException;
 import com.mercadopago.resources.payment.Payment;
 import com.mercadopago.resources.preference.Preference;
 import inncome.modulo_mp.config.MPConfig;
+import inncome.modulo_mp.config.MPCredentialRegistry;
 import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
 import inncome.modulo_mp.persistence.entity.CompanyToken;
 import inncome.modulo_mp.persistence.entity.PaymentEntity;
@@ -36,12 +36,18 @@ public class PaymentCardStrategy implements PaymentGenerationStrategy {
 
     private final MPConfig mpConfig;
 
-    public PaymentCardStrategy(MPConfig mpConfig) {
+    private final MPCredentialRegistry credentialRegistry;
+
+    private final PreferenceClient preferenceClient;
+
+    public PaymentCardStrategy(MPConfig mpConfig, MPCredentialRegistry credentialRegistry, PreferenceClient preferenceClient) {
         this.mpConfig = mpConfig;
+        this.credentialRegistry = credentialRegistry;
+        this.preferenceClient = preferenceClient;
     }
 
     @Autowired
-    private WebClient.Builder webClientBuilder;
+    private WebClient mercadoPagoWebClient;
 
     @Autowired
     private ObjectMapper objectMapper;
@@ -57,7 +63,7 @@ public class PaymentCardStrategy implements PaymentGenerationStrategy {
      * <p>Flujo de procesamiento:</p>
      * <ul>
      *   <li>Validación de token, cuotas e ID del banco</li>
-     *   <li>Configuración del token de acceso según el tipo de pago</li>
+     *   <li>Selección de las credenciales del request según el tipo de pago</li>
      *   <li>Para split payment: creación de preferencia con comisión del 10%</li>
      *   <li>Para pagos regulares: creación de orden mediante API Orders</li>
      * </ul>
@@ -98,19 +104,9 @@ public class PaymentCardStrategy implements PaymentGenerationStrategy {
      */
     @Override
     public PaymentEntity generatePayment(PaymentRequestDto dto, CompanyToken companyToken) throws Exception {
-        if (dto.getToken().isEmpty()){
-            throw new MPException("Token vacio en el dto");
-        } else if (dto.getInstallments().isEmpty()) {
-            throw new MPException("Cuotas vacio en el dto");
-        } else if (dto.getIssuerId().isEmpty()) {
-            throw new MPException("Banco vacio en el dto");
-        }
+        validate(dto);
 
         if (dto.getSplitPayment() && companyToken != null) {
-            MercadoPagoConfig.setAccessToken(companyToken.getAccessToken());
-
-            PreferenceClient preferenceClient = new PreferenceClient ();
-
             double percentage = 0.1;
             double commision = dto.getTotalAmount() * percentage;
             double netAmount = dto.getTotalAmount() - commision;
@@ -129,56 +125,24 @@ public class PaymentCardStrategy implements PaymentGenerationStrategy {
 
             List<PreferenceItemRequest> items = createItemRequest(dto.getTitle(), dto.getDescription(), dto.getCurrencyId().get(), BigDecimal.valueOf(dto.getTotalAmount()));
 
-            Preference preference = createPreference(items, preferencePayerRequest, commision, preferenceClient);
+            Preference preference = createPreference(items, preferencePayerRequest, commision, preferenceClient, credentialRegistry.forCompany(companyToken), dto.getExternalReference());
 
             return getPaymentEntity(dto, commision, netAmount, items, preference);
         } else {
-            MercadoPagoConfig.setAccessToken(mpConfig.getAccessToken());
-
             //API ORDER
 
-            String idempotencyKey = UUID.randomUUID().toString();
+            // Con la clave del cliente un reintento no crea otra orden en MP
+            String idempotencyKey = Optional.ofNullable(dto.getIdempotencyKey())
+                    .orElseGet(() -> UUID.randomUUID().toString());
             String token = String.format("Bearer %s", mpConfig.getAccessToken());
 
-            Map<String, Object> body = new HashMap<>();
-            body.put("type", "online");
-            body.put("external_reference", generateExternalReference());
-            body.put("capture_mode", "automatic");
-            body.put("processing_mode", "automatic");
-            body.put("total_amount", dto.getTotalAmount().toString());
-            body.put("payer", Map.of(
-                    "first_name", dto.getPayerName(),
-                    "email", dto.getPayer().getEmail(),
-                    "identification", Map.of(
-                            "type", dto.getPayer().getIdentification().getType(),
-                            "number", dto.getPayer().getIdentification().getNumber()
-                    )
-            ));
-            body.put("transactions", Map.of(
-                    "payments", new Object[] {
-                        Map.of(
-                            "amount", dto.getTotalAmount().toString(),
-                            "payment_method", Map.of(
-                                "id", dto.getPaymentMethodId(),
-                                "type", dto.getPaymentTypeId(),
-                                "token", dto.getToken().get(),
-                                "installments", dto.getInstallments().orElse(1)
-                            )
-                        )
-                    }
-            ));
-            body.put("items", new Object[] {
-                Map.of(
-                    "title", dto.getTitle(),
-                    "unit_price", dto.getTotalAmount().toString(),
-                    "quantity", 1,
-                    "description", dto.getDescription()
-                )
-            });
-
-            String order = webClientBuilder.build()
+            String externalReference = Optional.ofNullable(dto.getExternalReference())
+                    .orElseGet(PaymentCardStrategy::generateExternalReference);
+            Map<String, Object> body = buildOrderBody(dto, externalReference);
+
+            String order = mercadoPagoWebClient
                     .post()
-                    .uri("https://api.mercadopago.com/v1/orders")
+                    .uri("/v1/orders")
                     .header("Content-Type","application/json")
                     .header("X-Idempotency-Key", idempotencyKey)
                     .header("Authorization", token)
@@ -188,30 +152,29 @@ public class PaymentCardStrategy implements PaymentGenerationStrategy {
                     .block();
 
             JsonNode orderJson = objectMapper.readTree(order);
-            JsonNode payment = orderJson.get("transactions").get("payments").get(0);
-            JsonNode paymentMethod = payment.get("payment_method");
-
-            return PaymentEntity.builder()
-                    .payment_id(orderJson.get("id").asText()) // Si quiero persistir el id solamente del pago payment.get("id").asText()
-                    .status(payment.get("status").asText())
-                    .description(dto.getDescription())
-                    .statusDetail(payment.get("status_detail").asText())
-                    .paymentType(paymentMethod.get("type").asText())
-                    .paymentMethod(paymentMethod.get("id").asText())
-                    .payerType(dto.getPayer().getIdentification().getType())
-                    .payerEmail(dto.getPayer().getEmail())
-                    .payerNumber(dto.getPayer().getIdentification().getNumber())
-                    .totalAmount(orderJson.get("total_paid_amount").asDouble())
-                    .marketplaceFee(0)
-                    .netReceivedAmount(orderJson.get("total_paid_amount").asDouble())
-                    .currencyId(String.valueOf(dto.getCurrencyId()))
-                    .dateCreated(orderJson.get("created_date").asText())
-                    .dateApproved(orderJson.get("last_updated_date").asText())
-                    .build();
+
+            return getPaymentEntityFromOrder(dto, orderJson);
         }
 
     }
 
+    /**
+     * Verifica que el request traiga token de tarjeta, cuotas e ID del banco emisor.
+     *
+     * @param dto el objeto de solicitud de pago
+     * @throws MPException si el token, cuotas o ID del banco están vacíos
+     */
+    @Override
+    public void validate(PaymentRequestDto dto) throws MPException {
+        if (dto.getToken().isEmpty()){
+            throw new MPException("Token vacio en el dto");
+        } else if (dto.getInstallments().isEmpty()) {
+            throw new MPException("Cuotas vacio en el dto");
+        } else if (dto.getIssuerId().isEmpty()) {
+            throw new MPException("Banco vacio en el dto");
+        }
+    }
+
     public static String  generateExternalReference() {
         SecureRandom random = new SecureRandom();
         String aviableCharacters = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
@@ -0,0 +1,97 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+
+/**
+ * Job de linea de comandos que escribe el export de pagos a un archivo local y termina la aplicacion.
+ *
+ * <p>Se activa con {@code mercado.pago.export.file}; pensado para el cron diario de finanzas:</p>
+ * <pre>
+ * java -jar modulo_mp-exec.jar --spring.main.web-application-type=none \
+ *      --mercado.pago.export.file=/exports/payments.csv.gz --mercado.pago.export.format=csv
+ * </pre>
+ *
+ * <p>Se escribe primero a {@code <archivo>.part} y se renombra al terminar, asi nunca queda a la
+ * vista un export a medias.</p>
+ *
+ * @see PaymentExportService
+ * @since 1.0
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "mercado.pago.export.file")
+public class PaymentExportJob implements ApplicationRunner {
+
+    @Autowired
+    private PaymentExportService exportService;
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Value("${mercado.pago.export.file}")
+    private Path file;
+
+    @Value("${mercado.pago.export.from:}")
+    private String from; // ISO-8601; vacio exporta el dia anterior (UTC)
+
+    @Value("${mercado.pago.export.to:}")
+    private String to;
+
+    @Value("${mercado.pago.export.company-id:}")
+    private String companyId;
+
+    @Value("${mercado.pago.export.format:}")
+    private String format; // Vacio lo toma de la extension del archivo
+
+    @Value("${mercado.pago.export.gzip:}")
+    private String gzip; // Vacio lo toma de la extension del archivo
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int exitCode = 0;
+        try {
+            String name = file.getFileName().toString();
+            String baseName = name.endsWith(".gz") ? name.substring(0, name.length() - 3) : name;
+            String resolvedFormat = !format.isBlank() ? format : baseName.endsWith(".csv") ? "csv" : "ndjson";
+            boolean resolvedGzip = !gzip.isBlank() ? Boolean.parseBoolean(gzip) : name.endsWith(".gz");
+
+            PaymentExportService.ExportRequest request = exportService.request(
+                    from.isBlank() ? null : Instant.parse(from),
+                    to.isBlank() ? null : Instant.parse(to),
+                    companyId.isBlank() ? null : Long.valueOf(companyId),
+                    resolvedFormat, resolvedGzip);
+            Path part = file.resolveSibling(name + ".part");
+            if (file.toAbsolutePath().getParent() != null) {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+            }
+
+            long rows;
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(part))) {
+                rows = exportService.export(request, out);
+            }
+            Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Export de pagos escrito en {} ({} filas)", file.toAbsolutePath(), rows);
+        } catch (Exception e) {
+            log.error("Fallo el export de pagos a {}", file, e);
+            exitCode = 1;
+        }
+
+        int code = exitCode;
+        System.exit(SpringApplication.exit(context, () -> code));
+    }
+}
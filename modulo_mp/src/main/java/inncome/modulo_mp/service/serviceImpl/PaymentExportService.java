@@ -0,0 +1,226 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import inncome.modulo_mp.exception.BadRequestException;
+import inncome.modulo_mp.persistence.dto.PaymentExportRow;
+import inncome.modulo_mp.persistence.repository.PaymentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Export de pagos para la conciliacion de finanzas, en NDJSON o CSV y opcionalmente con gzip.
+ *
+ * <p>Las filas se leen con {@link PaymentRepository#streamForExport} como un cursor de solo avance
+ * (el driver trae de a {@code fetchSize} filas) y se escriben directo al stream de salida a medida
+ * que llegan: no se arma ninguna lista ni se cargan entidades, asi que la memoria es la misma para
+ * mil pagos que para diez millones. La salida se vacia cada {@code flush-rows} filas para que el
+ * cliente (o el archivo) reciba los datos mientras se genera el export.</p>
+ *
+ * @see PaymentExportJob
+ * @since 1.0
+ */
+@Slf4j
+@Service
+public class PaymentExportService {
+
+    private static final String[] CSV_HEADER = {"id", "payment_id", "external_reference", "status", "status_detail",
+            "payment_type", "payment_method", "total_amount", "marketplace_fee", "net_amount", "currency",
+            "company_id", "payer_email", "date_created", "date_approved"};
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${mercado.pago.export.flush-rows:1000}")
+    private int flushRows;
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+
+        public static Format from(String value) {
+            if (value == null) {
+                return NDJSON;
+            }
+            try {
+                return Format.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Formato de export desconocido: " + value + " (ndjson o csv)");
+            }
+        }
+    }
+
+    /**
+     * Parametros de un export. El rango es sobre la fecha de creacion en MP, from inclusive y to exclusive.
+     */
+    public record ExportRequest(Instant from, Instant to, Long companyId, Format format, boolean gzip) {
+
+        /**
+         * Nombre de archivo sugerido, por ejemplo {@code payments-2025-01-01T00:00:00Z.csv.gz}.
+         */
+        public String fileName() {
+            return "payments-" + from + "." + format.extension() + (gzip ? ".gz" : "");
+        }
+    }
+
+    /**
+     * Arma y valida los parametros de un export. Sin rango exporta el dia anterior completo (UTC).
+     *
+     * @throws BadRequestException si el formato no existe o el rango esta vacio
+     */
+    public ExportRequest request(Instant from, Instant to, Long companyId, String format, Boolean gzip) {
+        Instant today = LocalDate.now(ZoneOffset.UTC).atStartOfDay(ZoneOffset.UTC).toInstant();
+        Instant start = from != null ? from : today.minusSeconds(86400);
+        Instant end = to != null ? to : (from != null ? Instant.now() : today);
+        if (!start.isBefore(end)) {
+            throw new BadRequestException("El rango del export esta vacio: from debe ser anterior a to");
+        }
+        return new ExportRequest(start, end, companyId, Format.from(format), Boolean.TRUE.equals(gzip));
+    }
+
+    /**
+     * Escribe el export en {@code out}. No cierra {@code out}; si es gzip, termina el stream comprimido.
+     *
+     * @return cantidad de pagos exportados
+     * @throws IOException si falla la escritura (por ejemplo, el cliente corto la conexion)
+     */
+    @Transactional(readOnly = true)
+    public long export(ExportRequest request, OutputStream out) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        GZIPOutputStream gzip = request.gzip() ? new GZIPOutputStream(out, BUFFER_BYTES, true) : null;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(gzip != null ? gzip : out, StandardCharsets.UTF_8), BUFFER_BYTES);
+
+        long rows;
+        try (Stream<PaymentExportRow> stream = paymentRepository.streamForExport(request.from(), request.to(), request.companyId())) {
+            rows = request.format() == Format.CSV
+                    ? writeCsv(stream.iterator(), writer)
+                    : writeNdjson(stream.iterator(), writer);
+        }
+        writer.flush();
+        if (gzip != null) {
+            gzip.finish();
+        }
+        out.flush();
+
+        sample.stop(meterRegistry.timer("mp.payment.export", "format", request.format().extension()));
+        meterRegistry.counter("mp.payment.export.rows", "format", request.format().extension()).increment(rows);
+        log.info("Export {} de pagos entre {} y {}: {} filas", request.format().extension(), request.from(), request.to(), rows);
+        return rows;
+    }
+
+    private long writeNdjson(Iterator<PaymentExportRow> rows, Writer writer) throws IOException {
+        // El writer se vacia cada flushRows filas, no despues de cada pago
+        ObjectWriter rowWriter = objectMapper.writerFor(PaymentExportRow.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(writer);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+
+        long count = 0;
+        while (rows.hasNext()) {
+            rowWriter.writeValue(generator, rows.next());
+            generator.writeRaw('\n');
+            if (++count % flushRows == 0) {
+                generator.flush();
+            }
+        }
+        generator.close();
+        return count;
+    }
+
+    private long writeCsv(Iterator<PaymentExportRow> rows, Writer writer) throws IOException {
+        writer.write(String.join(",", CSV_HEADER));
+        writer.write('\n');
+
+        long count = 0;
+        while (rows.hasNext()) {
+            PaymentExportRow row = rows.next();
+            writeCsvValue(writer, row.id(), true);
+            writeCsvValue(writer, row.paymentId(), false);
+            writeCsvValue(writer, row.externalReference(), false);
+            writeCsvValue(writer, row.status() != null ? row.status().value() : null, false);
+            writeCsvValue(writer, row.statusDetail(), false);
+            writeCsvValue(writer, row.paymentType() != null ? row.paymentType().value() : null, false);
+            writeCsvValue(writer, row.paymentMethod(), false);
+            writeCsvValue(writer, row.totalAmount() != null ? row.totalAmount().toPlainString() : null, false);
+            writeCsvValue(writer, row.marketplaceFee() != null ? row.marketplaceFee().toPlainString() : null, false);
+            writeCsvValue(writer, row.netAmount() != null ? row.netAmount().toPlainString() : null, false);
+            writeCsvValue(writer, row.currency(), false);
+            writeCsvValue(writer, row.companyId(), false);
+            writeCsvValue(writer, row.payerEmail(), false);
+            writeCsvValue(writer, row.dateCreated(), false);
+            writeCsvValue(writer, row.dateApproved(), false);
+            writer.write('\n');
+            if (++count % flushRows == 0) {
+                writer.flush();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Escribe un campo CSV (RFC 4180): null queda vacio y se entrecomillan los valores con coma,
+     * comillas o saltos de linea.
+     */
+    private static void writeCsvValue(Writer writer, Object value, boolean first) throws IOException {
+        if (!first) {
+            writer.write(',');
+        }
+        if (value == null) {
+            return;
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            writer.write(text);
+            return;
+        }
+        writer.write('"');
+        writer.write(text.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
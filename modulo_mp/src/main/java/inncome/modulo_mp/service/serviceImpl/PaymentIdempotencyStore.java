@@ -0,0 +1,215 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import inncome.modulo_mp.exception.BadRequestException;
+import inncome.modulo_mp.exception.IdempotencyKeyConflictException;
+import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
+import inncome.modulo_mp.persistence.dto.PaymentResponseDto;
+import inncome.modulo_mp.persistence.entity.PaymentIdempotency;
+import inncome.modulo_mp.persistence.repository.PaymentIdempotencyRepository;
+import inncome.modulo_mp.utils.SingleFlight;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hace idempotente {@code POST /payment} cuando el cliente manda {@code Idempotency-Key}.
+ *
+ * <p>El primer request con una clave ejecuta el pago y guarda la respuesta; los reintentos con la
+ * misma clave reciben esa respuesta sin volver a llamar a MP. Hay una cache acotada en memoria con
+ * TTL delante de la tabla {@code payment_idempotency}, que comparte el resultado entre instancias.
+ * Los duplicados concurrentes esperan al primer intento: en la misma instancia se agrupan con
+ * {@link SingleFlight}; desde otra instancia encuentran la fila en curso y la consultan cada
+ * {@code poll-ms} hasta {@code wait-timeout-ms}, despues responden 409.</p>
+ *
+ * <p>La fila en curso vence a los {@code in-progress-ttl-s}, asi un intento abandonado (la instancia
+ * se cayo) no bloquea la clave. Si el pago falla la clave se libera y el reintento lo vuelve a
+ * ejecutar; la clave tambien viaja a MP como {@code X-Idempotency-Key}, asi que MP no duplica la
+ * orden aunque el primer intento haya llegado. Reusar la clave con otro body responde 409.</p>
+ *
+ * <p>Metricas: {@code mp.payment.idempotency{result=executed|replayed|conflict, layer}} y las de la
+ * cache con {@code cache=mp.payment.idempotency}.</p>
+ *
+ * @see PaymentServiceImpl#generatePayment(PaymentRequestDto, String)
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class PaymentIdempotencyStore {
+
+    private static final int MAX_KEY_LENGTH = 128;
+
+    // Respuesta guardada y huella del body que la genero
+    private record Stored(String requestHash, PaymentResponseDto response) {
+    }
+
+    @Autowired
+    private PaymentIdempotencyRepository idempotencyRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${mercado.pago.payment.idempotency.ttl-s:86400}")
+    private long ttlS;
+
+    @Value("${mercado.pago.payment.idempotency.max-size:100000}")
+    private long maxSize;
+
+    @Value("${mercado.pago.payment.idempotency.in-progress-ttl-s:120}")
+    private long inProgressTtlS;
+
+    @Value("${mercado.pago.payment.idempotency.wait-timeout-ms:30000}")
+    private long waitTimeoutMs;
+
+    @Value("${mercado.pago.payment.idempotency.poll-ms:200}")
+    private long pollMs;
+
+    private Cache<String, Stored> completed;
+
+    // Pagos en curso por clave en esta instancia
+    private SingleFlight<String, Stored> inFlight;
+
+    @PostConstruct
+    public void init() {
+        completed = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlS))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, completed, "mp.payment.idempotency");
+        inFlight = new SingleFlight<>("payment-idempotency", meterRegistry);
+    }
+
+    /**
+     * Ejecuta el pago una sola vez por clave, o devuelve el resultado ya guardado.
+     *
+     * @param key header {@code Idempotency-Key}
+     * @param dto body del request, para verificar que la clave no se reuse con otro pago
+     * @param payment el pago a ejecutar si la clave es nueva
+     * @return la respuesta del primer intento exitoso con esa clave
+     * @throws BadRequestException si la clave esta vacia o es demasiado larga
+     * @throws IdempotencyKeyConflictException si la clave se uso con otro body, o si el intento que la tiene
+     *         sigue en curso despues de esperarlo {@code wait-timeout-ms} (antes de eso el duplicado espera
+     *         y recibe su resultado)
+     * @throws Exception la excepcion del pago, tambien para los duplicados que lo esperaban
+     */
+    public PaymentResponseDto execute(String key, PaymentRequestDto dto, Callable<PaymentResponseDto> payment) throws Exception {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new BadRequestException("Idempotency-Key vacia o de mas de " + MAX_KEY_LENGTH + " caracteres");
+        }
+        String requestHash = fingerprint(dto);
+
+        Stored stored = completed.getIfPresent(key);
+        if (stored != null) {
+            count("replayed", "memory");
+        } else {
+            stored = inFlight.execute(key, () -> executeOnce(key, requestHash, payment));
+        }
+
+        if (!stored.requestHash().equals(requestHash)) {
+            count("conflict", "memory");
+            throw new IdempotencyKeyConflictException("La Idempotency-Key ya se uso con otro pago");
+        }
+        return stored.response();
+    }
+
+    /**
+     * Borra las claves vencidas de la tabla.
+     */
+    @Scheduled(fixedDelayString = "${mercado.pago.payment.idempotency.cleanup-interval-ms:300000}")
+    public void cleanup() {
+        int deleted = idempotencyRepository.deleteExpired(LocalDateTime.now());
+        log.debug("Se borraron {} claves de idempotencia vencidas", deleted);
+    }
+
+    private Stored executeOnce(String key, String requestHash, Callable<PaymentResponseDto> payment) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitTimeoutMs);
+        while (!claim(key, requestHash)) {
+            Optional<Stored> existing = awaitOther(key, deadline);
+            if (existing.isPresent()) {
+                count("replayed", "db");
+                completed.put(key, existing.get());
+                return existing.get();
+            }
+            // El otro intento fallo o se abandono: se vuelve a intentar tomar la clave
+        }
+
+        PaymentResponseDto response;
+        try {
+            response = payment.call();
+        } catch (Exception e) {
+            idempotencyRepository.deleteInProgress(key);
+            throw e;
+        }
+
+        Stored stored = new Stored(requestHash, response);
+        completed.put(key, stored);
+        idempotencyRepository.complete(key, objectMapper.writeValueAsString(response), LocalDateTime.now().plusSeconds(ttlS));
+        count("executed", "db");
+        return stored;
+    }
+
+    private boolean claim(String key, String requestHash) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime leaseUntil = now.plusSeconds(inProgressTtlS);
+        try {
+            idempotencyRepository.insert(key, requestHash, leaseUntil);
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            return idempotencyRepository.renewIfExpired(key, requestHash, leaseUntil, now) == 1;
+        }
+    }
+
+    /**
+     * Espera a que el intento que tiene la clave termine. Devuelve vacio si la libero sin resultado
+     * o si su lease vencio.
+     */
+    private Optional<Stored> awaitOther(String key, long deadline) throws Exception {
+        while (true) {
+            Optional<PaymentIdempotency> row = idempotencyRepository.findByIdempotencyKey(key);
+            if (row.isEmpty()) {
+                return Optional.empty();
+            }
+            if (row.get().getResponse() != null) {
+                return Optional.of(new Stored(row.get().getRequestHash(),
+                        objectMapper.readValue(row.get().getResponse(), PaymentResponseDto.class)));
+            }
+            if (row.get().getExpiresAt().isBefore(LocalDateTime.now())) {
+                return Optional.empty(); // Intento abandonado: se puede tomar la clave
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                count("conflict", "db");
+                throw new IdempotencyKeyConflictException("Hay un pago en curso con la misma Idempotency-Key, reintente mas tarde");
+            }
+            TimeUnit.MILLISECONDS.sleep(pollMs);
+        }
+    }
+
+    private String fingerprint(PaymentRequestDto dto) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return HexFormat.of().formatHex(digest.digest(objectMapper.writeValueAsBytes(dto)));
+    }
+
+    private void count(String result, String layer) {
+        meterRegistry.counter("mp.payment.idempotency", "result", result, "layer", layer).increment();
+    }
+}
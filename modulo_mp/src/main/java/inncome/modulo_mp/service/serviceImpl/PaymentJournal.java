@@ -0,0 +1,207 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import inncome.modulo_mp.persistence.entity.PaymentEntity;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Journal local y durable de pagos pendientes de escribir en la base (write-behind).
+ *
+ * <p>Cada pago se agrega como una linea JSON al segmento activo ({@code payments-<n>.log}) y,
+ * con {@code fsync}, se fuerza a disco antes de devolver. Cuando un segmento se llena se abre el
+ * siguiente; un segmento cerrado se borra cuando todas sus entradas fueron escritas en la base
+ * ({@link #release}). Al arrancar, {@link #replay} devuelve las entradas de los segmentos que
+ * quedaron, en orden.</p>
+ *
+ * @see PaymentWriteBehindService
+ */
+@Slf4j
+public class PaymentJournal implements Closeable {
+
+    private static final String PREFIX = "payments-";
+    private static final String SUFFIX = ".log";
+
+    /**
+     * Una entrada del journal: el pago y el segmento donde quedo escrito.
+     */
+    public record Entry(long segment, PaymentEntity payment) {
+    }
+
+    private final Path directory;
+
+    private final ObjectMapper objectMapper;
+
+    private final boolean fsync;
+
+    private final long maxSegmentBytes;
+
+    // ReentrantLock y no synchronized, para no fijar el carrier de los virtual threads durante el fsync
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Map<Long, Integer> pendingPerSegment = new HashMap<>();
+
+    private FileChannel active;
+
+    private long activeSegment;
+
+    private long activeBytes;
+
+    public PaymentJournal(Path directory, ObjectMapper objectMapper, boolean fsync, long maxSegmentBytes) throws IOException {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+        this.fsync = fsync;
+        this.maxSegmentBytes = maxSegmentBytes;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Lee las entradas de los segmentos existentes y abre un segmento nuevo para escribir.
+     * Una ultima linea incompleta (caida en el medio de una escritura) se descarta.
+     *
+     * @return List con las entradas pendientes, en el orden en que se escribieron
+     */
+    public List<Entry> replay() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long last = 0;
+        lock.lock();
+        try {
+            for (long segment : segments()) {
+                last = Math.max(last, segment);
+                try (BufferedReader reader = Files.newBufferedReader(path(segment), StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isBlank()) {
+                            continue;
+                        }
+                        try {
+                            entries.add(new Entry(segment, objectMapper.readValue(line, PaymentEntity.class)));
+                            pendingPerSegment.merge(segment, 1, Integer::sum);
+                        } catch (IOException e) {
+                            log.warn("Se descarta una linea ilegible del segmento {} del journal: {}", segment, e.getMessage());
+                        }
+                    }
+                }
+                if (!pendingPerSegment.containsKey(segment)) {
+                    Files.deleteIfExists(path(segment));
+                }
+            }
+            open(last + 1);
+        } finally {
+            lock.unlock();
+        }
+        return entries;
+    }
+
+    /**
+     * Agrega un pago al segmento activo.
+     *
+     * @param payment pago a escribir en la base mas tarde
+     * @return Entry para liberar cuando el pago este en la base
+     */
+    public Entry append(PaymentEntity payment) throws IOException {
+        byte[] line = (objectMapper.writeValueAsString(payment) + "\n").getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            if (activeBytes >= maxSegmentBytes) {
+                rotate();
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                active.write(buffer);
+            }
+            if (fsync) {
+                active.force(false);
+            }
+            activeBytes += line.length;
+            pendingPerSegment.merge(activeSegment, 1, Integer::sum);
+            return new Entry(activeSegment, payment);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marca entradas como escritas en la base y borra los segmentos cerrados que quedan sin pendientes.
+     *
+     * @param entries entradas ya persistidas
+     */
+    public void release(Collection<Entry> entries) {
+        lock.lock();
+        try {
+            for (Entry entry : entries) {
+                Integer left = pendingPerSegment.computeIfPresent(entry.segment(), (segment, pending) -> pending > 1 ? pending - 1 : null);
+                if (left == null && entry.segment() != activeSegment) {
+                    delete(entry.segment());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (active != null) {
+                active.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void rotate() throws IOException {
+        long closed = activeSegment;
+        active.close();
+        open(closed + 1);
+        if (!pendingPerSegment.containsKey(closed)) {
+            delete(closed);
+        }
+    }
+
+    private void open(long segment) throws IOException {
+        active = FileChannel.open(path(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        activeSegment = segment;
+        activeBytes = active.size();
+    }
+
+    private void delete(long segment) {
+        try {
+            Files.deleteIfExists(path(segment));
+        } catch (IOException e) {
+            log.warn("No se pudo borrar el segmento {} del journal: {}", segment, e.getMessage());
+        }
+    }
+
+    private List<Long> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path path(long segment) {
+        return directory.resolve(PREFIX + segment + SUFFIX);
+    }
+}
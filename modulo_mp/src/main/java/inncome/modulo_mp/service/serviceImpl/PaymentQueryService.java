@@ -0,0 +1,148 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import inncome.modulo_mp.exception.BadRequestException;
+import inncome.modulo_mp.persistence.dto.PaymentPageDto;
+import inncome.modulo_mp.persistence.dto.PaymentSummaryDto;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Listado de pagos para el back-office con paginacion por keyset.
+ *
+ * <p>Se ordena del mas nuevo al mas viejo por {@code (mp_created_at, id)} y la pagina siguiente
+ * arranca despues de la ultima fila devuelta ({@code WHERE (fecha, id) < (cursor)}), no con
+ * {@code OFFSET}: cada pagina es un seek sobre el indice del filtro y cuesta lo mismo la primera
+ * que la numero mil. Cada filtro tiene un indice {@code (filtro, mp_created_at, id)} en
+ * {@code PaymentEntity}.</p>
+ *
+ * <p>Solo se listan los pagos con fecha de MercadoPago: los que siguen en "creating" o fallaron
+ * antes de llegar a MP no la tienen, y una fila sin fecha no puede ser posicion del cursor. Es el
+ * mismo criterio del export, que filtra por rango de esa fecha.</p>
+ *
+ * <p>Solo se leen las columnas de {@link PaymentSummaryDto}, sin cargar entidades.</p>
+ *
+ * @since 1.0
+ */
+@Service
+public class PaymentQueryService {
+
+    private static final String SELECT = "select new inncome.modulo_mp.persistence.dto.PaymentSummaryDto(" +
+            "p.id, p.payment_id, p.status, p.statusDetail, p.paymentType, p.paymentMethod, p.payerEmail, " +
+            "p.totalAmount, p.currencyId, p.companyId, p.dateCreated, p.dateApproved) from PaymentEntity p where p.dateCreated is not null";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${mercado.pago.query.default-page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${mercado.pago.query.max-page-size:200}")
+    private int maxPageSize;
+
+    /**
+     * Filtros del listado; los null no filtran.
+     */
+    public record PaymentFilter(Long companyId, String status, String paymentMethod, String payerEmail,
+                                String payerNumber, Instant from, Instant to) {
+    }
+
+    /**
+     * Devuelve una pagina de pagos.
+     *
+     * @param filter filtros del listado
+     * @param cursor {@code nextCursor} de la pagina anterior, o null para la primera
+     * @param size cantidad de pagos por pagina, o null para el valor por defecto
+     * @return PaymentPageDto con los pagos y el cursor de la pagina siguiente
+     * @throws BadRequestException si el cursor, el estado o el tamaño no son validos
+     */
+    @Transactional(readOnly = true)
+    public PaymentPageDto findPayments(PaymentFilter filter, String cursor, Integer size) {
+        int pageSize = size == null ? defaultPageSize : size;
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            throw new BadRequestException("El tamaño de pagina debe estar entre 1 y " + maxPageSize);
+        }
+
+        StringBuilder jpql = new StringBuilder(SELECT);
+        Map<String, Object> params = new HashMap<>();
+        if (filter.companyId() != null) {
+            jpql.append(" and p.companyId = :companyId");
+            params.put("companyId", filter.companyId());
+        }
+        if (filter.status() != null) {
+            jpql.append(" and p.status = :status");
+            params.put("status", PaymentStatus.fromValue(filter.status())
+                    .orElseThrow(() -> new BadRequestException("Estado de pago desconocido: " + filter.status())));
+        }
+        if (filter.paymentMethod() != null) {
+            jpql.append(" and p.paymentMethod = :paymentMethod");
+            params.put("paymentMethod", filter.paymentMethod());
+        }
+        if (filter.payerEmail() != null) {
+            jpql.append(" and p.payerEmail = :payerEmail");
+            params.put("payerEmail", filter.payerEmail());
+        }
+        if (filter.payerNumber() != null) {
+            jpql.append(" and p.payerNumber = :payerNumber");
+            params.put("payerNumber", filter.payerNumber());
+        }
+        if (filter.from() != null) {
+            jpql.append(" and p.dateCreated >= :from");
+            params.put("from", filter.from());
+        }
+        if (filter.to() != null) {
+            jpql.append(" and p.dateCreated < :to");
+            params.put("to", filter.to());
+        }
+        if (cursor != null) {
+            Cursor position = Cursor.decode(cursor);
+            jpql.append(" and (p.dateCreated < :cursorDate or (p.dateCreated = :cursorDate and p.id < :cursorId))");
+            params.put("cursorDate", position.dateCreated());
+            params.put("cursorId", position.id());
+        }
+        jpql.append(" order by p.dateCreated desc, p.id desc");
+
+        TypedQuery<PaymentSummaryDto> query = entityManager.createQuery(jpql.toString(), PaymentSummaryDto.class);
+        params.forEach(query::setParameter);
+        // Una fila de mas para saber si hay pagina siguiente sin un count
+        List<PaymentSummaryDto> rows = query.setMaxResults(pageSize + 1).getResultList();
+
+        if (rows.size() <= pageSize) {
+            return new PaymentPageDto(rows, null);
+        }
+        List<PaymentSummaryDto> page = rows.subList(0, pageSize);
+        PaymentSummaryDto last = page.getLast();
+        return new PaymentPageDto(List.copyOf(page), new Cursor(last.dateCreated(), last.id()).encode());
+    }
+
+    /**
+     * Posicion de la ultima fila de una pagina, serializada como base64url opaco.
+     */
+    private record Cursor(Instant dateCreated, long id) {
+
+        String encode() {
+            String raw = dateCreated.getEpochSecond() + ":" + dateCreated.getNano() + ":" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+                return new Cursor(Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1])), Long.parseLong(parts[2]));
+            } catch (RuntimeException e) {
+                throw new BadRequestException("Cursor invalido");
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import inncome.modulo_mp.persistence.entity.PaymentEntity;
+import inncome.modulo_mp.persistence.id.SnowflakeIdGenerator;
+import inncome.modulo_mp.persistence.repository.PaymentRepository;
+import inncome.modulo_mp.utils.PaymentUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Persistencia en dos fases de los pagos generados.
+ *
+ * <p>La llamada a MercadoPago nunca se hace con una transaccion (ni una conexion del pool)
+ * abierta: primero se inserta un registro "creating" en una transaccion corta, despues se
+ * llama a MP sin transaccion y al final se completa el registro en otra transaccion corta.
+ * Cada metodo usa la transaccion propia del repositorio; el cierre es un update condicional
+ * sobre el estado "creating", asi no compite con los webhooks por el {@code @Version}.</p>
+ *
+ * <p>Con el modo write-behind ({@link PaymentWriteBehindService}) las tres fases solo escriben
+ * el journal local y el pago llega a la base en el proximo flush.</p>
+ *
+ * @see PaymentRecoveryService
+ * @since 1.0
+ */
+@Slf4j
+@Service
+public class PaymentRecordService {
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private PaymentWriteBehindService writeBehind;
+
+    /**
+     * Fase 1: inserta el registro local "creating" y asigna la referencia externa al request,
+     * para que la estrategia la envie a MercadoPago.
+     *
+     * @param dto solicitud de pago; se le setea la referencia externa
+     * @return PaymentEntity registro "creating" ya persistido
+     */
+    public PaymentEntity begin(PaymentRequestDto dto) {
+        String externalReference = PaymentCardStrategy.generateExternalReference();
+        dto.setExternalReference(externalReference);
+        PaymentEntity creating = PaymentUtils.newCreatingPayment(dto, externalReference);
+        if (writeBehind.isEnabled()) {
+            creating.setId(SnowflakeIdGenerator.snowflake().nextId());
+            creating.setVersion(0L);
+            return write(creating);
+        }
+        return paymentRepository.save(creating);
+    }
+
+    /**
+     * Fase 3: completa el registro "creating" con los datos devueltos por MercadoPago.
+     *
+     * <p>Es un update condicional que solo se aplica si el registro sigue en "creating". Un webhook
+     * para la misma referencia externa puede llegar mientras la estrategia espera la respuesta de MP;
+     * en ese caso su estado y su payment_id son mas nuevos que los de la respuesta, no se pisan y se
+     * devuelve el registro como lo dejo el webhook.</p>
+     *
+     * @param creating registro insertado en la fase 1
+     * @param payment entidad armada por la estrategia con la respuesta de MP
+     * @return PaymentEntity registro final persistido
+     */
+    public PaymentEntity complete(PaymentEntity creating, PaymentEntity payment) {
+        payment.setId(creating.getId());
+        payment.setCompanyId(creating.getCompanyId());
+        payment.setExternalReference(creating.getExternalReference());
+        payment.setCreatedAt(creating.getCreatedAt());
+        if (writeBehind.isEnabled()) {
+            // El upsert del flush ya solo completa filas que siguen en "creating"
+            payment.setVersion(creating.getVersion());
+            return write(payment);
+        }
+        if (paymentRepository.completeIfStatus(creating.getId(), PaymentStatus.CREATING, payment) == 1) {
+            payment.setVersion(creating.getVersion() + 1);
+            return payment;
+        }
+        log.info("El pago {} ya fue actualizado por un webhook, se conserva ese estado", creating.getId());
+        return paymentRepository.findLatestById(creating.getId()).orElse(payment);
+    }
+
+    /**
+     * Marca como fallido un registro "creating" cuya llamada a MercadoPago termino en error. Si un
+     * webhook ya lo actualizo, se deja como esta.
+     *
+     * @param creating registro insertado en la fase 1
+     * @param cause error devuelto por la estrategia
+     */
+    public void fail(PaymentEntity creating, Throwable cause) {
+        log.warn("No se pudo generar el pago {} en MercadoPago: {}", creating.getId(), cause.getMessage());
+        if (writeBehind.isEnabled()) {
+            creating.setStatus(PaymentStatus.FAILED);
+            creating.setStatusDetail("creation_failed");
+            write(creating);
+            return;
+        }
+        paymentRepository.updateStatusIfStatus(creating.getId(), PaymentStatus.CREATING, PaymentStatus.FAILED, "creation_failed");
+    }
+
+    private PaymentEntity write(PaymentEntity payment) {
+        try {
+            writeBehind.write(payment);
+            return payment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo registrar el pago en el journal", e);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mercadopago.core.MPRequestOptions;
+import inncome.modulo_mp.config.MPCredentialRegistry;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentType;
+import inncome.modulo_mp.persistence.entity.PaymentEntity;
+import inncome.modulo_mp.persistence.repository.CompanyTokenRepository;
+import inncome.modulo_mp.persistence.repository.PaymentRepository;
+import inncome.modulo_mp.utils.PaymentUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Resuelve al arrancar los pagos que quedaron en "creating" por una caida en el medio de la
+ * llamada a MercadoPago.
+ *
+ * <p>Cada registro "creating" tiene la referencia externa que se envio a MP, asi que se busca
+ * con {@code /v1/payments/search}: si MP tiene un pago con esa referencia se completa el registro
+ * con su estado, si no se marca como fallido (la preferencia u orden nunca llego a cobrarse). Una
+ * preferencia puede tener varios intentos: se toma el aprobado y, si no hay, el ultimo actualizado;
+ * los demas llegan por webhook a su propio registro.</p>
+ *
+ * <p>Cada pago se aplica por separado con un update condicional sobre "creating", asi un pago que
+ * ya actualizo un webhook (o que recupero otra instancia al arrancar a la vez) no falla el arranque
+ * ni se pisa; un error con un pago no afecta a los demas.</p>
+ *
+ * @see PaymentRecordService
+ * @since 1.0
+ */
+@Slf4j
+@Service
+public class PaymentRecoveryService {
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private CompanyTokenRepository companyTokenRepository;
+
+    @Autowired
+    private MPCredentialRegistry credentialRegistry;
+
+    @Autowired
+    private WebClient mercadoPagoWebClient;
+
+    @Value("${mercado.pago.payment.recovery.stale-after-s:120}")
+    private long staleAfterSeconds; // Antiguedad minima, para no tocar pagos en curso de otra instancia
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverStalePayments() {
+        List<PaymentEntity> stale = paymentRepository.findByStatusAndCreatedAtBefore(
+                PaymentStatus.CREATING, LocalDateTime.now().minusSeconds(staleAfterSeconds));
+
+        if (stale.isEmpty()) {
+            return;
+        }
+
+        log.info("Recuperando {} pagos que quedaron en estado creating", stale.size());
+        for (PaymentEntity payment : stale) {
+            try {
+                if (recover(payment)) {
+                    log.info("Pago {} recuperado con estado {}", payment.getId(), payment.getStatus());
+                } else {
+                    log.info("El pago {} ya no estaba en creating (webhook u otra instancia), se deja como esta", payment.getId());
+                }
+            } catch (Exception e) {
+                // Queda en creating y se reintenta en el proximo arranque
+                log.error("No se pudo recuperar el pago {}", payment.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Busca el pago en MP y lo aplica con un update condicional sobre "creating": un webhook o
+     * otra instancia que arranco a la vez pueden haberlo resuelto despues de leerlo.
+     *
+     * @return true si se aplico, false si el registro ya no estaba en "creating"
+     */
+    private boolean recover(PaymentEntity payment) {
+        MPRequestOptions options = payment.getCompanyId() == null
+                ? credentialRegistry.platform()
+                : companyTokenRepository.findById(payment.getCompanyId())
+                        .map(credentialRegistry::forCompany)
+                        .orElseGet(credentialRegistry::platform);
+
+        JsonNode search = mercadoPagoWebClient
+                .get()
+                .uri(uriBuilder -> uriBuilder.path("/v1/payments/search")
+                        .queryParam("external_reference", payment.getExternalReference())
+                        .queryParam("sort", "date_last_updated")
+                        .queryParam("criteria", "desc")
+                        .build())
+                .headers(headers -> headers.setBearerAuth(options.getAccessToken()))
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .block();
+
+        JsonNode results = search == null ? null : search.path("results");
+        if (results == null || results.isEmpty()) {
+            payment.setStatus(PaymentStatus.FAILED);
+            payment.setStatusDetail("not_found_in_mp");
+            return paymentRepository.updateStatusIfStatus(payment.getId(), PaymentStatus.CREATING,
+                    PaymentStatus.FAILED, "not_found_in_mp") == 1;
+        } else {
+            JsonNode mpPayment = pick(results);
+            payment.setPayment_id(mpPayment.get("id").asText());
+            payment.setStatus(PaymentStatus.fromMercadoPago(mpPayment.get("status").asText()));
+            payment.setStatusDetail(mpPayment.get("status_detail").asText());
+            payment.setPaymentType(PaymentType.fromMercadoPago(mpPayment.get("payment_type_id").asText()));
+            payment.setPaymentMethod(mpPayment.get("payment_method_id").asText());
+            payment.setDateCreated(PaymentUtils.parseDate(mpPayment.get("date_created").asText()));
+            if (mpPayment.hasNonNull("date_approved")) {
+                payment.setDateApproved(PaymentUtils.parseDate(mpPayment.get("date_approved").asText()));
+            }
+            return paymentRepository.completeIfStatus(payment.getId(), PaymentStatus.CREATING, payment) == 1;
+        }
+    }
+
+    /**
+     * De los intentos de pago de la referencia, el aprobado o si no el ultimo actualizado.
+     */
+    private static JsonNode pick(JsonNode results) {
+        JsonNode newest = null;
+        Instant newestUpdate = null;
+        for (JsonNode result : results) {
+            if (PaymentStatus.fromMercadoPago(result.path("status").asText()) == PaymentStatus.APPROVED) {
+                return result;
+            }
+            Instant updated = PaymentUtils.parseDate(result.path("date_last_updated").asText(null));
+            if (newest == null || (updated != null && (newestUpdate == null || updated.isAfter(newestUpdate)))) {
+                newest = result;
+                newestUpdate = updated;
+            }
+        }
+        return newest;
+    }
+}
@@ -0,0 +1,200 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentType;
+import inncome.modulo_mp.utils.PaymentUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Migra las filas de payment_entity del esquema anterior (montos double, fechas y estados como
+ * texto) a las columnas tipadas.
+ *
+ * <p>{@code ddl-auto=update} agrega las columnas nuevas pero no toca las viejas, asi que al arrancar:</p>
+ * <ul>
+ *   <li>las columnas viejas NOT NULL pasan a aceptar null, para que los inserts nuevos no fallen</li>
+ *   <li>las filas sin {@code amount} se convierten en lotes de {@code batch-size}, recorriendo por id
+ *   (keyset), con un {@code batchUpdate} por lote; nunca se carga la tabla entera en memoria</li>
+ *   <li>con {@code drop-legacy-columns=true}, al terminar se borran las columnas viejas</li>
+ * </ul>
+ *
+ * <p>Corre antes de aceptar trafico (y antes del replay del write-behind y de la recuperacion de
+ * pagos), asi ninguna consulta ve una fila a medio migrar. Con el esquema nuevo no hace nada.
+ * Durante un deploy con instancias viejas todavia escribiendo, las filas que estas inserten se
+ * migran en el proximo arranque.</p>
+ *
+ * @since 1.0
+ */
+@Slf4j
+@Service
+@DependsOn("entityManagerFactory") // Las columnas nuevas las crea Hibernate
+public class PaymentSchemaBackfill {
+
+    private static final String TABLE = "payment_entity";
+
+    private static final List<String> LEGACY_COLUMNS = List.of(
+            "status", "payment_type_id", "transaction_amount", "commission", "net_received_amount",
+            "currency_id", "date_created", "date_approved");
+
+    private static final String SELECT_SQL =
+            "select id, status, payment_type_id, transaction_amount, commission, net_received_amount, currency_id, " +
+            "date_created, date_approved from payment_entity where id > ? and amount is null order by id limit ?";
+
+    private static final String UPDATE_SQL =
+            "update payment_entity set status_code = ?, payment_type_code = ?, amount = ?, marketplace_fee = ?, " +
+            "net_amount = ?, currency = ?, mp_created_at = ?, mp_approved_at = ? where id = ? and amount is null";
+
+    // Antes se guardaba String.valueOf(Optional), por ejemplo "Optional[ARS]"
+    private static final Pattern CURRENCY = Pattern.compile("\\b([A-Z]{3})\\b");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${mercado.pago.schema.backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${mercado.pago.schema.backfill.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${mercado.pago.schema.backfill.drop-legacy-columns:false}")
+    private boolean dropLegacyColumns;
+
+    /**
+     * Columna de la tabla: si acepta null y su tipo, para poder redefinirla.
+     */
+    private record ColumnInfo(boolean nullable, String type) {
+    }
+
+    private record LegacyRow(long id, String status, String paymentType, double amount, double fee, double net,
+                             String currency, String dateCreated, String dateApproved) {
+    }
+
+    @PostConstruct
+    public void migrate() {
+        if (!enabled) {
+            return;
+        }
+        Map<String, ColumnInfo> columns = columns();
+        if (!columns.containsKey("transaction_amount")) {
+            return; // Esquema nuevo o ya migrado
+        }
+
+        // Los double primitivos y los @NotBlank se crearon NOT NULL y los inserts nuevos no los completan
+        for (String column : LEGACY_COLUMNS) {
+            ColumnInfo info = columns.get(column);
+            if (info != null && !info.nullable()) {
+                jdbcTemplate.execute("alter table " + TABLE + " modify " + column + " " + info.type() + " null");
+                log.info("Columna {}.{} ahora acepta null", TABLE, column);
+            }
+        }
+
+        long migrated = backfill();
+
+        if (dropLegacyColumns) {
+            for (String column : LEGACY_COLUMNS) {
+                if (columns.containsKey(column)) {
+                    jdbcTemplate.execute("alter table " + TABLE + " drop column " + column);
+                }
+            }
+            log.info("Se borraron las columnas del esquema anterior de {}", TABLE);
+        }
+        if (migrated > 0) {
+            log.info("Migradas {} filas de {} al esquema tipado", migrated, TABLE);
+        }
+    }
+
+    private long backfill() {
+        long lastId = 0;
+        long migrated = 0;
+        while (true) {
+            List<LegacyRow> rows = jdbcTemplate.query(SELECT_SQL, (rs, i) -> new LegacyRow(
+                    rs.getLong("id"), rs.getString("status"), rs.getString("payment_type_id"),
+                    rs.getDouble("transaction_amount"), rs.getDouble("commission"), rs.getDouble("net_received_amount"),
+                    rs.getString("currency_id"), rs.getString("date_created"), rs.getString("date_approved")),
+                    lastId, batchSize);
+            if (rows.isEmpty()) {
+                return migrated;
+            }
+
+            jdbcTemplate.batchUpdate(UPDATE_SQL, rows, rows.size(), (ps, row) -> {
+                Instant created = PaymentUtils.parseDate(row.dateCreated());
+                Instant approved = PaymentUtils.parseDate(row.dateApproved());
+                ps.setShort(1, PaymentStatus.fromMercadoPago(row.status()).code());
+                if (row.paymentType() == null) {
+                    ps.setNull(2, Types.SMALLINT);
+                } else {
+                    ps.setShort(2, PaymentType.fromMercadoPago(row.paymentType()).code());
+                }
+                ps.setBigDecimal(3, PaymentUtils.amount(row.amount()));
+                ps.setBigDecimal(4, PaymentUtils.amount(row.fee()));
+                ps.setBigDecimal(5, PaymentUtils.amount(row.net()));
+                ps.setString(6, currency(row.currency()));
+                ps.setTimestamp(7, created == null ? null : Timestamp.from(created));
+                ps.setTimestamp(8, approved == null ? null : Timestamp.from(approved));
+                ps.setLong(9, row.id());
+            });
+
+            lastId = rows.getLast().id();
+            migrated += rows.size();
+            meterRegistry.counter("mp.schema.backfill.rows").increment(rows.size());
+            log.info("Backfill de {}: {} filas migradas (hasta id {})", TABLE, migrated, lastId);
+        }
+    }
+
+    private static String currency(String legacy) {
+        if (legacy == null) {
+            return PaymentUtils.DEFAULT_CURRENCY;
+        }
+        Matcher matcher = CURRENCY.matcher(legacy.toUpperCase(Locale.ROOT));
+        return matcher.find() ? matcher.group(1) : PaymentUtils.DEFAULT_CURRENCY;
+    }
+
+    /**
+     * Columnas de la tabla, si aceptan null y su tipo (con el largo, para los de texto).
+     */
+    private Map<String, ColumnInfo> columns() {
+        return jdbcTemplate.execute((ConnectionCallback<Map<String, ColumnInfo>>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            Map<String, ColumnInfo> columns = new HashMap<>();
+            for (String table : new String[]{TABLE, TABLE.toUpperCase(Locale.ROOT)}) {
+                try (ResultSet rs = metaData.getColumns(connection.getCatalog(), null, table, null)) {
+                    while (rs.next()) {
+                        int dataType = rs.getInt("DATA_TYPE");
+                        String type = rs.getString("TYPE_NAME");
+                        if (dataType == Types.VARCHAR || dataType == Types.CHAR || dataType == Types.NVARCHAR) {
+                            type += "(" + rs.getInt("COLUMN_SIZE") + ")";
+                        }
+                        columns.put(rs.getString("COLUMN_NAME").toLowerCase(Locale.ROOT),
+                                new ColumnInfo(rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls, type));
+                    }
+                }
+                if (!columns.isEmpty()) {
+                    break;
+                }
+            }
+            return columns;
+        });
+    }
+}
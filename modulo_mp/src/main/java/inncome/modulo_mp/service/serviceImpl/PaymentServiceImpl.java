@@ -1,24 +1,21 @@
 package inncome.modulo_mp.service.serviceImpl;
 
-import com.mercadopago.MercadoPagoConfig;
-import com.mercadopago.client.payment.PaymentClient;
-import com.mercadopago.exceptions.MPApiException;
-import com.mercadopago.resources.payment.Payment;
 import inncome.modulo_mp.config.MPConfig;
+import inncome.modulo_mp.exception.IdempotencyKeyConflictException;
 import inncome.modulo_mp.exception.ResourceNotFoundException;
 import inncome.modulo_mp.factory.MPStrategyFactory;
 import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
 import inncome.modulo_mp.persistence.dto.PaymentResponseDto;
 import inncome.modulo_mp.persistence.entity.CompanyToken;
 import inncome.modulo_mp.persistence.entity.PaymentEntity;
-import inncome.modulo_mp.persistence.repository.CompanyTokenRepository;
 import inncome.modulo_mp.persistence.repository.PaymentRepository;
 import inncome.modulo_mp.service.PaymentService;
 import inncome.modulo_mp.strategy.PaymentGenerationStrategy;
-import jakarta.transaction.Transactional;
+import inncome.modulo_mp.utils.PaymentUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 @Slf4j
 @Service
@@ -28,7 +25,7 @@ public class PaymentServiceImpl implements PaymentService {
     private PaymentRepository paymentRepository;
 
     @Autowired
-    private CompanyTokenRepository companyTokenRepository;
+    private CompanyTokenCache companyTokenCache;
 
     @Autowired
     private MercadoPagoAuthServiceImpl authService;
@@ -39,6 +36,12 @@ public class PaymentServiceImpl implements PaymentService {
     @Autowired
     private MPConfig mpConfig;
 
+    @Autowired
+    private PaymentRecordService recordService;
+
+    @Autowired
+    private PaymentIdempotencyStore idempotencyStore;
+
     /**
      * Genera un pago utilizando MercadoPago según el tipo de pago especificado.
      *
@@ -49,17 +52,19 @@ public class PaymentServiceImpl implements PaymentService {
      *
      * <p>Flujo de procesamiento:</p>
      * <ul>
-     *   <li>Selección de estrategia según el tipo de pago</li>
-     *   <li>Para split payment: validación y refresh del token de empresa</li>
-     *   <li>Generación del pago mediante la estrategia seleccionada</li>
-     *   <li>Construcción de la respuesta con datos del pago</li>
-     *   <li>Persistencia del pago en la base de datos</li>
+     *   <li>Selección de estrategia según el tipo de pago y validación del request, antes de escribir
+     *   nada en la base</li>
+     *   <li>Para split payment: validación del token de empresa, que se refresca en segundo plano</li>
+     *   <li>Inserción de un registro local "creating" en una transacción corta</li>
+     *   <li>Generación del pago mediante la estrategia seleccionada, sin transacción abierta</li>
+     *   <li>Finalización del registro con los datos de MercadoPago en otra transacción corta</li>
      * </ul>
      *
      * <p>Para pagos divididos (splitPayment = true):</p>
      * <ul>
-     *   <li>Busca y valida la empresa por ID</li>
-     *   <li>Refresca el token de autenticación automáticamente</li>
+     *   <li>Busca y valida la empresa por ID, desde {@link CompanyTokenCache}</li>
+     *   <li>Verifica que el token de autenticación siga vigente; si vencio, lo refresca una sola vez
+     *   por compañia aunque haya pagos concurrentes</li>
      *   <li>Aplica comisiones según la configuración</li>
      * </ul>
      *
@@ -70,133 +75,94 @@ public class PaymentServiceImpl implements PaymentService {
      *         incluyendo ID, estado, metodo de pago y monto
      *
      * @throws ResourceNotFoundException si no se encuentra la empresa para pagos divididos
-     * @throws Exception si ocurre un error durante la generación del pago o comunicación con MercadoPago
+     * @throws Exception si el request no pasa la validación de la estrategia, o si ocurre un error
+     *         durante la generación del pago o comunicación con MercadoPago
      *
      * @see PaymentRequestDto
      * @see PaymentResponseDto
      * @see PaymentGenerationStrategy
      * @since 1.0
      */
-    @Transactional
     @Override
     public PaymentResponseDto generatePayment (PaymentRequestDto dto) throws Exception {
 
         //Genero la estrategia
         PaymentGenerationStrategy strategy = strategyFactory.getStrategy(dto.getPaymentTypeId());
+        // Un request invalido se rechaza sin dejar registro "creating" ni "failed"
+        strategy.validate(dto);
 
+        CompanyToken company = null;
         if (dto.getSplitPayment()) {
-            CompanyToken company = companyTokenRepository.findCompanyTokenById(dto.getCompanyId())
+            company = companyTokenCache.get(dto.getCompanyId())
                     .orElseThrow(() -> new ResourceNotFoundException("No se encontro la compañia"));
-            authService.refreshToken(company);
-
-            PaymentEntity payment = strategy.generatePayment(dto, company);
-
-            PaymentResponseDto responseDto =  PaymentResponseDto.builder()
-                    .id(payment.getPayment_id())
-                    .description(payment.getDescription())
-                    .status(payment.getStatus())
-                    .statusDetail(payment.getStatusDetail())
-                    .paymentMethodId(payment.getPaymentMethod())
-                    .paymentTypeId(payment.getPaymentType())
-                    .transactionAmount((float) payment.getTotalAmount())
-                    .build();
-
-
-            paymentRepository.save(payment);
-
-            return responseDto;
-        } else {
-            PaymentEntity payment = strategy.generatePayment(dto, null);
-
-            PaymentResponseDto responseDto =  PaymentResponseDto.builder()
-                    .id(payment.getPayment_id())
-                    .description(payment.getDescription())
-                    .status(payment.getStatus())
-                    .statusDetail(payment.getStatusDetail())
-                    .paymentMethodId(payment.getPaymentMethod())
-                    .paymentTypeId(payment.getPaymentType())
-                    .transactionAmount((float) payment.getTotalAmount())
-                    .build();
-
+            company = authService.ensureValidToken(company); // Normalmente ya lo renovo CompanyTokenRefresher
+        }
 
-            paymentRepository.save(payment);
+        // Fase 1: registro local corto, la transaccion se cierra antes de ir a MP
+        PaymentEntity creating = recordService.begin(dto);
 
-            return responseDto;
+        // Fase 2: llamada a MercadoPago sin transaccion ni conexion a la base
+        PaymentEntity payment;
+        try {
+            payment = strategy.generatePayment(dto, company);
+        } catch (Exception e) {
+            recordService.fail(creating, e);
+            throw e;
         }
 
+        // Fase 3: se completa el registro en otra transaccion corta
+        return PaymentUtils.toResponseDto(recordService.complete(creating, payment));
     }
 
     /**
-     * Busca un pago por su ID en la base de datos local.
+     * Genera un pago de forma idempotente segun el header {@code Idempotency-Key} del cliente.
      *
-     * <p>Este metodo es utilizado principalmente por el sistema de webhooks para
-     * localizar pagos existentes cuando se reciben notificaciones de cambio de estado
-     * desde MercadoPago. Realiza una búsqueda directa en la base de datos local.</p>
+     * <p>Sin clave se comporta igual que {@link #generatePayment(PaymentRequestDto)}. Con clave, el
+     * primer request ejecuta el pago y los reintentos reciben la misma respuesta sin llamar a MP; si
+     * llegan mientras el primero esta en curso, lo esperan. La clave tambien se manda a MP como
+     * {@code X-Idempotency-Key} de la orden.</p>
      *
-     * @param payment_id el ID único del pago a buscar en la base de datos
+     * @param dto el objeto de solicitud de pago
+     * @param idempotencyKey la clave del cliente, o null
      *
-     * @return PaymentEntity la entidad del pago encontrada, o null si no existe
+     * @return PaymentResponseDto la respuesta del primer intento exitoso con esa clave
      *
-     * @see PaymentEntity
+     * @throws IdempotencyKeyConflictException si la clave se uso con otro body, o si el primer intento sigue
+     *         en curso despues de esperarlo {@code mercado.pago.payment.idempotency.wait-timeout-ms}
+     * @throws Exception si ocurre un error durante la generación del pago o comunicación con MercadoPago
+     *
+     * @see PaymentIdempotencyStore
      * @since 1.0
      */
     @Override
-    public PaymentEntity findById (Long payment_id)  {
-        return paymentRepository.findById(payment_id).orElse(null);
+    public PaymentResponseDto generatePayment (PaymentRequestDto dto, String idempotencyKey) throws Exception {
+        if (idempotencyKey == null) {
+            return generatePayment(dto);
+        }
+        return idempotencyStore.execute(idempotencyKey, dto, () -> {
+            dto.setIdempotencyKey(idempotencyKey);
+            return generatePayment(dto);
+        });
     }
 
-
     /**
-     * Actualiza el estado de un pago consultando directamente la API de MercadoPago.
-     *
-     * <p>Este metodo es utilizado principalmente por webhooks para sincronizar el estado
-     * de pagos locales con el estado real en MercadoPago. Es especialmente útil para
-     * pagos generados con Checkout Pro donde el estado inicial es "pendiente" y debe
-     * actualizarse una vez que el usuario completa el pago.</p>
-     *
-     * <p>Proceso de actualización:</p>
-     * <ul>
-     *   <li>Configura el token de acceso global de MercadoPago</li>
-     *   <li>Consulta el estado actual del pago en la API de MercadoPago</li>
-     *   <li>Busca el pago correspondiente en la base de datos local</li>
-     *   <li>Actualiza los campos status y statusDetail</li>
-     *   <li>Persiste los cambios en la base de datos</li>
-     * </ul>
+     * Busca un pago por su ID de MercadoPago en la base de datos local.
      *
-     * @param paymentId el ID del pago en MercadoPago que se desea actualizar
+     * <p>Este metodo es utilizado principalmente por el sistema de webhooks para
+     * localizar pagos existentes cuando se reciben notificaciones de cambio de estado
+     * desde MercadoPago. Consulta la columna {@code payment_id}, que tiene un indice unico. Es solo
+     * lectura, asi que con replica configurada se resuelve en ella.</p>
      *
-     * @return PaymentEntity la entidad del pago actualizada con el nuevo estado
+     * @param payment_id el ID del pago en MercadoPago (el data.id del webhook)
      *
-     * @throws MPApiException si ocurre un error al consultar la API de MercadoPago
-     * @throws Exception si no se puede consultar el estado del pago o actualizar la base de datos
+     * @return PaymentEntity la entidad del pago encontrada, o null si no existe
      *
      * @see PaymentEntity
-     * @see PaymentClient
      * @since 1.0
      */
-
-    public PaymentEntity updatePaymentStatusFromMP(Long paymentId) throws Exception {
-        try {
-            // Configurar MercadoPago (usar el token apropiado)
-            MercadoPagoConfig.setAccessToken(mpConfig.getAccessToken());
-
-            // Consultar el pago en MercadoPago
-            PaymentClient paymentClient = new PaymentClient();
-            Payment mpPayment = paymentClient.get(paymentId);
-
-            // Buscar el pago en la base de datos
-            PaymentEntity paymentEntity = findById(paymentId);
-
-            // Actualizar status y status_detail
-            paymentEntity.setStatus(mpPayment.getStatus());
-            paymentEntity.setStatusDetail(mpPayment.getStatusDetail());
-
-            // Guardar cambios
-            return paymentRepository.save(paymentEntity);
-
-        } catch (MPApiException e) {
-            log.error("Error consultando pago en MercadoPago: {}", e.getApiResponse().getContent());
-            throw new Exception("Error consultando estado del pago en MercadoPago");
-        }
+    @Override
+    @Transactional(readOnly = true)
+    public PaymentEntity findById (Long payment_id)  {
+        return paymentRepository.findByPaymentId(payment_id.toString()).orElse(null);
     }
 }
@@ -0,0 +1,528 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mercadopago.client.payment.PaymentClient;
+import com.mercadopago.core.MPRequestOptions;
+import com.mercadopago.resources.payment.Payment;
+import inncome.modulo_mp.config.MPCredentialRegistry;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import inncome.modulo_mp.persistence.id.SnowflakeIdGenerator;
+import inncome.modulo_mp.utils.PaymentUtils;
+import inncome.modulo_mp.utils.SingleFlight;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Resuelve en lote el estado de muchos pagos notificados a la vez.
+ *
+ * <p>En lugar de un {@code GET /v1/payments/{id}} por webhook, busca con
+ * {@code /v1/payments/search} los pagos actualizados en la ultima ventana (ordenados por
+ * {@code date_last_updated}) y se queda con los pedidos. El indice de la busqueda puede estar
+ * atrasado respecto del pago: un resultado solo se acepta si su {@code date_last_updated} no es
+ * anterior a la notificacion. Los que no aparecen en las paginas recorridas, o aparecen con un
+ * estado viejo, se consultan uno por uno. La busqueda recorre como mucho
+ * {@code mercado.pago.reconcile.scan-factor} filas por pago del lote, asi un lote chico no barre
+ * toda la ventana, y cada compañia se consulta con su propio access token (los pagos que no estan
+ * en la base, con el de la plataforma). Los cambios se aplican con {@code batchUpdate}
+ * de JDBC condicionales: una notificacion atrasada no pisa un estado posterior.</p>
+ *
+ * <p>Una preferencia de Checkout Pro puede tener varios intentos de pago con la misma referencia
+ * externa. El primero que se notifica toma el registro que todavia tiene el id de la preferencia
+ * u orden; los siguientes se guardan en un registro propio, asi un intento rechazado no esconde
+ * al aprobado.</p>
+ *
+ * <p>Si varios workers resuelven el mismo pago a la vez (webhooks repetidos de MP en lotes
+ * distintos), comparten el GET y tambien la escritura: el estado lo escribe un solo lote y los
+ * demas esperan su resultado ({@link SingleFlight}).</p>
+ *
+ * @see WebhookWorker
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class PaymentStatusReconciler {
+
+    // El IN (...) lleva los predecesores validos del estado nuevo (ver PaymentStatus)
+    private static final String UPDATE_STATUS_SQL =
+            "update payment_entity set status_code = ?, status_detail = ?, version = version + 1 where payment_id = ? and status_code in (%s)";
+
+    // Registros de Checkout Pro / API Orders que todavia tienen el id de la preferencia u orden
+    private static final String REFERENCE_SQL =
+            "select id, payment_id, external_reference from payment_entity where external_reference in (%s)";
+
+    // El payment_id del where evita tomar un registro que otro worker acaba de asignar a otro pago
+    private static final String CLAIM_BY_REFERENCE_SQL =
+            "update payment_entity set payment_id = ?, status_code = ?, status_detail = ?, version = version + 1 "
+                    + "where id = ? and %s and status_code in (%s)";
+
+    // Otro intento de pago de la misma preferencia: registro propio con los datos del primero
+    private static final String INSERT_ATTEMPT_SQL =
+            "insert into payment_entity (id, payment_id, status_code, status_detail, description, payment_type_code, payment_method_id, "
+                    + "payer_identification_type, payer_email, payer_identification_number, amount, marketplace_fee, net_amount, currency, "
+                    + "mp_created_at, company_id, external_reference, created_at, version) "
+                    + "select ?, ?, ?, ?, description, payment_type_code, payment_method_id, payer_identification_type, payer_email, "
+                    + "payer_identification_number, amount, marketplace_fee, net_amount, currency, mp_created_at, company_id, "
+                    + "external_reference, ?, 0 from payment_entity where id = ?";
+
+    private static final String COMPANY_SQL =
+            "select payment_id, company_id from payment_entity where payment_id in (%s)";
+
+    private static final String EXISTING_SQL =
+            "select payment_id from payment_entity where payment_id in (%s)";
+
+    @Autowired
+    private WebClient mercadoPagoWebClient;
+
+    @Autowired
+    private PaymentClient paymentClient;
+
+    @Autowired
+    private MPCredentialRegistry credentialRegistry;
+
+    @Autowired
+    private CompanyTokenCache companyTokenCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // GETs individuales en curso, compartidos entre lotes de distintos workers
+    private SingleFlight<Long, Payment> paymentLookups;
+
+    // Escrituras en curso por estado resuelto, compartidas entre lotes de distintos workers
+    private SingleFlight<PaymentStatusUpdate, WriteOutcome> statusWrites;
+
+    @Value("${mercado.pago.reconcile.search-threshold:3}")
+    private int searchThreshold; // Con menos pagos que esto conviene el GET individual
+
+    @Value("${mercado.pago.reconcile.search-window-minutes:30}")
+    private int searchWindowMinutes;
+
+    @Value("${mercado.pago.reconcile.page-size:1000}")
+    private int pageSize;
+
+    @Value("${mercado.pago.reconcile.max-pages:5}")
+    private int maxPages;
+
+    @Value("${mercado.pago.reconcile.scan-factor:4}")
+    private int scanFactor; // Filas de la busqueda por pago del lote
+
+    @Value("${mercado.pago.reconcile.search-tolerance-ms:0}")
+    private long searchToleranceMs; // Cuanto antes de la notificacion puede ser el date_last_updated de la busqueda
+
+    @PostConstruct
+    public void init() {
+        paymentLookups = new SingleFlight<>("payment-get", meterRegistry);
+        statusWrites = new SingleFlight<>("payment-status-write", meterRegistry);
+    }
+
+    /**
+     * Estado de un pago segun MercadoPago.
+     */
+    public record PaymentStatusUpdate(Long paymentId, String status, String statusDetail, String externalReference) {
+    }
+
+    /**
+     * Resultado de escribir un estado: aplicado, descartado por atrasado, o sin pago local.
+     */
+    private enum WriteOutcome { APPLIED, STALE, MISSING }
+
+    /**
+     * Consulta el estado actual de los pagos en MercadoPago.
+     *
+     * @param notifications ids de pago en MP, con el momento de su ultima notificacion
+     * @return Map con el estado de cada pago resuelto; los que fallaron no estan
+     */
+    public Map<Long, PaymentStatusUpdate> resolve(Map<Long, Instant> notifications) {
+        Set<Long> paymentIds = notifications.keySet();
+        Map<Long, PaymentStatusUpdate> resolved = new HashMap<>();
+        DistributionSummary.builder("mp.reconcile.batch.size").register(meterRegistry).record(paymentIds.size());
+
+        int stragglers = 0;
+        for (Map.Entry<Long, Set<Long>> account : byCompany(paymentIds).entrySet()) {
+            MPRequestOptions options = credentials(account.getKey());
+            Set<Long> ids = account.getValue();
+
+            if (ids.size() >= searchThreshold) {
+                int before = resolved.size();
+                try {
+                    search(ids, notifications, options.getAccessToken(), resolved);
+                } catch (Exception e) {
+                    log.warn("Fallo la busqueda en lote de {} pagos, se consultan uno por uno: {}", ids.size(), e.getMessage());
+                }
+                meterRegistry.counter("mp.reconcile.resolved", "source", "search").increment(resolved.size() - before);
+            }
+
+            // Rezagados: no aparecieron en las filas recorridas
+            for (Long paymentId : ids) {
+                if (resolved.containsKey(paymentId)) {
+                    continue;
+                }
+                stragglers++;
+                try {
+                    Payment payment = paymentLookups.execute(paymentId, () -> paymentClient.get(paymentId, options));
+                    resolved.put(paymentId, new PaymentStatusUpdate(paymentId, payment.getStatus(), payment.getStatusDetail(), payment.getExternalReference()));
+                    meterRegistry.counter("mp.reconcile.resolved", "source", "get").increment();
+                } catch (Exception e) {
+                    log.warn("No se pudo consultar el pago {} en MercadoPago: {}", paymentId, e.getMessage());
+                }
+            }
+        }
+
+        log.debug("Reconciliados {}/{} pagos, {} por GET individual", resolved.size(), paymentIds.size(), stragglers);
+        return resolved;
+    }
+
+    /**
+     * Agrupa los pagos por la compañia del registro local; la clave null son los de la plataforma
+     * y los que todavia no estan con ese {@code payment_id} (la primera notificacion de Checkout Pro).
+     */
+    private Map<Long, Set<Long>> byCompany(Set<Long> paymentIds) {
+        if (paymentIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, Long> companies = new HashMap<>();
+        jdbcTemplate.query(COMPANY_SQL.formatted(placeholders(paymentIds.size())), rs -> {
+            long companyId = rs.getLong(2);
+            companies.put(rs.getString(1), rs.wasNull() ? null : companyId);
+        }, paymentIds.stream().map(String::valueOf).toArray());
+
+        Map<Long, Set<Long>> groups = new HashMap<>();
+        for (Long paymentId : paymentIds) {
+            groups.computeIfAbsent(companies.get(paymentId.toString()), key -> new HashSet<>()).add(paymentId);
+        }
+        return groups;
+    }
+
+    private MPRequestOptions credentials(Long companyId) {
+        if (companyId == null) {
+            return credentialRegistry.platform();
+        }
+        return companyTokenCache.get(Optional.of(companyId))
+                .filter(company -> company.getAccessToken() != null)
+                .map(credentialRegistry::forCompany)
+                .orElseGet(credentialRegistry::platform);
+    }
+
+    /**
+     * Resultado de aplicar un lote: los pagos actualizados y los que existen pero cuyo estado se
+     * descarto por no ser una transicion valida (notificaciones atrasadas).
+     */
+    public record ApplyResult(Set<Long> applied, Set<Long> stale) {
+
+        public boolean isResolvedLocally(Long paymentId) {
+            return applied.contains(paymentId) || stale.contains(paymentId);
+        }
+    }
+
+    /**
+     * Aplica los estados en la base con updates condicionales en batch, uno por estado destino
+     * (cambian los predecesores del {@code IN}). Los que no existen con ese {@code payment_id} se
+     * buscan por referencia externa: toman el registro que todavia no tiene un id de pago de MP o,
+     * si ya lo tomo otro intento, se insertan en un registro nuevo.
+     *
+     * <p>Los estados que otro worker esta escribiendo en ese momento no se vuelven a escribir: se
+     * espera el resultado de ese lote.</p>
+     *
+     * @param updates estados resueltos
+     * @return ApplyResult con los pagos aplicados y los descartados por transicion invalida
+     * @throws Exception si falla el batch propio o el de otro worker que se espero
+     */
+    public ApplyResult apply(Collection<PaymentStatusUpdate> updates) throws Exception {
+        Set<Long> applied = new HashSet<>();
+        Set<Long> stale = new HashSet<>();
+        statusWrites.executeAll(updates, this::write).forEach((update, outcome) -> {
+            if (outcome == WriteOutcome.APPLIED) {
+                applied.add(update.paymentId());
+            } else if (outcome == WriteOutcome.STALE) {
+                stale.add(update.paymentId());
+            }
+        });
+        return new ApplyResult(applied, stale);
+    }
+
+    private Map<PaymentStatusUpdate, WriteOutcome> write(List<PaymentStatusUpdate> updates) {
+        Map<PaymentStatusUpdate, WriteOutcome> outcomes = new HashMap<>();
+        Set<Long> applied = new HashSet<>();
+        List<PaymentStatusUpdate> missing = new ArrayList<>();
+
+        for (Map.Entry<PaymentStatus, List<PaymentStatusUpdate>> group : groupByStatus(updates).entrySet()) {
+            short code = group.getKey().code();
+            List<Short> allowed = group.getKey().allowedPredecessorCodes();
+            List<PaymentStatusUpdate> batch = group.getValue();
+
+            int[] counts = jdbcTemplate.batchUpdate(UPDATE_STATUS_SQL.formatted(placeholders(allowed.size())), batch, batch.size(), (ps, update) -> {
+                ps.setShort(1, code);
+                ps.setString(2, update.statusDetail());
+                ps.setString(3, update.paymentId().toString());
+                setAll(ps, 4, allowed);
+            })[0];
+            collect(batch, counts, applied, missing);
+        }
+
+        // Solo es atrasado si el registro de ese pago existe; por referencia nunca se descarta
+        Set<Long> stale = existing(missing);
+        if (!stale.isEmpty()) {
+            log.info("Se descartaron {} estados atrasados (transicion no valida)", stale.size());
+            meterRegistry.counter("mp.payment.status.stale").increment(stale.size());
+        }
+        List<PaymentStatusUpdate> byReference = missing.stream()
+                .filter(update -> !stale.contains(update.paymentId()) && update.externalReference() != null)
+                .toList();
+        applied.addAll(writeByReference(byReference));
+        for (PaymentStatusUpdate update : updates) {
+            if (applied.contains(update.paymentId())) {
+                outcomes.put(update, WriteOutcome.APPLIED);
+            } else if (stale.contains(update.paymentId())) {
+                outcomes.put(update, WriteOutcome.STALE);
+            } else {
+                outcomes.put(update, WriteOutcome.MISSING);
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * Escribe los pagos que todavia no tienen registro propio, buscandolos por referencia externa.
+     *
+     * <p>Si hay un registro de la referencia que todavia no tiene un id de pago de MP (tiene el de la
+     * preferencia u orden, o ninguno), se le asigna este pago. Si todos ya tienen el de otro intento,
+     * se inserta uno nuevo copiando los datos del pedido. Una referencia sin registros queda
+     * pendiente: la creacion del pago todavia no termino.</p>
+     *
+     * @return ids de pago escritos
+     */
+    private Set<Long> writeByReference(List<PaymentStatusUpdate> updates) {
+        if (updates.isEmpty()) {
+            return Set.of();
+        }
+        List<String> references = updates.stream().map(PaymentStatusUpdate::externalReference).distinct().toList();
+        Map<String, List<LocalRecord>> records = new HashMap<>();
+        jdbcTemplate.query(REFERENCE_SQL.formatted(placeholders(references.size())), rs -> {
+            records.computeIfAbsent(rs.getString(3), key -> new ArrayList<>()).add(new LocalRecord(rs.getLong(1), rs.getString(2)));
+        }, references.toArray());
+
+        Set<Long> written = new HashSet<>();
+        for (PaymentStatusUpdate update : updates) {
+            List<LocalRecord> candidates = records.getOrDefault(update.externalReference(), List.of());
+            if (candidates.isEmpty()) {
+                continue;
+            }
+            PaymentStatus status = PaymentStatus.from(update.status()).orElseThrow();
+            Optional<LocalRecord> unassigned = candidates.stream().filter(record -> !isPaymentId(record.paymentId())).findFirst();
+            if (unassigned.isPresent() && claim(unassigned.get(), update, status)) {
+                unassigned.get().assign(update.paymentId());
+                written.add(update.paymentId());
+            } else if (insertAttempt(candidates.get(0), update, status)) {
+                written.add(update.paymentId());
+            }
+        }
+        if (!written.isEmpty()) {
+            meterRegistry.counter("mp.reconcile.by_reference").increment(written.size());
+        }
+        return written;
+    }
+
+    private boolean claim(LocalRecord record, PaymentStatusUpdate update, PaymentStatus status) {
+        List<Short> allowed = status.allowedPredecessorCodes();
+        boolean withoutId = record.paymentId() == null;
+        String sql = CLAIM_BY_REFERENCE_SQL.formatted(withoutId ? "payment_id is null" : "payment_id = ?", placeholders(allowed.size()));
+        return jdbcTemplate.update(sql, ps -> {
+            ps.setString(1, update.paymentId().toString());
+            ps.setShort(2, status.code());
+            ps.setString(3, update.statusDetail());
+            ps.setLong(4, record.id());
+            if (withoutId) {
+                setAll(ps, 5, allowed);
+            } else {
+                ps.setString(5, record.paymentId());
+                setAll(ps, 6, allowed);
+            }
+        }) == 1;
+    }
+
+    private boolean insertAttempt(LocalRecord source, PaymentStatusUpdate update, PaymentStatus status) {
+        try {
+            jdbcTemplate.update(INSERT_ATTEMPT_SQL, SnowflakeIdGenerator.snowflake().nextId(), update.paymentId().toString(),
+                    status.code(), update.statusDetail(), LocalDateTime.now(), source.id());
+            log.info("Nuevo intento {} para la referencia {}, se guarda en un registro propio", update.paymentId(), update.externalReference());
+            return true;
+        } catch (DuplicateKeyException e) {
+            // Otra instancia lo inserto a la vez; el reintento del evento lo actualiza por payment_id
+            return false;
+        }
+    }
+
+    /**
+     * Los ids de pago de MP son numericos; los de preferencias y ordenes no.
+     */
+    private static boolean isPaymentId(String paymentId) {
+        return paymentId != null && !paymentId.isEmpty() && paymentId.chars().allMatch(Character::isDigit);
+    }
+
+    /**
+     * Registro local de una referencia externa, con el payment_id que tenia al leerlo.
+     */
+    private static final class LocalRecord {
+
+        private final long id;
+        private String paymentId;
+
+        private LocalRecord(long id, String paymentId) {
+            this.id = id;
+            this.paymentId = paymentId;
+        }
+
+        long id() {
+            return id;
+        }
+
+        String paymentId() {
+            return paymentId;
+        }
+
+        void assign(Long mpPaymentId) {
+            this.paymentId = mpPaymentId.toString();
+        }
+    }
+
+    private Map<PaymentStatus, List<PaymentStatusUpdate>> groupByStatus(Collection<PaymentStatusUpdate> updates) {
+        Map<PaymentStatus, List<PaymentStatusUpdate>> groups = new EnumMap<>(PaymentStatus.class);
+        for (PaymentStatusUpdate update : updates) {
+            Optional<PaymentStatus> status = PaymentStatus.from(update.status());
+            if (status.isEmpty()) {
+                log.warn("Estado de MercadoPago desconocido {} para el pago {}", update.status(), update.paymentId());
+                continue;
+            }
+            groups.computeIfAbsent(status.get(), key -> new ArrayList<>()).add(update);
+        }
+        return groups;
+    }
+
+    /**
+     * De los pagos que no se actualizaron, devuelve los que tienen registro con ese
+     * {@code payment_id} (transicion descartada).
+     */
+    private Set<Long> existing(List<PaymentStatusUpdate> missing) {
+        if (missing.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> found = new HashSet<>();
+        jdbcTemplate.query(EXISTING_SQL.formatted(placeholders(missing.size())), rs -> {
+            found.add(rs.getString(1));
+        }, missing.stream().map(update -> update.paymentId().toString()).toArray());
+
+        Set<Long> existing = new HashSet<>();
+        for (PaymentStatusUpdate update : missing) {
+            if (found.contains(update.paymentId().toString())) {
+                existing.add(update.paymentId());
+            }
+        }
+        return existing;
+    }
+
+    private static void collect(List<PaymentStatusUpdate> batch, int[] counts, Set<Long> applied, List<PaymentStatusUpdate> missing) {
+        for (int i = 0; i < counts.length; i++) {
+            // SUCCESS_NO_INFO (-2): el driver no informa filas, se asume aplicado
+            if (counts[i] != 0) {
+                applied.add(batch.get(i).paymentId());
+            } else {
+                missing.add(batch.get(i));
+            }
+        }
+    }
+
+    private static void setAll(PreparedStatement ps, int from, List<Short> values) throws SQLException {
+        for (int i = 0; i < values.size(); i++) {
+            ps.setShort(from + i, values.get(i));
+        }
+    }
+
+    private boolean isBehind(JsonNode payment, Instant notifiedAt) {
+        Instant lastUpdated = PaymentUtils.parseDate(payment.path("date_last_updated").asText(null));
+        return lastUpdated == null || lastUpdated.isBefore(notifiedAt.minusMillis(searchToleranceMs));
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * Recorre las ultimas actualizaciones de la cuenta hasta encontrar todos los pagos o agotar el
+     * presupuesto de filas: {@code scanFactor} por pago, con tope en {@code maxPages} paginas. Un
+     * resultado actualizado antes de la notificacion puede ser el estado anterior y se descarta.
+     */
+    private void search(Set<Long> paymentIds, Map<Long, Instant> notifications, String token, Map<Long, PaymentStatusUpdate> resolved) {
+        int budget = Math.min(paymentIds.size() * scanFactor, maxPages * pageSize);
+        int found = 0;
+        int offset = 0;
+
+        while (offset < budget && found < paymentIds.size()) {
+            int limit = Math.min(pageSize, budget - offset);
+            int from = offset;
+            JsonNode response = mercadoPagoWebClient
+                    .get()
+                    .uri(uriBuilder -> uriBuilder.path("/v1/payments/search")
+                            .queryParam("sort", "date_last_updated")
+                            .queryParam("criteria", "desc")
+                            .queryParam("range", "date_last_updated")
+                            .queryParam("begin_date", "NOW-" + searchWindowMinutes + "MINUTES")
+                            .queryParam("end_date", "NOW")
+                            .queryParam("limit", limit)
+                            .queryParam("offset", from)
+                            .build())
+                    .headers(headers -> headers.setBearerAuth(token))
+                    .retrieve()
+                    .bodyToMono(JsonNode.class)
+                    .block();
+
+            JsonNode results = response == null ? null : response.path("results");
+            if (results == null || results.isEmpty()) {
+                return;
+            }
+            for (JsonNode payment : results) {
+                long id = payment.path("id").asLong();
+                if (!paymentIds.contains(id)) {
+                    continue;
+                }
+                if (isBehind(payment, notifications.get(id))) {
+                    meterRegistry.counter("mp.reconcile.search.behind").increment();
+                    continue; // Lo resuelve el GET individual
+                }
+                if (resolved.put(id, new PaymentStatusUpdate(id, payment.path("status").asText(),
+                        payment.path("status_detail").asText(), payment.path("external_reference").asText(null))) == null) {
+                    found++;
+                }
+            }
+            offset += results.size();
+            if (offset >= response.path("paging").path("total").asLong()) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import inncome.modulo_mp.persistence.entity.PaymentEntity;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Modo write-behind de los registros de pago ({@code mercado.pago.payment.write-behind.enabled}).
+ *
+ * <p>Con el modo activo, {@link PaymentRecordService} no espera a la base: agrega el pago al
+ * {@link PaymentJournal} (durable, con fsync) y devuelve. Un flusher escribe en la base cada
+ * {@code flush-interval-ms} con un {@code batchUpdate} de JDBC, quedandose solo con la ultima
+ * version de cada pago. Los pagos en "creating" se retienen {@code hold-creating-s}, asi el
+ * registro "creating" y el final normalmente viajan como un unico insert.</p>
+ *
+ * <p>Al arrancar se reproduce el journal y se escribe todo lo pendiente antes de aceptar
+ * trafico; los "creating" que quedaron los resuelve despues {@link PaymentRecoveryService}. Las
+ * escrituras son un upsert que solo pisa filas que siguen en "creating", asi reproducir un pago
+ * ya escrito no deshace un estado que llego despues por webhook.</p>
+ *
+ * <p>Mientras un pago esta solo en el journal no existe en la base: un webhook que llega antes
+ * del flush se reintenta con el backoff del {@link WebhookWorker}.</p>
+ *
+ * @see PaymentRecordService
+ * @since 1.0
+ */
+@Slf4j
+@Service
+@DependsOn("paymentSchemaBackfill") // El replay escribe en las columnas nuevas
+public class PaymentWriteBehindService {
+
+    private static final String[] COLUMNS = {
+            "payment_id", "status_code", "description", "status_detail", "payment_type_code", "payment_method_id",
+            "payer_identification_type", "payer_email", "payer_identification_number", "amount",
+            "marketplace_fee", "net_amount", "currency", "mp_created_at", "mp_approved_at", "company_id",
+            "external_reference", "created_at"
+    };
+
+    private static final String UPSERT_SQL = upsertSql();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${mercado.pago.payment.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${mercado.pago.payment.write-behind.dir:data/payment-journal}")
+    private String directory;
+
+    @Value("${mercado.pago.payment.write-behind.fsync:true}")
+    private boolean fsync; // Sin fsync una caida del host (no solo del proceso) puede perder pagos
+
+    @Value("${mercado.pago.payment.write-behind.segment-bytes:16777216}")
+    private long segmentBytes;
+
+    @Value("${mercado.pago.payment.write-behind.batch-size:500}")
+    private int batchSize;
+
+    @Value("${mercado.pago.payment.write-behind.hold-creating-s:30}")
+    private long holdCreatingSeconds;
+
+    private PaymentJournal journal;
+
+    private Timer flushTimer;
+
+    // Pagos pendientes de escribir, por id local, en orden de llegada
+    private final Map<Long, Pending> pending = new LinkedHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private static final class Pending {
+        private PaymentEntity latest;
+        private final List<PaymentJournal.Entry> entries = new ArrayList<>();
+        private final Instant firstSeen = Instant.now();
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        journal = new PaymentJournal(Path.of(directory), objectMapper, fsync, segmentBytes);
+        flushTimer = Timer.builder("mp.payment.write_behind.flush").register(meterRegistry);
+        meterRegistry.gauge("mp.payment.write_behind.pending", pending, map -> map.size());
+
+        List<PaymentJournal.Entry> replayed = journal.replay();
+        replayed.forEach(this::track);
+        if (!replayed.isEmpty()) {
+            log.info("Reproduciendo {} entradas del journal de pagos", replayed.size());
+            // El proceso anterior ya no va a completar sus "creating": se escriben tal cual
+            while (flush(true) > 0) {
+                // hasta vaciar o hasta que falle la base
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Agrega el pago al journal; se escribe en la base en el proximo flush.
+     *
+     * @param payment pago con id asignado
+     * @throws IOException si no se pudo escribir el journal; el pago no quedo registrado
+     */
+    public void write(PaymentEntity payment) throws IOException {
+        // Copia: el llamador puede seguir modificando su instancia
+        PaymentEntity snapshot = payment.toBuilder().build();
+        track(journal.append(snapshot));
+    }
+
+    @Scheduled(fixedDelayString = "${mercado.pago.payment.write-behind.flush-interval-ms:200}")
+    public void flushPending() {
+        if (!enabled) {
+            return;
+        }
+        while (flush(false) >= batchSize) {
+            // lotes llenos: seguir sin esperar al proximo tick
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        // Los "creating" en curso quedan en el journal y se reproducen al arrancar
+        while (flush(false) >= batchSize) {
+            // vaciar
+        }
+        journal.close();
+    }
+
+    /**
+     * Escribe un lote de pagos pendientes.
+     *
+     * @param force incluir los "creating" sin esperar {@code hold-creating-s}
+     * @return cantidad de pagos escritos
+     */
+    private int flush(boolean force) {
+        List<Pending> batch = take(force);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        try {
+            flushTimer.record(() -> {
+                jdbcTemplate.batchUpdate(UPSERT_SQL, batch, batch.size(), (ps, item) -> {
+                    PaymentEntity p = item.latest;
+                    int i = 1;
+                    ps.setLong(i++, p.getId());
+                    ps.setString(i++, p.getPayment_id());
+                    ps.setShort(i++, p.getStatus().code());
+                    ps.setString(i++, p.getDescription());
+                    ps.setString(i++, p.getStatusDetail());
+                    setShort(ps, i++, p.getPaymentType() == null ? null : p.getPaymentType().code());
+                    ps.setString(i++, p.getPaymentMethod());
+                    ps.setString(i++, p.getPayerType());
+                    ps.setString(i++, p.getPayerEmail());
+                    ps.setString(i++, p.getPayerNumber());
+                    ps.setBigDecimal(i++, p.getTotalAmount());
+                    ps.setBigDecimal(i++, p.getMarketplaceFee());
+                    ps.setBigDecimal(i++, p.getNetReceivedAmount());
+                    ps.setString(i++, p.getCurrencyId());
+                    ps.setTimestamp(i++, timestamp(p.getDateCreated()));
+                    ps.setTimestamp(i++, timestamp(p.getDateApproved()));
+                    if (p.getCompanyId() == null) {
+                        ps.setNull(i++, Types.BIGINT);
+                    } else {
+                        ps.setLong(i++, p.getCompanyId());
+                    }
+                    ps.setString(i++, p.getExternalReference());
+                    ps.setTimestamp(i++, p.getCreatedAt() == null ? null : Timestamp.valueOf(p.getCreatedAt()));
+                    ps.setLong(i, p.getVersion() == null ? 0 : p.getVersion());
+                });
+            });
+        } catch (Exception e) {
+            log.warn("No se pudo escribir un lote de {} pagos del journal, se reintenta: {}", batch.size(), e.getMessage());
+            restore(batch);
+            meterRegistry.counter("mp.payment.write_behind.flush.errors").increment();
+            return 0;
+        }
+
+        List<PaymentJournal.Entry> written = new ArrayList<>();
+        batch.forEach(item -> written.addAll(item.entries));
+        journal.release(written);
+        meterRegistry.counter("mp.payment.write_behind.written").increment(batch.size());
+        return batch.size();
+    }
+
+    private void track(PaymentJournal.Entry entry) {
+        lock.lock();
+        try {
+            Pending item = pending.computeIfAbsent(entry.payment().getId(), id -> new Pending());
+            item.latest = entry.payment();
+            item.entries.add(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<Pending> take(boolean force) {
+        Instant holdUntil = Instant.now().minus(Duration.ofSeconds(holdCreatingSeconds));
+        List<Pending> batch = new ArrayList<>();
+        lock.lock();
+        try {
+            Iterator<Pending> iterator = pending.values().iterator();
+            while (iterator.hasNext() && batch.size() < batchSize) {
+                Pending item = iterator.next();
+                boolean creating = item.latest.getStatus() == PaymentStatus.CREATING;
+                if (force || !creating || item.firstSeen.isBefore(holdUntil)) {
+                    batch.add(item);
+                    iterator.remove();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return batch;
+    }
+
+    private void restore(List<Pending> batch) {
+        lock.lock();
+        try {
+            for (Pending item : batch) {
+                Pending newer = pending.get(item.latest.getId());
+                if (newer == null) {
+                    pending.put(item.latest.getId(), item);
+                } else {
+                    // Llego una version mas nueva mientras se escribia: conserva las entradas viejas para liberarlas juntas
+                    newer.entries.addAll(0, item.entries);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void setShort(PreparedStatement ps, int index, Short value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.SMALLINT);
+        } else {
+            ps.setShort(index, value);
+        }
+    }
+
+    private static Timestamp timestamp(Instant instant) {
+        return instant == null ? null : Timestamp.from(instant);
+    }
+
+    /**
+     * Insert con upsert que solo completa filas que siguen en "creating" (el status se asigna
+     * al final porque MySQL evalua las asignaciones en orden).
+     */
+    private static String upsertSql() {
+        StringBuilder sql = new StringBuilder("insert into payment_entity (id");
+        for (String column : COLUMNS) {
+            sql.append(", ").append(column);
+        }
+        sql.append(", version) values (?");
+        sql.append(", ?".repeat(COLUMNS.length + 1));
+        sql.append(") on duplicate key update ");
+        String guard = "status_code = " + PaymentStatus.CREATING.code();
+        for (String column : COLUMNS) {
+            if (!column.equals("status_code")) {
+                sql.append(column).append(" = case when ").append(guard)
+                        .append(" then values(").append(column).append(") else ").append(column).append(" end, ");
+            }
+        }
+        sql.append("version = case when ").append(guard).append(" then version + 1 else version end, ");
+        sql.append("status_code = case when ").append(guard).append(" then values(status_code) else status_code end");
+        return sql.toString();
+    }
+}
@@ -0,0 +1,87 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import inncome.modulo_mp.config.MPCredentialRegistry;
+import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
+import inncome.modulo_mp.persistence.entity.CompanyToken;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentType;
+import inncome.modulo_mp.persistence.entity.PaymentEntity;
+import inncome.modulo_mp.strategy.ReactivePaymentGenerationStrategy;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.Locale;
+import java.util.Objects;
+
+import static inncome.modulo_mp.utils.PaymentUtils.*;
+
+@Component
+public class ReactivePaymentAccountMoneyStrategy implements ReactivePaymentGenerationStrategy {
+
+    private final WebClient mercadoPagoWebClient;
+
+    private final MPCredentialRegistry credentialRegistry;
+
+    public ReactivePaymentAccountMoneyStrategy(WebClient mercadoPagoWebClient, MPCredentialRegistry credentialRegistry) {
+        this.mercadoPagoWebClient = mercadoPagoWebClient;
+        this.credentialRegistry = credentialRegistry;
+    }
+
+    /**
+     * Version reactiva de {@link PaymentAccountMoneyStrategy#generatePayment(PaymentRequestDto, CompanyToken)}.
+     *
+     * <p>La preferencia se crea directamente contra {@code /checkout/preferences} con WebClient,
+     * en lugar del {@code PreferenceClient} bloqueante del SDK. Para split payment se usa el token
+     * de la compañia y se aplica la comision del 10%.</p>
+     *
+     * @param dto el objeto de solicitud de pago con metodo "account_money" y moneda
+     * @param companyToken el token de la empresa para pagos divididos. Puede ser null
+     *
+     * @return Mono con la entidad de pago creada, o error si el metodo o la moneda no son validos
+     *
+     * @see PaymentAccountMoneyStrategy
+     * @since 1.0
+     */
+    @Override
+    public Mono<PaymentEntity> generatePayment(PaymentRequestDto dto, CompanyToken companyToken) {
+        try {
+            validate(dto);
+        } catch (Exception e) {
+            return Mono.error(e);
+        }
+
+        boolean split = dto.getSplitPayment() && companyToken != null;
+        double commision = split ? dto.getTotalAmount() * 0.1 : 0.0;
+        double netAmount = dto.getTotalAmount() - commision;
+        String accessToken = split
+                ? credentialRegistry.forCompany(companyToken).getAccessToken()
+                : credentialRegistry.platform().getAccessToken();
+
+        return mercadoPagoWebClient
+                .post()
+                .uri("/checkout/preferences")
+                .contentType(MediaType.APPLICATION_JSON)
+                .headers(headers -> headers.setBearerAuth(accessToken))
+                .bodyValue(buildPreferenceBody(dto, commision))
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .map(preference -> getPaymentEntityFromPreference(dto, commision, netAmount, preference));
+    }
+
+    /**
+     * Mismas validaciones que {@link PaymentAccountMoneyStrategy#validate(PaymentRequestDto)}.
+     *
+     * @param dto el objeto de solicitud de pago
+     * @throws Exception si el metodo de pago no es "account_money" o la moneda está vacía
+     */
+    @Override
+    public void validate(PaymentRequestDto dto) throws Exception {
+        if (!Objects.equals(dto.getPaymentMethodId(), PaymentType.ACCOUNT_MONEY.name().toLowerCase(Locale.ROOT)) || !Objects.equals(dto.getPaymentTypeId(), PaymentType.ACCOUNT_MONEY.name().toLowerCase(Locale.ROOT))) {
+            throw new Exception("El metodo de pago debe ser account_money");
+        } else if (dto.getCurrencyId().isEmpty()) {
+            throw new Exception("El tipo de moneda esta vacio");
+        }
+    }
+}
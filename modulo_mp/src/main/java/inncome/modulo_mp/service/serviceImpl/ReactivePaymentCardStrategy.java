@@ -0,0 +1,102 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mercadopago.exceptions.MPException;
+import inncome.modulo_mp.config.MPCredentialRegistry;
+import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
+import inncome.modulo_mp.persistence.entity.CompanyToken;
+import inncome.modulo_mp.persistence.entity.PaymentEntity;
+import inncome.modulo_mp.strategy.ReactivePaymentGenerationStrategy;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static inncome.modulo_mp.utils.PaymentUtils.*;
+
+@Component
+public class ReactivePaymentCardStrategy implements ReactivePaymentGenerationStrategy {
+
+    private final WebClient mercadoPagoWebClient;
+
+    private final MPCredentialRegistry credentialRegistry;
+
+    public ReactivePaymentCardStrategy(WebClient mercadoPagoWebClient, MPCredentialRegistry credentialRegistry) {
+        this.mercadoPagoWebClient = mercadoPagoWebClient;
+        this.credentialRegistry = credentialRegistry;
+    }
+
+    /**
+     * Version reactiva de {@link PaymentCardStrategy#generatePayment(PaymentRequestDto, CompanyToken)}.
+     *
+     * <p>Aplica las mismas validaciones y genera el mismo body, pero la orden (o la preferencia,
+     * si es split payment) se crea con WebClient sin {@code block()}, por lo que ningun hilo queda
+     * esperando la respuesta de MercadoPago.</p>
+     *
+     * @param dto el objeto de solicitud de pago con token de tarjeta, cuotas y banco emisor
+     * @param companyToken el token de la empresa para pagos divididos. Puede ser null
+     *
+     * @return Mono con la entidad de pago creada, o error si faltan datos de la tarjeta
+     *
+     * @see PaymentCardStrategy
+     * @since 1.0
+     */
+    @Override
+    public Mono<PaymentEntity> generatePayment(PaymentRequestDto dto, CompanyToken companyToken) {
+        try {
+            validate(dto);
+        } catch (MPException e) {
+            return Mono.error(e);
+        }
+
+        if (dto.getSplitPayment() && companyToken != null) {
+            double percentage = 0.1;
+            double commision = dto.getTotalAmount() * percentage;
+            double netAmount = dto.getTotalAmount() - commision;
+            String accessToken = credentialRegistry.forCompany(companyToken).getAccessToken();
+
+            return mercadoPagoWebClient
+                    .post()
+                    .uri("/checkout/preferences")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .headers(headers -> headers.setBearerAuth(accessToken))
+                    .bodyValue(buildPreferenceBody(dto, commision))
+                    .retrieve()
+                    .bodyToMono(JsonNode.class)
+                    .map(preference -> getPaymentEntityFromPreference(dto, commision, netAmount, preference));
+        }
+
+        //API ORDER
+        return mercadoPagoWebClient
+                .post()
+                .uri("/v1/orders")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Idempotency-Key", UUID.randomUUID().toString())
+                .headers(headers -> headers.setBearerAuth(credentialRegistry.platform().getAccessToken()))
+                .bodyValue(buildOrderBody(dto, Optional.ofNullable(dto.getExternalReference())
+                        .orElseGet(PaymentCardStrategy::generateExternalReference)))
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .map(order -> getPaymentEntityFromOrder(dto, order));
+    }
+
+    /**
+     * Mismas validaciones que {@link PaymentCardStrategy#validate(PaymentRequestDto)}.
+     *
+     * @param dto el objeto de solicitud de pago
+     * @throws MPException si el token, cuotas o ID del banco están vacíos
+     */
+    @Override
+    public void validate(PaymentRequestDto dto) throws MPException {
+        if (dto.getToken().isEmpty()){
+            throw new MPException("Token vacio en el dto");
+        } else if (dto.getInstallments().isEmpty()) {
+            throw new MPException("Cuotas vacio en el dto");
+        } else if (dto.getIssuerId().isEmpty()) {
+            throw new MPException("Banco vacio en el dto");
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import inncome.modulo_mp.exception.ResourceNotFoundException;
+import inncome.modulo_mp.factory.MPStrategyFactory;
+import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
+import inncome.modulo_mp.persistence.dto.PaymentResponseDto;
+import inncome.modulo_mp.persistence.entity.CompanyToken;
+import inncome.modulo_mp.service.ReactivePaymentService;
+import inncome.modulo_mp.strategy.ReactivePaymentGenerationStrategy;
+import inncome.modulo_mp.utils.PaymentUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.Optional;
+
+@Slf4j
+@Service
+public class ReactivePaymentServiceImpl implements ReactivePaymentService {
+
+    @Autowired
+    private CompanyTokenCache companyTokenCache;
+
+    @Autowired
+    private MercadoPagoAuthServiceImpl authService;
+
+    @Autowired
+    private MPStrategyFactory strategyFactory;
+
+    @Autowired
+    private Scheduler blockingScheduler;
+
+    @Autowired
+    private PaymentRecordService recordService;
+
+    /**
+     * Genera un pago de punta a punta sin bloquear hilos del event loop.
+     *
+     * <p>La llamada a MercadoPago la resuelve la estrategia reactiva, con el mismo flujo en dos
+     * fases que el camino sincronico. Los accesos a la base (busqueda de la compañia, verificacion del
+     * token, registro "creating" y finalizacion del pago) siguen siendo JPA
+     * bloqueante, por eso se ejecutan en el scheduler de trabajo bloqueante (virtual threads o
+     * {@code boundedElastic} segun el modo de ejecucion) y nunca sobre el event loop.</p>
+     *
+     * @param dto el objeto de solicitud de pago
+     *
+     * @return Mono con la respuesta del pago generado
+     *
+     * @see PaymentServiceImpl#generatePayment(PaymentRequestDto)
+     * @see ReactivePaymentGenerationStrategy
+     * @since 1.0
+     */
+    @Override
+    public Mono<PaymentResponseDto> generatePayment(PaymentRequestDto dto) {
+        ReactivePaymentGenerationStrategy strategy = strategyFactory.getReactiveStrategy(dto.getPaymentTypeId());
+        // Un request invalido se rechaza sin dejar registro "creating" ni "failed"
+        try {
+            strategy.validate(dto);
+        } catch (Exception e) {
+            return Mono.error(e);
+        }
+
+        Mono<Optional<CompanyToken>> company = dto.getSplitPayment()
+                ? Mono.fromCallable(() -> {
+                    CompanyToken companyToken = companyTokenCache.get(dto.getCompanyId())
+                            .orElseThrow(() -> new ResourceNotFoundException("No se encontro la compañia"));
+                    return Optional.of(authService.ensureValidToken(companyToken));
+                }).subscribeOn(blockingScheduler)
+                : Mono.just(Optional.empty());
+
+        return company
+                .flatMap(companyToken -> Mono.fromCallable(() -> recordService.begin(dto))
+                        .subscribeOn(blockingScheduler)
+                        .flatMap(creating -> strategy.generatePayment(dto, companyToken.orElse(null))
+                                .publishOn(blockingScheduler)
+                                .doOnError(e -> recordService.fail(creating, e))
+                                .map(payment -> recordService.complete(creating, payment))))
+                .map(PaymentUtils::toResponseDto);
+    }
+}
@@ -0,0 +1,149 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import inncome.modulo_mp.persistence.repository.WebhookDedupRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Descarta notificaciones de MercadoPago repetidas antes de encolarlas.
+ *
+ * <p>MP reenvia la misma notificacion si no recibe el 200 a tiempo; la clave es
+ * {@code notificationId:dataId}. Hay una cache acotada en memoria con TTL y, con
+ * {@code mercado.pago.webhook.dedup.mode=db}, una tabla {@code webhook_dedup} detras para que
+ * el duplicado se descarte aunque llegue a otra instancia.</p>
+ *
+ * <p>Metricas: {@code mp.webhook.dedup{result=hit|miss, layer}} y las de la cache
+ * ({@code cache.gets}, {@code cache.evictions}, etc. con {@code cache=mp.webhook.dedup}).</p>
+ *
+ * @see WebhookIngestionService
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class WebhookDeduplicator {
+
+    @Autowired
+    private WebhookDedupRepository dedupRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${mercado.pago.webhook.dedup.mode:memory}")
+    private String mode;
+
+    @Value("${mercado.pago.webhook.dedup.ttl-s:600}")
+    private long ttlS;
+
+    @Value("${mercado.pago.webhook.dedup.max-size:100000}")
+    private long maxSize;
+
+    private Cache<String, Boolean> seen;
+
+    @PostConstruct
+    public void init() {
+        seen = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlS))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, seen, "mp.webhook.dedup");
+    }
+
+    /**
+     * Registra la notificacion y devuelve si es la primera vez que se ve dentro del TTL.
+     *
+     * @param notificationId id de la notificacion de MP; si viene vacio no se deduplica
+     * @param dataId id del recurso notificado
+     * @return true si hay que procesarla, false si es un duplicado
+     */
+    public boolean firstSeen(String notificationId, String dataId) {
+        if (notificationId == null || notificationId.isBlank()) {
+            return true;
+        }
+        String key = key(notificationId, dataId);
+
+        if (seen.asMap().putIfAbsent(key, Boolean.TRUE) != null) {
+            count("hit", "memory");
+            return false;
+        }
+        try {
+            if (isDbMode() && !claimInDb(key)) {
+                count("hit", "db");
+                return false;
+            }
+        } catch (RuntimeException e) {
+            // Sin la tabla no se sabe si es duplicado: el reintento de MP tiene que poder pasar
+            seen.invalidate(key);
+            throw e;
+        }
+
+        count("miss", mode);
+        return true;
+    }
+
+    /**
+     * Olvida la notificacion, para que el reintento de MP se procese si no se pudo encolar. No
+     * deberia fallar: si falla el borrado en la tabla, la clave en memoria ya se olvido.
+     */
+    public void forget(String notificationId, String dataId) {
+        if (notificationId == null || notificationId.isBlank()) {
+            return;
+        }
+        String key = key(notificationId, dataId);
+        seen.invalidate(key);
+        if (isDbMode()) {
+            try {
+                dedupRepository.deleteById(key);
+            } catch (RuntimeException e) {
+                log.warn("No se pudo borrar la clave de deduplicacion {}, vence en {}s: {}", key, ttlS, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Borra las claves vencidas de la tabla (solo en modo db).
+     */
+    @Scheduled(fixedDelayString = "${mercado.pago.webhook.dedup.cleanup-interval-ms:300000}")
+    public void cleanup() {
+        if (isDbMode()) {
+            int deleted = dedupRepository.deleteExpired(LocalDateTime.now());
+            log.debug("Se borraron {} claves de deduplicacion vencidas", deleted);
+        }
+    }
+
+    private boolean claimInDb(String key) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiresAt = now.plusSeconds(ttlS);
+        try {
+            dedupRepository.insert(key, expiresAt);
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            // La clave ya existe: es duplicado salvo que este vencida
+            return dedupRepository.renewIfExpired(key, expiresAt, now) == 1;
+        }
+    }
+
+    private boolean isDbMode() {
+        return "db".equalsIgnoreCase(mode);
+    }
+
+    private void count(String result, String layer) {
+        meterRegistry.counter("mp.webhook.dedup", "result", result, "layer", layer).increment();
+    }
+
+    private static String key(String notificationId, String dataId) {
+        return notificationId + ":" + dataId;
+    }
+}
@@ -0,0 +1,110 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import inncome.modulo_mp.persistence.entity.Enum.WebhookEventStatus;
+import inncome.modulo_mp.persistence.entity.WebhookEvent;
+import inncome.modulo_mp.persistence.repository.WebhookEventRepository;
+import inncome.modulo_mp.utils.PaymentUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Recepcion de notificaciones de MercadoPago.
+ *
+ * <p>El webhook solo encola la notificacion en la tabla {@code webhook_event} y responde;
+ * la consulta a MP y la actualizacion del pago las hace {@link WebhookWorker}. Asi MP recibe
+ * el 200 en milisegundos y no reintenta por timeout durante un incidente.</p>
+ *
+ * @see WebhookDeduplicator
+ * @see WebhookWorker
+ * @since 1.0
+ */
+@Slf4j
+@Service
+public class WebhookIngestionService {
+
+    @Autowired
+    private WebhookEventRepository eventRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private WebhookDeduplicator deduplicator;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Inserta la notificacion en la cola local, lista para el proximo poll de los workers.
+     *
+     * <p>No se encola si es un reenvio de una notificacion ya recibida, ni si ya hay un evento
+     * PENDING para el mismo pago: ese evento todavia no consulto a MP, asi que cuando lo haga
+     * va a traer el estado mas nuevo. Se le adelanta el {@code notifiedAt}, para que el worker no
+     * acepte un resultado de la busqueda anterior a esta notificacion.</p>
+     *
+     * @param body body original de la notificacion
+     * @param dataId id del recurso notificado (data.id), ya validado
+     * @return Optional con el evento encolado, vacio si la notificacion se descarto por duplicada
+     */
+    public Optional<WebhookEvent> enqueue(Map<String, Object> body, String dataId) {
+        String notificationId = body.get("id") == null ? null : body.get("id").toString();
+
+        if (!deduplicator.firstSeen(notificationId, dataId)) {
+            log.debug("Webhook duplicado descartado: {}:{}", notificationId, dataId);
+            return Optional.empty();
+        }
+        try {
+            return insertOrCollapse(body, notificationId, dataId);
+        } catch (RuntimeException e) {
+            // Si no quedo encolada, el reintento de MP tiene que poder pasar
+            deduplicator.forget(notificationId, dataId);
+            throw e;
+        }
+    }
+
+    private Optional<WebhookEvent> insertOrCollapse(Map<String, Object> body, String notificationId, String dataId) {
+        Instant notifiedAt = Optional.ofNullable(PaymentUtils.parseDate(Objects.toString(body.get("date_created"), null)))
+                .orElseGet(Instant::now);
+        if (eventRepository.collapseIntoPending(dataId, notifiedAt) > 0) {
+            meterRegistry.counter("mp.webhook.dedup", "result", "collapsed", "layer", "pending").increment();
+            log.debug("Ya hay un evento pendiente para el pago {}, se descarta la notificacion", dataId);
+            return Optional.empty();
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+
+        WebhookEvent event = WebhookEvent.builder()
+                .notificationId(notificationId)
+                .type(Objects.toString(body.get("type"), null))
+                .action(Objects.toString(body.get("action"), null))
+                .dataId(dataId)
+                .payload(toJson(body))
+                .status(WebhookEventStatus.PENDING)
+                .attempts(0)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .notifiedAt(notifiedAt)
+                .build();
+
+        return Optional.of(eventRepository.save(event));
+    }
+
+    private String toJson(Map<String, Object> body) {
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            log.warn("No se pudo serializar el body del webhook: {}", e.getMessage());
+            return String.valueOf(body);
+        }
+    }
+}
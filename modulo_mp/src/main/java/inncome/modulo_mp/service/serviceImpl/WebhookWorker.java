@@ -0,0 +1,262 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import inncome.modulo_mp.persistence.entity.Enum.WebhookEventStatus;
+import inncome.modulo_mp.persistence.entity.WebhookEvent;
+import inncome.modulo_mp.persistence.repository.WebhookEventRepository;
+import inncome.modulo_mp.service.serviceImpl.PaymentStatusReconciler.ApplyResult;
+import inncome.modulo_mp.service.serviceImpl.PaymentStatusReconciler.PaymentStatusUpdate;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool acotado de workers que drena la cola de webhooks ({@code webhook_event}).
+ *
+ * <p>Cada poll junta los eventos que llegaron desde el anterior (hasta
+ * {@code mercado.pago.webhook.batch-size} por worker libre), los toma con un update condicional
+ * sobre el estado, por lo que varias instancias pueden drenar la misma tabla sin procesar dos
+ * veces un evento, y resuelve el lote completo con {@link PaymentStatusReconciler}. Los errores
+ * se reintentan con backoff exponencial con jitter; al agotar
+ * {@code mercado.pago.webhook.max-attempts} el evento queda en DEAD para revision manual.</p>
+ *
+ * @see WebhookIngestionService
+ * @since 1.0
+ */
+@Slf4j
+@Component
+public class WebhookWorker {
+
+    @Autowired
+    private WebhookEventRepository eventRepository;
+
+    @Autowired
+    private PaymentStatusReconciler reconciler;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${mercado.pago.webhook.workers:8}")
+    private int workers;
+
+    @Value("${mercado.pago.webhook.batch-size:200}")
+    private int batchSize;
+
+    @Value("${mercado.pago.webhook.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${mercado.pago.webhook.backoff-initial-ms:1000}")
+    private long backoffInitialMs;
+
+    @Value("${mercado.pago.webhook.backoff-max-ms:300000}")
+    private long backoffMaxMs;
+
+    @Value("${mercado.pago.webhook.lock-timeout-s:120}")
+    private long lockTimeoutS;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private final AtomicInteger inFlight = new AtomicInteger(); // Lotes en proceso
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void start() {
+        ThreadFactory threadFactory = virtualThreads
+                ? Thread.ofVirtual().name("mp-webhook-", 0).factory()
+                : Thread.ofPlatform().name("mp-webhook-", 0).daemon(true).factory();
+        executor = Executors.newFixedThreadPool(workers, threadFactory);
+
+        Gauge.builder("mp.webhook.in_flight", inFlight, AtomicInteger::get)
+                .description("Lotes de webhooks en proceso")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            // Los que queden en PROCESSING se liberan cuando venza el lock
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Toma lotes de eventos listos y los reparte entre los workers libres.
+     */
+    @Scheduled(fixedDelayString = "${mercado.pago.webhook.poll-interval-ms:200}")
+    public void poll() {
+        while (inFlight.get() < workers) {
+            LocalDateTime now = LocalDateTime.now();
+            List<Long> ready = eventRepository.findReadyIds(WebhookEventStatus.PENDING, now, PageRequest.of(0, batchSize));
+            if (ready.isEmpty()) {
+                return;
+            }
+
+            String token = UUID.randomUUID().toString();
+            if (eventRepository.claim(ready, token, now.plusSeconds(lockTimeoutS)) == 0) {
+                return; // Los tomo otra instancia, se reintenta en el proximo poll
+            }
+
+            inFlight.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    process(token);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+
+            if (ready.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Devuelve a la cola los eventos que quedaron tomados por un worker que murio.
+     */
+    @Scheduled(fixedDelayString = "${mercado.pago.webhook.lock-recovery-interval-ms:60000}")
+    public void releaseExpiredLocks() {
+        int released = eventRepository.releaseExpiredLocks(LocalDateTime.now());
+        if (released > 0) {
+            log.warn("Se liberaron {} eventos de webhook con el lock vencido", released);
+        }
+    }
+
+    void process(String token) {
+        List<WebhookEvent> events = eventRepository.findByClaimToken(token);
+        if (events.isEmpty()) {
+            return;
+        }
+
+        // Por pago, la notificacion mas nueva: la busqueda no puede devolver un estado anterior
+        Map<Long, Instant> notifications = new HashMap<>();
+        for (WebhookEvent event : events) {
+            Long paymentId = parse(event.getDataId()); // Null no deberia pasar, el webhook ya lo valida
+            if (paymentId != null) {
+                notifications.merge(paymentId, notifiedAt(event), (a, b) -> a.isAfter(b) ? a : b);
+            }
+        }
+        Set<Long> paymentIds = notifications.keySet();
+
+        Map<Long, PaymentStatusUpdate> resolved;
+        ApplyResult result;
+        try {
+            resolved = reconciler.resolve(notifications);
+            result = reconciler.apply(resolved.values());
+        } catch (Exception e) {
+            log.warn("Fallo el lote de {} webhooks: {}", events.size(), e.getMessage());
+            events.forEach(event -> fail(event, token, e.getClass().getSimpleName() + ": " + e.getMessage()));
+            return;
+        }
+
+        List<Long> done = new ArrayList<>();
+        for (WebhookEvent event : events) {
+            Long paymentId = parse(event.getDataId());
+            if (paymentId == null) {
+                fail(event, token, "data.id invalido");
+            } else if (!resolved.containsKey(paymentId)) {
+                fail(event, token, "No se pudo consultar el pago en MercadoPago");
+            } else if (!result.isResolvedLocally(paymentId)) {
+                // Puede llegar antes de que termine la creacion del pago, se reintenta
+                fail(event, token, "Pago no encontrado en base de datos: " + paymentId);
+            } else {
+                done.add(event.getId());
+            }
+        }
+
+        // Updates condicionales al token: si el lote tardo mas que el lock, no se pisa lo que hizo otro worker
+        if (!done.isEmpty()) {
+            int finished = eventRepository.finish(done, token, LocalDateTime.now());
+            count("done", finished);
+            expired(token, done.size() - finished);
+        }
+        log.debug("Lote de {} webhooks procesado ({} pagos, {} actualizados, {} descartados por atrasados)",
+                events.size(), paymentIds.size(), result.applied().size(), result.stale().size());
+    }
+
+    private static Instant notifiedAt(WebhookEvent event) {
+        if (event.getNotifiedAt() != null) {
+            return event.getNotifiedAt();
+        }
+        return event.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant();
+    }
+
+    private void fail(WebhookEvent event, String token, String error) {
+        String lastError = error.length() <= 500 ? error : error.substring(0, 500);
+        boolean dead = event.getAttempts() >= maxAttempts;
+        LocalDateTime nextAttemptAt = dead
+                ? event.getNextAttemptAt()
+                : LocalDateTime.now().plusNanos(backoffMillis(event.getAttempts()) * 1_000_000);
+        if (eventRepository.release(event.getId(), token, dead ? WebhookEventStatus.DEAD : WebhookEventStatus.PENDING,
+                nextAttemptAt, lastError) == 0) {
+            expired(token, 1);
+            return;
+        }
+
+        if (dead) {
+            log.error("Webhook {} (data.id={}) paso a DEAD tras {} intentos: {}",
+                    event.getId(), event.getDataId(), event.getAttempts(), error);
+            count("dead", 1);
+        } else {
+            log.warn("Webhook {} (data.id={}) fallo el intento {}: {}",
+                    event.getId(), event.getDataId(), event.getAttempts(), error);
+            count("retry", 1);
+        }
+    }
+
+    /**
+     * Eventos que el lote ya no tenia tomados al terminar: el lock vencio y los tiene la cola u otro worker.
+     */
+    private void expired(String token, int events) {
+        if (events > 0) {
+            log.warn("{} eventos del lote {} ya no estaban tomados al terminar (lock vencido), no se modificaron", events, token);
+            count("expired", events);
+        }
+    }
+
+    /**
+     * Backoff exponencial con jitter: entre la mitad y el total de initial * 2^(intento-1), con tope.
+     */
+    private long backoffMillis(int attempts) {
+        long exponential = backoffInitialMs << Math.min(attempts - 1, 20);
+        long capped = Math.min(exponential, backoffMaxMs);
+        return capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1);
+    }
+
+    private void count(String outcome, int events) {
+        meterRegistry.counter("mp.webhook.events", "outcome", outcome).increment(events);
+    }
+
+    private static Long parse(String dataId) {
+        try {
+            return Long.parseLong(dataId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
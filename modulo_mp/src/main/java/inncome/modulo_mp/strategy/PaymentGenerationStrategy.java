@@ -10,5 +10,15 @@ import inncome.modulo_mp.persistence.entity.CompanyToken;
 import inncome.modulo_mp.persistence.entity.PaymentEntity;
 
 public interface PaymentGenerationStrategy {
+
+    /**
+     * Valida que el request tenga los datos que la estrategia necesita, sin llamar a MercadoPago.
+     * Se ejecuta antes de insertar el registro "creating", asi un request invalido no deja filas.
+     *
+     * @param dto el objeto de solicitud de pago
+     * @throws Exception si falta algun dato o no corresponde a la estrategia
+     */
+    void validate(PaymentRequestDto dto) throws Exception;
+
     PaymentEntity generatePayment(PaymentRequestDto dto, CompanyToken companyToken) throws Exception;
 }
@@ -0,0 +1,24 @@
+package inncome.modulo_mp.strategy;
+
+import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
+import inncome.modulo_mp.persistence.entity.CompanyToken;
+import inncome.modulo_mp.persistence.entity.PaymentEntity;
+import reactor.core.publisher.Mono;
+
+/**
+ * Variante no bloqueante de {@link PaymentGenerationStrategy}: la llamada a MercadoPago
+ * se resuelve sobre el event loop de reactor-netty sin ocupar un hilo por checkout.
+ */
+public interface ReactivePaymentGenerationStrategy {
+
+    /**
+     * Igual que {@link PaymentGenerationStrategy#validate(PaymentRequestDto)}: se ejecuta antes de
+     * insertar el registro "creating".
+     *
+     * @param dto el objeto de solicitud de pago
+     * @throws Exception si falta algun dato o no corresponde a la estrategia
+     */
+    void validate(PaymentRequestDto dto) throws Exception;
+
+    Mono<PaymentEntity> generatePayment(PaymentRequestDto dto, CompanyToken companyToken);
+}
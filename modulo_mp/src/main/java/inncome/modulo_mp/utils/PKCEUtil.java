@@ -23,11 +23,27 @@ import java.util.Base64;
  * <p>Este mecanismo previene ataques de intercepción de códigos de autorización
  * en aplicaciones que no pueden mantener secretos de cliente de forma segura.</p>
  *
+ * <p>Las primitivas criptográficas se reutilizan: un único {@link SecureRandom} compartido
+ * (es thread-safe y se siembra una sola vez) y un {@link MessageDigest} SHA-256 por hilo,
+ * ya que no es thread-safe.</p>
+ *
  * @see <a href="https://tools.ietf.org/html/rfc7636">RFC 7636 - PKCE</a>
  * @since 1.0
  */
 public class PKCEUtil {
 
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final Base64.Encoder URL_ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e); // Toda JVM lo trae
+        }
+    });
+
     /**
      * Genera un code verifier aleatorio para el flujo PKCE.
      *
@@ -51,9 +67,7 @@ public class PKCEUtil {
      * @since 1.0
      */
     public static String generateCodeVerifier() {
-        byte[] random = new byte[64];
-        new SecureRandom().nextBytes(random);
-        return Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+        return randomToken(64);
     }
 
     /**
@@ -88,8 +102,28 @@ public class PKCEUtil {
      * @since 1.0
      */
     public static String generateCodeChallenge(String verifier) throws NoSuchAlgorithmException {
-        return Base64.getUrlEncoder().withoutPadding()
-                .encodeToString(MessageDigest.getInstance("SHA-256")
-                        .digest(verifier.getBytes(StandardCharsets.US_ASCII)));
+        MessageDigest digest = SHA_256.get();
+        digest.reset();
+        return URL_ENCODER.encodeToString(digest.digest(verifier.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * Genera el state del handshake OAuth: 32 bytes aleatorios en Base64 URL-safe.
+     *
+     * <p>Identifica el inicio del flujo en el callback sin exponer el id de la empresa y no se
+     * puede adivinar, asi que tambien protege el callback contra CSRF.</p>
+     *
+     * @return String el state, listo para usar como parametro de la URL de autorización
+     *
+     * @since 1.0
+     */
+    public static String generateState() {
+        return randomToken(32);
+    }
+
+    private static String randomToken(int bytes) {
+        byte[] random = new byte[bytes];
+        RANDOM.nextBytes(random);
+        return URL_ENCODER.encodeToString(random);
     }
 }
@@ -1,20 +1,37 @@
 package inncome.modulo_mp.utils;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.mercadopago.MercadoPagoConfig;
 import com.mercadopago.client.preference.*;
+import com.mercadopago.core.MPRequestOptions;
 import com.mercadopago.exceptions.MPApiException;
 import com.mercadopago.exceptions.MPException;
 import com.mercadopago.resources.preference.Preference;
 import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
+import inncome.modulo_mp.persistence.dto.PaymentResponseDto;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentType;
 import inncome.modulo_mp.persistence.entity.PaymentEntity;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 public class PaymentUtils {
 
+    public static final String DEFAULT_CURRENCY = "ARS";
+
+    private static final int AMOUNT_SCALE = 2;
+
     /**
      * Construye una entidad PaymentEntity a partir de los datos de preferencia y comisiones.
      *
@@ -49,20 +66,20 @@ public class PaymentUtils {
     public static PaymentEntity getPaymentEntity(PaymentRequestDto dto, double commision, double netAmount, List<PreferenceItemRequest> items, Preference preference) {
         return PaymentEntity.builder()
                 .payment_id(preference.getId())
-                .status("pending")
+                .status(PaymentStatus.PENDING)
                 .description(dto.getDescription())
                 .statusDetail("pending")
-                .paymentType(preference.getOperationType())
+                .paymentType(PaymentType.fromMercadoPago(dto.getPaymentTypeId()))
                 .paymentMethod(dto.getPaymentMethodId())
                 .payerType(preference.getPayer().getIdentification().getType())
                 .payerEmail(preference.getPayer().getEmail())
                 .payerNumber(preference.getPayer().getIdentification().getNumber())
-                .totalAmount(items.getFirst().getUnitPrice().doubleValue())
-                .marketplaceFee(commision)
-                .netReceivedAmount(netAmount)
+                .totalAmount(amount(items.getFirst().getUnitPrice()))
+                .marketplaceFee(amount(commision))
+                .netReceivedAmount(amount(netAmount))
                 .currencyId(preference.getItems().getFirst().getCurrencyId())
-                .dateCreated(preference.getDateCreated().toString())
-                .dateApproved(preference.getDateCreated().toString())
+                .dateCreated(preference.getDateCreated().toInstant())
+                .dateApproved(preference.getDateCreated().toInstant())
                 .build();
     }
 
@@ -141,6 +158,8 @@ public class PaymentUtils {
      * @param payer información completa del pagador incluyendo identificación y email
      * @param comission monto de comisión que se aplicará al pago (stored in metadata and marketplace fee)
      * @param client cliente de MercadoPago configurado para crear la preferencia
+     * @param requestOptions credenciales con las que se crea la preferencia (token de la compañia o de la plataforma)
+     * @param externalReference referencia externa con la que luego se puede buscar el pago en MercadoPago
      *
      * @return Preference preferencia creada exitosamente en MercadoPago lista para procesar pagos
      *
@@ -157,7 +176,9 @@ public class PaymentUtils {
             List<PreferenceItemRequest> items,
             PreferencePayerRequest payer,
             double comission,
-            PreferenceClient client
+            PreferenceClient client,
+            MPRequestOptions requestOptions,
+            String externalReference
     ) throws MPException, MPApiException {
         PreferenceBackUrlsRequest backUrlsRequest = PreferenceBackUrlsRequest.builder()
                 .success("https://http.cat/200") // Colocar URL de pagina de confirmacion o landing
@@ -173,11 +194,293 @@ public class PaymentUtils {
                         "Inncome", comission
                 ))
                 .notificationUrl("https://api.app.inncome.net/api/mp/payment/webhook")
+                .externalReference(externalReference)
                 .marketplaceFee(BigDecimal.valueOf(comission))
                 .backUrls(backUrlsRequest)
                 .autoReturn("approved")
                 .build();
 
-        return client.create(preferenceRequest);
+        return client.create(preferenceRequest, requestOptions);
+    }
+
+    /**
+     * Arma el body JSON de una orden de la API Orders de MercadoPago para pagos con tarjeta.
+     *
+     * <p>Es el mismo body que usa la estrategia sincronica y la reactiva, para que ambas
+     * generen ordenes identicas.</p>
+     *
+     * @param dto solicitud de pago con token de tarjeta, cuotas y datos del pagador
+     * @param externalReference referencia externa unica de la transaccion
+     *
+     * @return Map body listo para serializar como JSON
+     *
+     * @since 1.0
+     */
+    public static Map<String, Object> buildOrderBody(PaymentRequestDto dto, String externalReference) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("type", "online");
+        body.put("external_reference", externalReference);
+        body.put("capture_mode", "automatic");
+        body.put("processing_mode", "automatic");
+        body.put("total_amount", dto.getTotalAmount().toString());
+        body.put("payer", Map.of(
+                "first_name", dto.getPayerName(),
+                "email", dto.getPayer().getEmail(),
+                "identification", Map.of(
+                        "type", dto.getPayer().getIdentification().getType(),
+                        "number", dto.getPayer().getIdentification().getNumber()
+                )
+        ));
+        body.put("transactions", Map.of(
+                "payments", new Object[] {
+                    Map.of(
+                        "amount", dto.getTotalAmount().toString(),
+                        "payment_method", Map.of(
+                            "id", dto.getPaymentMethodId(),
+                            "type", dto.getPaymentTypeId(),
+                            "token", dto.getToken().get(),
+                            "installments", dto.getInstallments().orElse(1)
+                        )
+                    )
+                }
+        ));
+        body.put("items", new Object[] {
+            Map.of(
+                "title", dto.getTitle(),
+                "unit_price", dto.getTotalAmount().toString(),
+                "quantity", 1,
+                "description", dto.getDescription()
+            )
+        });
+        return body;
+    }
+
+    /**
+     * Construye la entidad de pago a partir de la respuesta de {@code /v1/orders}.
+     *
+     * @param dto solicitud de pago original
+     * @param orderJson respuesta de la API Orders ya parseada
+     *
+     * @return PaymentEntity entidad lista para persistir
+     *
+     * @since 1.0
+     */
+    public static PaymentEntity getPaymentEntityFromOrder(PaymentRequestDto dto, JsonNode orderJson) {
+        JsonNode payment = orderJson.get("transactions").get("payments").get(0);
+        JsonNode paymentMethod = payment.get("payment_method");
+
+        return PaymentEntity.builder()
+                .payment_id(orderJson.get("id").asText()) // Si quiero persistir el id solamente del pago payment.get("id").asText()
+                .status(PaymentStatus.fromMercadoPago(payment.get("status").asText()))
+                .description(dto.getDescription())
+                .statusDetail(payment.get("status_detail").asText())
+                .paymentType(PaymentType.fromMercadoPago(paymentMethod.get("type").asText()))
+                .paymentMethod(paymentMethod.get("id").asText())
+                .payerType(dto.getPayer().getIdentification().getType())
+                .payerEmail(dto.getPayer().getEmail())
+                .payerNumber(dto.getPayer().getIdentification().getNumber())
+                .totalAmount(amount(orderJson.get("total_paid_amount")))
+                .marketplaceFee(BigDecimal.ZERO.setScale(AMOUNT_SCALE))
+                .netReceivedAmount(amount(orderJson.get("total_paid_amount")))
+                .currencyId(currency(dto))
+                .dateCreated(parseDate(orderJson.get("created_date").asText()))
+                .dateApproved(parseDate(orderJson.get("last_updated_date").asText()))
+                .build();
+    }
+
+    /**
+     * Arma el body JSON de {@code /checkout/preferences}, equivalente al PreferenceRequest del SDK.
+     *
+     * <p>Se usa en el camino reactivo, donde la preferencia se crea con WebClient en lugar del
+     * cliente bloqueante del SDK.</p>
+     *
+     * @param dto solicitud de pago original
+     * @param comission comision del marketplace; si es 0 no se envia marketplace_fee
+     *
+     * @return Map body listo para serializar como JSON
+     *
+     * @since 1.0
+     */
+    public static Map<String, Object> buildPreferenceBody(PaymentRequestDto dto, double comission) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("items", List.of(Map.of(
+                "id", dto.getTitle(),
+                "title", dto.getTitle(),
+                "description", dto.getDescription(),
+                "quantity", 1,
+                "currency_id", dto.getCurrencyId().get(),
+                "unit_price", BigDecimal.valueOf(dto.getTotalAmount())
+        )));
+        body.put("marketplace", "Inncome");
+        body.put("payer", Map.of(
+                "email", dto.getPayer().getEmail(),
+                "identification", Map.of(
+                        "type", dto.getPayer().getIdentification().getType(),
+                        "number", dto.getPayer().getIdentification().getNumber()
+                )
+        ));
+        body.put("notification_url", "https://api.app.inncome.net/api/mp/payment/webhook");
+        if (dto.getExternalReference() != null) {
+            body.put("external_reference", dto.getExternalReference());
+        }
+        body.put("back_urls", Map.of(
+                "success", "https://http.cat/200",
+                "pending", "https://http.cat/102",
+                "failure", "https://http.cat/500"
+        ));
+        body.put("auto_return", "approved");
+
+        if (comission > 0) {
+            body.put("metadata", Map.of("Inncome", comission));
+            body.put("marketplace_fee", BigDecimal.valueOf(comission));
+        } else {
+            body.put("metadata", Map.of("Inncome", dto.getTotalAmount()));
+        }
+        return body;
+    }
+
+    /**
+     * Construye la entidad de pago a partir de la respuesta JSON de {@code /checkout/preferences}.
+     *
+     * @param dto solicitud de pago original
+     * @param commision comision aplicada al pago
+     * @param netAmount monto neto que recibe el comercio
+     * @param preferenceJson respuesta de la API de preferencias ya parseada
+     *
+     * @return PaymentEntity entidad lista para persistir
+     *
+     * @see #getPaymentEntity(PaymentRequestDto, double, double, List, Preference)
+     * @since 1.0
+     */
+    public static PaymentEntity getPaymentEntityFromPreference(PaymentRequestDto dto, double commision, double netAmount, JsonNode preferenceJson) {
+        JsonNode payer = preferenceJson.get("payer");
+
+        return PaymentEntity.builder()
+                .payment_id(preferenceJson.get("id").asText())
+                .status(PaymentStatus.PENDING)
+                .description(dto.getDescription())
+                .statusDetail("pending")
+                .paymentType(PaymentType.fromMercadoPago(dto.getPaymentTypeId()))
+                .paymentMethod(dto.getPaymentMethodId())
+                .payerType(payer.get("identification").get("type").asText())
+                .payerEmail(payer.get("email").asText())
+                .payerNumber(payer.get("identification").get("number").asText())
+                .totalAmount(amount(dto.getTotalAmount()))
+                .marketplaceFee(amount(commision))
+                .netReceivedAmount(amount(netAmount))
+                .currencyId(preferenceJson.get("items").get(0).get("currency_id").asText())
+                .dateCreated(parseDate(preferenceJson.get("date_created").asText()))
+                .dateApproved(parseDate(preferenceJson.get("date_created").asText()))
+                .build();
+    }
+
+    /**
+     * Convierte la entidad persistida en la respuesta que se devuelve al cliente.
+     *
+     * @param payment entidad de pago generada por alguna estrategia
+     *
+     * @return PaymentResponseDto con id, estado, metodo y monto del pago
+     *
+     * @since 1.0
+     */
+    public static PaymentResponseDto toResponseDto(PaymentEntity payment) {
+        return PaymentResponseDto.builder()
+                .id(payment.getPayment_id())
+                .description(payment.getDescription())
+                .status(payment.getStatus().value())
+                .statusDetail(payment.getStatusDetail())
+                .paymentMethodId(payment.getPaymentMethod())
+                .paymentTypeId(payment.getPaymentType() == null ? null : payment.getPaymentType().value())
+                .transactionAmount(payment.getTotalAmount().floatValue())
+                .build();
+    }
+
+    /**
+     * Arma el registro local "creating" que se inserta antes de llamar a MercadoPago.
+     *
+     * <p>Contiene solo lo que se conoce del request; los datos de MP se completan al finalizar
+     * el pago. Si la instancia se cae en el medio, la referencia externa permite resolverlo.</p>
+     *
+     * @param dto solicitud de pago original
+     * @param externalReference referencia externa que se enviara a MercadoPago
+     *
+     * @return PaymentEntity en estado "creating", sin id de MercadoPago
+     *
+     * @since 1.0
+     */
+    public static PaymentEntity newCreatingPayment(PaymentRequestDto dto, String externalReference) {
+        return PaymentEntity.builder()
+                .status(PaymentStatus.CREATING)
+                .description(dto.getDescription())
+                .statusDetail("creating")
+                .paymentType(PaymentType.fromMercadoPago(dto.getPaymentTypeId()))
+                .paymentMethod(dto.getPaymentMethodId())
+                .payerType(dto.getPayer().getIdentification().getType())
+                .payerEmail(dto.getPayer().getEmail())
+                .payerNumber(dto.getPayer().getIdentification().getNumber())
+                .totalAmount(amount(dto.getTotalAmount()))
+                .currencyId(currency(dto))
+                .dateCreated(Instant.now())
+                .companyId(dto.getSplitPayment() ? dto.getCompanyId().orElse(null) : null)
+                .externalReference(externalReference)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
+    /**
+     * Monto con la escala de las columnas DECIMAL de pagos (2 decimales).
+     *
+     * @param value monto
+     * @return BigDecimal redondeado HALF_UP
+     *
+     * @since 1.0
+     */
+    public static BigDecimal amount(double value) {
+        return amount(BigDecimal.valueOf(value));
+    }
+
+    public static BigDecimal amount(BigDecimal value) {
+        return value.setScale(AMOUNT_SCALE, RoundingMode.HALF_UP);
+    }
+
+    // La API Orders devuelve los montos como texto ("1500.00")
+    private static BigDecimal amount(JsonNode value) {
+        return amount(new BigDecimal(value.asText()));
+    }
+
+    /**
+     * Moneda del request, o la moneda por defecto si no vino.
+     *
+     * @param dto solicitud de pago original
+     * @return String codigo ISO 4217
+     *
+     * @since 1.0
+     */
+    public static String currency(PaymentRequestDto dto) {
+        return Optional.ofNullable(dto.getCurrencyId()).flatMap(currency -> currency).orElse(DEFAULT_CURRENCY);
+    }
+
+    /**
+     * Parsea las fechas que devuelve MercadoPago. Acepta fechas con offset
+     * ({@code 2025-01-10T13:03:12.123-04:00}), en UTC ({@code ...Z}) y sin zona (se asume UTC).
+     *
+     * @param value fecha en formato ISO-8601
+     * @return Instant, o null si viene vacia o no se puede parsear
+     *
+     * @since 1.0
+     */
+    public static Instant parseDate(String value) {
+        if (value == null || value.isBlank() || value.equals("null")) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(value).toInstant();
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.parse(value).toInstant(ZoneOffset.UTC);
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
     }
 }
@@ -0,0 +1,164 @@
+package inncome.modulo_mp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Agrupa llamadas concurrentes con la misma clave en una sola ejecucion.
+ *
+ * <p>El primer llamador ejecuta la operacion; los que llegan mientras esta en curso esperan
+ * y reciben el mismo resultado (o la misma excepcion). Apenas termina, la clave se libera y la
+ * siguiente llamada vuelve a ejecutar: no es una cache, solo evita trabajo repetido simultaneo.
+ * Quien se suma a una ejecucion en curso recibe un resultado que empezo a calcularse, como
+ * mucho, una operacion antes de su llegada.</p>
+ *
+ * <p>{@link #executeAll} hace lo mismo para un lote: ejecuta en una sola llamada las claves que
+ * nadie tiene en curso y espera las que ya estan en curso en otro lote.</p>
+ *
+ * <p>Metricas: {@code mp.singleflight.calls{name, result=executed|coalesced}} (en lotes, una por
+ * clave) y {@code mp.singleflight.in_flight{name}}.</p>
+ *
+ * @param <K> clave de agrupamiento, por ejemplo el id de pago
+ * @param <V> resultado de la operacion
+ * @since 1.0
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter executed;
+
+    private final Counter coalesced;
+
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        this.executed = meterRegistry.counter("mp.singleflight.calls", "name", name, "result", "executed");
+        this.coalesced = meterRegistry.counter("mp.singleflight.calls", "name", name, "result", "coalesced");
+        Gauge.builder("mp.singleflight.in_flight", inFlight, Map::size)
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Ejecuta la operacion, o espera la que ya esta en curso para la misma clave.
+     *
+     * @param key clave de agrupamiento
+     * @param call operacion a ejecutar
+     * @return V resultado compartido
+     * @throws Exception la excepcion de la operacion, tambien para los que se sumaron
+     */
+    public V execute(K key, Callable<V> call) throws Exception {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+
+        executed.increment();
+        try {
+            V value = call.call();
+            flight.complete(value);
+            return value;
+        } catch (Exception | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Operacion en lote de {@link #executeAll}.
+     *
+     * @param <K> clave de agrupamiento
+     * @param <V> resultado por clave
+     */
+    @FunctionalInterface
+    public interface BatchCall<K, V> {
+
+        /**
+         * @param keys claves que ejecuta este llamador, sin repetidos
+         * @return Map con el resultado de cada clave; las que falten se comparten como null
+         */
+        Map<K, V> call(List<K> keys) throws Exception;
+    }
+
+    /**
+     * Ejecuta en una sola llamada las claves que no estan en curso y espera las que si.
+     *
+     * <p>Primero se ejecuta el lote propio y recien despues se esperan las claves de otros, asi
+     * dos lotes que se cruzan no se bloquean entre si.</p>
+     *
+     * @param keys claves del lote
+     * @param call operacion para las claves propias
+     * @return Map con el resultado de cada clave (null si la operacion no lo devolvio)
+     * @throws Exception la excepcion del lote propio o de un lote ajeno que se espero
+     */
+    public Map<K, V> executeAll(Collection<K> keys, BatchCall<K, V> call) throws Exception {
+        Map<K, CompletableFuture<V>> own = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> joined = new LinkedHashMap<>();
+        for (K key : keys) {
+            if (own.containsKey(key) || joined.containsKey(key)) {
+                continue;
+            }
+            CompletableFuture<V> flight = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+            if (existing == null) {
+                own.put(key, flight);
+            } else {
+                joined.put(key, existing);
+            }
+        }
+        executed.increment(own.size());
+        coalesced.increment(joined.size());
+
+        Map<K, V> results = new HashMap<>();
+        if (!own.isEmpty()) {
+            try {
+                Map<K, V> values = call.call(new ArrayList<>(own.keySet()));
+                own.forEach((key, flight) -> {
+                    V value = values.get(key);
+                    flight.complete(value);
+                    results.put(key, value);
+                });
+            } catch (Exception | Error e) {
+                own.values().forEach(flight -> flight.completeExceptionally(e));
+                throw e;
+            } finally {
+                own.forEach(inFlight::remove);
+            }
+        }
+        for (Map.Entry<K, CompletableFuture<V>> entry : joined.entrySet()) {
+            results.put(entry.getKey(), await(entry.getValue()));
+        }
+        return results;
+    }
+
+    private V await(CompletableFuture<V> flight) throws Exception {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            throw (Error) cause;
+        }
+    }
+}
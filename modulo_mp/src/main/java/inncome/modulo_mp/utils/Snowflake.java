@@ -0,0 +1,84 @@
+package inncome.modulo_mp.utils;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Generador de ids de 64 bits ordenados por tiempo (estilo Snowflake).
+ *
+ * <p>Formato: 41 bits de milisegundos desde {@link #EPOCH_MS}, 10 bits de nodo y 12 bits de
+ * secuencia. Cada nodo genera hasta 4096 ids por milisegundo sin ir a la base, y como crecen con
+ * el tiempo los inserts caen siempre al final del indice primario.</p>
+ *
+ * <p>Dos instancias con el mismo nodo pueden generar ids repetidos: el nodo tiene que ser unico
+ * entre las instancias que escriben en la misma tabla.</p>
+ */
+public final class Snowflake {
+
+    public static final long EPOCH_MS = 1735689600000L; // 2025-01-01T00:00:00Z
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+
+    public static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeId;
+
+    // ReentrantLock y no synchronized, para no fijar el carrier de los virtual threads
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long lastTimestamp = -1;
+
+    private long sequence;
+
+    public Snowflake(long nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("El nodo debe estar entre 0 y " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeId = nodeId;
+    }
+
+    public long nodeId() {
+        return nodeId;
+    }
+
+    public long nextId() {
+        lock.lock();
+        try {
+            // Si el reloj vuelve atras se sigue sobre el ultimo milisegundo usado
+            long now = Math.max(System.currentTimeMillis(), lastTimestamp);
+            if (now == lastTimestamp) {
+                sequence = (sequence + 1) & SEQUENCE_MASK;
+                if (sequence == 0) {
+                    now = waitNextMillis(lastTimestamp);
+                }
+            } else {
+                sequence = 0;
+            }
+            lastTimestamp = now;
+            return ((now - EPOCH_MS) << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Milisegundo (epoch) en que se genero un id.
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MS;
+    }
+
+    private static long waitNextMillis(long lastTimestamp) {
+        long now = System.currentTimeMillis();
+        while (now <= lastTimestamp) {
+            Thread.onSpinWait();
+            now = System.currentTimeMillis();
+        }
+        return now;
+    }
+}
@@ -3,7 +3,7 @@ package inncome.modulo_mp;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = "mercado.pago.snowflake.single-instance=true")
 class ModuloMpApplicationTests {
 
     @Test
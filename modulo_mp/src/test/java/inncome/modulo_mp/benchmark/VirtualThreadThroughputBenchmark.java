@@ -0,0 +1,129 @@
+package inncome.modulo_mp.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import inncome.modulo_mp.config.MPConfig;
+import inncome.modulo_mp.config.MPCredentialRegistry;
+import inncome.modulo_mp.persistence.dto.IdentificationDto;
+import inncome.modulo_mp.persistence.dto.PayerDto;
+import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
+import inncome.modulo_mp.service.serviceImpl.PaymentCardStrategy;
+import inncome.modulo_mp.simulator.MercadoPagoSimulator;
+import inncome.modulo_mp.simulator.MercadoPagoSimulator.LatencyDistribution;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compara el throughput de checkouts bloqueantes (API Orders con WebClient + block()) atendidos
+ * por un pool de hilos de plataforma del tamaño del de Tomcat contra virtual threads, contra el
+ * {@link MercadoPagoSimulator} respondiendo con latencia fija.
+ *
+ * <p>Se corre con {@code mvn test -Pbenchmark}.</p>
+ */
+@Tag("benchmark")
+class VirtualThreadThroughputBenchmark {
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final int IN_FLIGHT_CHECKOUTS = 1000;
+    private static final int REQUESTS = 5000;
+    private static final long MP_LATENCY_MS = 50;
+
+    private MercadoPagoSimulator simulator;
+    private ConnectionProvider connectionProvider;
+    private PaymentCardStrategy strategy;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        simulator = MercadoPagoSimulator.start().withLatency(LatencyDistribution.fixed(MP_LATENCY_MS));
+
+        connectionProvider = ConnectionProvider.builder("benchmark")
+                .maxConnections(IN_FLIGHT_CHECKOUTS)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        WebClient webClient = WebClient.builder()
+                .baseUrl(simulator.baseUrl())
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+                .build();
+
+        MPConfig mpConfig = mock(MPConfig.class);
+        when(mpConfig.getAccessToken()).thenReturn("TEST-TOKEN");
+
+        strategy = new PaymentCardStrategy(mpConfig, new MPCredentialRegistry(mpConfig), null);
+        ReflectionTestUtils.setField(strategy, "mercadoPagoWebClient", webClient);
+        ReflectionTestUtils.setField(strategy, "objectMapper", new ObjectMapper());
+    }
+
+    @AfterEach
+    void tearDown() {
+        simulator.close();
+        connectionProvider.dispose();
+    }
+
+    @Test
+    void virtualThreadsSuperanAlPoolDeTomcat() throws Exception {
+        // Warmup de JIT y del pool de conexiones
+        run(Executors.newFixedThreadPool(TOMCAT_MAX_THREADS), REQUESTS / 5);
+        run(Executors.newVirtualThreadPerTaskExecutor(), REQUESTS / 5);
+
+        double platform = run(Executors.newFixedThreadPool(TOMCAT_MAX_THREADS), REQUESTS);
+        double virtual = run(Executors.newVirtualThreadPerTaskExecutor(), REQUESTS);
+
+        System.out.printf("Platform threads (%d): %.0f checkouts/s%n", TOMCAT_MAX_THREADS, platform);
+        System.out.printf("Virtual threads       : %.0f checkouts/s (x%.1f)%n", virtual, virtual / platform);
+
+        assertTrue(virtual > platform, "Los virtual threads deberian superar al pool de plataforma");
+    }
+
+    private double run(ExecutorService executor, int requests) throws Exception {
+        List<Future<?>> futures = new ArrayList<>(requests);
+        long start = System.nanoTime();
+        try (executor) {
+            for (int i = 0; i < requests; i++) {
+                futures.add(executor.submit(() -> strategy.generatePayment(cardRequest(), null)));
+            }
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        return requests / (elapsed / 1_000_000_000.0);
+    }
+
+    private static PaymentRequestDto cardRequest() {
+        return PaymentRequestDto.builder()
+                .totalAmount(100f)
+                .description("Benchmark")
+                .splitPayment(false)
+                .paymentTypeId("credit_card")
+                .paymentMethodId("visa")
+                .title("Benchmark")
+                .payerName("Juan Pérez")
+                .payer(PayerDto.builder()
+                        .email("juan.perez@email.com")
+                        .identification(IdentificationDto.builder().type("DNI").number("12345678").build())
+                        .build())
+                .currencyId(Optional.of("ARS"))
+                .token(Optional.of("card-token"))
+                .installments(Optional.of(1))
+                .issuerId(Optional.of("24"))
+                .build();
+    }
+}
@@ -0,0 +1,110 @@
+package inncome.modulo_mp.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Enrutamiento de lecturas contra dos H2 en memoria, una como primario y otra como replica.
+ */
+class ReadReplicaRoutingTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private DataSource primary;
+    private DataSource replica;
+
+    @BeforeEach
+    void setUp() {
+        primary = database("primary");
+        replica = database("replica");
+    }
+
+    @Test
+    void readOnlyTransactionsGoToReplicaAndWritesToPrimary() {
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(replica, 5, meterRegistry);
+        monitor.check(); // H2 no tiene estado de replica: atraso 0
+        assertTrue(monitor.isHealthy());
+
+        DataSource routing = ReadReplicaConfig.routingDataSource(primary, replica, monitor, meterRegistry);
+
+        assertEquals("replica", node(routing, true));
+        assertEquals("primary", node(routing, false));
+        assertEquals(1.0, meterRegistry.counter("mp.db.route", "route", "replica").count());
+    }
+
+    @Test
+    void laggingReplicaFallsBackToPrimary() {
+        DriverManagerDataSource unreachable = new DriverManagerDataSource("jdbc:h2:tcp://localhost:1/unreachable");
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(unreachable, 5, meterRegistry);
+        monitor.check();
+        assertFalse(monitor.isHealthy());
+
+        DataSource routing = ReadReplicaConfig.routingDataSource(primary, replica, monitor, meterRegistry);
+
+        assertEquals("primary", node(routing, true));
+        assertEquals(1.0, meterRegistry.counter("mp.db.route", "route", "replica_fallback").count());
+    }
+
+    @Test
+    void batchesThroughRoutingAreRecordedOnce() {
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(replica, 5, meterRegistry);
+        monitor.check();
+
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+            context.register(JdbcBatchMetricsConfig.class);
+            context.registerBean(MeterRegistry.class, () -> meterRegistry);
+            context.registerBean("primaryDataSource", DataSource.class, () -> primary);
+            context.registerBean("replicaDataSource", DataSource.class, () -> replica);
+            context.registerBean("dataSource", DataSource.class,
+                    () -> ReadReplicaConfig.routingDataSource(primary, replica, monitor, meterRegistry),
+                    definition -> definition.setPrimary(true));
+            context.refresh();
+
+            // Solo se envuelve el DataSource de la aplicacion, no los pools que enruta
+            assertInstanceOf(BatchMetricsDataSource.class, context.getBean("dataSource"));
+            assertFalse(context.getBean("primaryDataSource") instanceof BatchMetricsDataSource);
+            assertFalse(context.getBean("replicaDataSource") instanceof BatchMetricsDataSource);
+
+            JdbcTemplate jdbc = new JdbcTemplate(context.getBean("dataSource", DataSource.class));
+            jdbc.execute("create table if not exists batch_row (id int)");
+            jdbc.batchUpdate("insert into batch_row (id) values (?)", List.of(new Object[]{1}, new Object[]{2}, new Object[]{3}));
+        }
+
+        DistributionSummary batches = meterRegistry.get("mp.db.batch.size")
+                .tags("operation", "insert", "table", "batch_row").summary();
+        assertEquals(1, batches.count());
+        assertEquals(3.0, batches.totalAmount());
+    }
+
+    private static String node(DataSource routing, boolean readOnly) {
+        TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(routing));
+        transaction.setReadOnly(readOnly);
+        JdbcTemplate jdbc = new JdbcTemplate(routing);
+        return transaction.execute(status -> jdbc.queryForObject("select name from node", String.class));
+    }
+
+    private static DataSource database(String name) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create table if not exists node (name varchar(16))");
+        jdbc.update("delete from node");
+        jdbc.update("insert into node (name) values (?)", name);
+        return dataSource;
+    }
+}
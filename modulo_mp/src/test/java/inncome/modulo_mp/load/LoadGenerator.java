@@ -0,0 +1,147 @@
+package inncome.modulo_mp.load;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Generador de carga HTTP con dos modelos.
+ *
+ * <ul>
+ *   <li><b>Cerrado</b>: N usuarios concurrentes, cada uno manda el siguiente request apenas recibe
+ *   la respuesta. Sirve para encontrar el throughput maximo de una instancia.</li>
+ *   <li><b>Abierto</b>: los requests llegan a una tasa fija sin importar cuanto tarde el servidor,
+ *   como el trafico real. La latencia se mide desde el momento en que el request <i>deberia</i>
+ *   haber salido, asi la espera por saturacion no se esconde (coordinated omission).</li>
+ * </ul>
+ */
+final class LoadGenerator implements AutoCloseable {
+
+    private final ExecutorService clientExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(clientExecutor)
+            .build();
+
+    LoadResult closed(String scenario, int users, Duration duration, Supplier<HttpRequest> requests) {
+        Recorder recorder = new Recorder();
+        long deadline = System.nanoTime() + duration.toNanos();
+        long start = System.nanoTime();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < users; i++) {
+                executor.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        long sent = System.nanoTime();
+                        recorder.record(sent, send(requests.get()));
+                    }
+                });
+            }
+        }
+
+        return recorder.result(scenario, "closed(" + users + " usuarios)", System.nanoTime() - start);
+    }
+
+    LoadResult open(String scenario, int ratePerSecond, Duration duration, Supplier<HttpRequest> requests) {
+        Recorder recorder = new Recorder();
+        long interval = 1_000_000_000L / ratePerSecond;
+        long total = duration.toSeconds() * ratePerSecond;
+        long start = System.nanoTime();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; i < total; i++) {
+                long intended = start + i * interval;
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                executor.submit(() -> recorder.record(intended, send(requests.get())));
+            }
+        }
+
+        return recorder.result(scenario, "open(" + ratePerSecond + " req/s)", System.nanoTime() - start);
+    }
+
+    private int send(HttpRequest request) {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() {
+        clientExecutor.close();
+    }
+
+    private static final class Recorder {
+
+        private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+
+        private final LongAdder errors = new LongAdder();
+
+        void record(long startNanos, int status) {
+            latencies.add(System.nanoTime() - startNanos);
+            if (status < 200 || status >= 300) {
+                errors.increment();
+            }
+        }
+
+        LoadResult result(String scenario, String model, long elapsedNanos) {
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            return new LoadResult(scenario, model, sorted.length, errors.sum(),
+                    sorted.length / (elapsedNanos / 1_000_000_000.0),
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                    sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1_000_000.0);
+        }
+
+        private static double percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1_000_000.0;
+        }
+    }
+
+    /**
+     * Resultado de un escenario. Latencias en milisegundos.
+     */
+    record LoadResult(String scenario, String model, long requests, long errors, double throughput,
+                      double p50, double p99, double p999, double max) {
+
+        static final String CSV_HEADER = "scenario,model,requests,errors,error_rate,throughput,p50_ms,p99_ms,p999_ms,max_ms";
+
+        double errorRate() {
+            return requests == 0 ? 0 : (double) errors / requests;
+        }
+
+        String toCsv() {
+            return String.format(Locale.ROOT, "%s,%s,%d,%d,%.4f,%.1f,%.2f,%.2f,%.2f,%.2f",
+                    scenario, model, requests, errors, errorRate(), throughput, p50, p99, p999, max);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%-14s %-22s %7d req %6.1f req/s  err %5.2f%%  p50 %7.1f ms  p99 %7.1f ms  p999 %7.1f ms  max %7.1f ms",
+                    scenario, model, requests, throughput, errorRate() * 100, p50, p99, p999, max);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package inncome.modulo_mp.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import inncome.modulo_mp.load.LoadGenerator.LoadResult;
+import inncome.modulo_mp.persistence.entity.CompanyToken;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentType;
+import inncome.modulo_mp.persistence.entity.PaymentEntity;
+import inncome.modulo_mp.persistence.repository.CompanyTokenRepository;
+import inncome.modulo_mp.persistence.repository.PaymentRepository;
+import inncome.modulo_mp.simulator.MercadoPagoSimulator;
+import inncome.modulo_mp.simulator.MercadoPagoSimulator.LatencyDistribution;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Prueba de carga de punta a punta: la aplicacion completa en un puerto aleatorio, contra H2
+ * (o la base que se pase en {@code load.datasource.url}) y el {@link MercadoPagoSimulator}.
+ *
+ * <p>Se corre con {@code mvn test -Pload}. Parametros (system properties):</p>
+ * <ul>
+ *   <li>{@code load.duration-s}: duracion de cada escenario (20)</li>
+ *   <li>{@code load.users}: usuarios del modelo cerrado (64)</li>
+ *   <li>{@code load.rate}: requests por segundo del modelo abierto (100)</li>
+ *   <li>{@code load.webhook-rate}: tasa de la tormenta de webhooks (500)</li>
+ *   <li>{@code load.mp.median-ms}: mediana de latencia del simulador (80)</li>
+ *   <li>{@code load.max-error-rate}: proporcion maxima de errores aceptada (0.01)</li>
+ *   <li>{@code load.virtual-threads}: corre la aplicacion con virtual threads (false)</li>
+ *   <li>{@code load.datasource.url}, {@code load.datasource.username}, {@code load.datasource.password}:
+ *   por ejemplo un MySQL local en lugar de H2</li>
+ * </ul>
+ *
+ * <p>Los resultados se loguean y se agregan a {@code target/load-results.csv}.</p>
+ */
+@Slf4j
+@Tag("load")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class PaymentLoadTest {
+
+    private static final Duration DURATION = Duration.ofSeconds(Long.getLong("load.duration-s", 20));
+    private static final int USERS = Integer.getInteger("load.users", 64);
+    private static final int RATE = Integer.getInteger("load.rate", 100);
+    private static final int WEBHOOK_RATE = Integer.getInteger("load.webhook-rate", 500);
+    private static final double MAX_ERROR_RATE = Double.parseDouble(System.getProperty("load.max-error-rate", "0.01"));
+    private static final Path REPORT = Path.of("target", "load-results.csv");
+
+    private static final MercadoPagoSimulator SIMULATOR = MercadoPagoSimulator.start()
+            .withLatency(LatencyDistribution.logNormal(Long.getLong("load.mp.median-ms", 80), 0.5))
+            .withAutoCreateUnknownPayments(true);
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        String url = System.getProperty("load.datasource.url", "jdbc:h2:mem:load;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        boolean h2 = url.startsWith("jdbc:h2");
+
+        registry.add("spring.datasource.url", () -> url);
+        registry.add("spring.datasource.username", () -> System.getProperty("load.datasource.username", h2 ? "sa" : "inncome_user"));
+        registry.add("spring.datasource.password", () -> System.getProperty("load.datasource.password", h2 ? "" : "securepass"));
+        registry.add("spring.datasource.driver-class-name", () -> h2 ? "org.h2.Driver" : "com.mysql.cj.jdbc.Driver");
+        registry.add("spring.jpa.properties.hibernate.dialect", () -> h2 ? "org.hibernate.dialect.H2Dialect" : "org.hibernate.dialect.MySQLDialect");
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> h2 ? "create-drop" : "update");
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("spring.threads.virtual.enabled", () -> System.getProperty("load.virtual-threads", "false"));
+        registry.add("eureka.client.enabled", () -> "false");
+        registry.add("mercado.pago.snowflake.single-instance", () -> "true");
+        registry.add("logging.level.inncome.modulo_mp", () -> "WARN");
+
+        registry.add("mercado.pago.base-url", SIMULATOR::baseUrl);
+        registry.add("mercado.pago.access.token", () -> "APP_USR-PLATFORM-LOAD");
+        registry.add("mercado.pago.client.id", () -> "load-client");
+        registry.add("mercado.pago.client.secret", () -> "load-secret");
+        registry.add("mercado.pago.redirect.uri", () -> "http://localhost/oauth/callback");
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final LoadGenerator generator = new LoadGenerator();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private CompanyTokenRepository companyTokenRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    private Long companyId;
+
+    @BeforeAll
+    void setUp() throws Exception {
+        companyId = companyTokenRepository.save(CompanyToken.builder()
+                .mercadoPagoId("123456789")
+                .name("Compañia de carga")
+                .accessToken("APP_USR-COMPANY-LOAD")
+                .refreshToken("TG-LOAD")
+                .expiresIn(15552000L)
+                .expiresAt(Instant.now().plusSeconds(15552000L))
+                .build()).getId();
+
+        Files.createDirectories(REPORT.getParent());
+        if (!Files.exists(REPORT)) {
+            Files.writeString(REPORT, LoadResult.CSV_HEADER + System.lineSeparator());
+        }
+    }
+
+    @AfterAll
+    void tearDown() {
+        generator.close();
+        SIMULATOR.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"credit_card", "debit_card", "account_money", "split"})
+    void checkout(String scenario) throws Exception {
+        // Warmup corto para no medir JIT ni el arranque de los pools
+        generator.closed(scenario, 8, Duration.ofSeconds(3), () -> paymentRequest(scenario));
+
+        report(generator.closed(scenario, USERS, DURATION, () -> paymentRequest(scenario)));
+        report(generator.open(scenario, RATE, DURATION, () -> paymentRequest(scenario)));
+    }
+
+    @Test
+    void webhookStorm() throws Exception {
+        // El webhook trae el id de MP: los pagos semilla existen en el simulador y en la base con ese id
+        List<Long> paymentIds = IntStream.range(0, 1000)
+                .mapToObj(i -> SIMULATOR.createPayment("approved", "accredited", UUID.randomUUID().toString()))
+                .toList();
+        paymentRepository.saveAll(seedPayments(paymentIds));
+
+        report(generator.open("webhook", WEBHOOK_RATE, DURATION, () -> webhookRequest(
+                paymentIds.get(ThreadLocalRandom.current().nextInt(paymentIds.size())))));
+    }
+
+    private void report(LoadResult result) throws Exception {
+        log.info("{}", result);
+        Files.writeString(REPORT, result.toCsv() + System.lineSeparator(), StandardOpenOption.APPEND);
+        assertTrue(result.errorRate() <= MAX_ERROR_RATE,
+                () -> "Tasa de errores " + result.errorRate() + " mayor a " + MAX_ERROR_RATE + " en " + result);
+    }
+
+    private HttpRequest paymentRequest(String scenario) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("totalAmount", 1500.0);
+        body.put("description", "Prueba de carga");
+        body.put("title", "Expensas");
+        body.put("payerName", "Juan Pérez");
+        body.put("payer", Map.of(
+                "email", "juan.perez@email.com",
+                "identification", Map.of("type", "DNI", "number", "12345678")));
+
+        switch (scenario) {
+            case "account_money", "split" -> {
+                body.put("paymentTypeId", "account_money");
+                body.put("paymentMethodId", "account_money");
+                body.put("currencyId", "ARS");
+                body.put("splitPayment", "split".equals(scenario));
+                body.put("companyId", companyId);
+            }
+            default -> {
+                body.put("paymentTypeId", scenario);
+                body.put("paymentMethodId", "credit_card".equals(scenario) ? "visa" : "debvisa");
+                body.put("splitPayment", false);
+                body.put("currencyId", "ARS");
+                body.put("token", "ff8080814c11e237014c1ff593b57b4d");
+                body.put("installments", 1);
+                body.put("issuerId", "24");
+            }
+        }
+        return post("/payment", body);
+    }
+
+    private HttpRequest webhookRequest(Long paymentId) {
+        return post("/payment/webhook", Map.of(
+                "id", ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE),
+                "type", "payment",
+                "action", "payment.updated",
+                "data", Map.of("id", paymentId.toString())));
+    }
+
+    private HttpRequest post(String path, Object body) {
+        try {
+            return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/mp" + path))
+                    .header("Content-Type", "application/json")
+                    .timeout(Duration.ofSeconds(30))
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                    .build();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<PaymentEntity> seedPayments(List<Long> paymentIds) {
+        return paymentIds.stream()
+                .map(paymentId -> PaymentEntity.builder()
+                        .payment_id(paymentId.toString())
+                        .status(PaymentStatus.PENDING)
+                        .statusDetail("pending")
+                        .description("Pago semilla")
+                        .paymentType(PaymentType.ACCOUNT_MONEY)
+                        .paymentMethod("account_money")
+                        .payerType("DNI")
+                        .payerEmail("juan.perez@email.com")
+                        .payerNumber("12345678")
+                        .totalAmount(new BigDecimal("1500.00"))
+                        .netReceivedAmount(new BigDecimal("1500.00"))
+                        .currencyId("ARS")
+                        .dateCreated(Instant.now())
+                        .externalReference(UUID.randomUUID().toString())
+                        .createdAt(LocalDateTime.now())
+                        .build())
+                .toList();
+    }
+}
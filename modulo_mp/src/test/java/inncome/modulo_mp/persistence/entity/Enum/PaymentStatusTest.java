@@ -0,0 +1,96 @@
+package inncome.modulo_mp.persistence.entity.Enum;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tabla de transiciones de {@link PaymentStatus}.
+ */
+class PaymentStatusTest {
+
+    @ParameterizedTest
+    @EnumSource(PaymentStatus.class)
+    void repetirElMismoEstadoEstaPermitido(PaymentStatus status) {
+        assertTrue(status.canTransitionTo(status));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = PaymentStatus.class,
+            names = {"PENDING", "IN_PROCESS", "AUTHORIZED", "PROCESSED", "APPROVED", "REJECTED", "CANCELLED"})
+    void unEstadoRealDeMercadoPagoReemplazaAFailed(PaymentStatus status) {
+        // FAILED es una suposicion local: el cobro pudo haberse procesado igual
+        assertTrue(PaymentStatus.FAILED.canTransitionTo(status));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = PaymentStatus.class, names = {"CREATING", "FAILED"}, mode = EnumSource.Mode.EXCLUDE)
+    void ningunEstadoDeMercadoPagoVuelveAUnEstadoLocal(PaymentStatus status) {
+        assertFalse(status.canTransitionTo(PaymentStatus.CREATING));
+        assertFalse(status.canTransitionTo(PaymentStatus.FAILED));
+    }
+
+    @Test
+    void unaNotificacionAtrasadaNoVuelveAtras() {
+        assertFalse(PaymentStatus.APPROVED.canTransitionTo(PaymentStatus.PENDING));
+        assertFalse(PaymentStatus.APPROVED.canTransitionTo(PaymentStatus.IN_PROCESS));
+        assertFalse(PaymentStatus.REJECTED.canTransitionTo(PaymentStatus.APPROVED));
+        assertFalse(PaymentStatus.REFUNDED.canTransitionTo(PaymentStatus.APPROVED));
+        assertFalse(PaymentStatus.CANCELLED.canTransitionTo(PaymentStatus.PENDING));
+    }
+
+    @Test
+    void avanceNormalDeUnPago() {
+        assertTrue(PaymentStatus.CREATING.canTransitionTo(PaymentStatus.PENDING));
+        assertTrue(PaymentStatus.PENDING.canTransitionTo(PaymentStatus.IN_PROCESS));
+        assertTrue(PaymentStatus.IN_PROCESS.canTransitionTo(PaymentStatus.APPROVED));
+        assertTrue(PaymentStatus.APPROVED.canTransitionTo(PaymentStatus.IN_MEDIATION));
+        assertTrue(PaymentStatus.IN_MEDIATION.canTransitionTo(PaymentStatus.APPROVED));
+        assertTrue(PaymentStatus.APPROVED.canTransitionTo(PaymentStatus.REFUNDED));
+        assertTrue(PaymentStatus.CHARGED_BACK.canTransitionTo(PaymentStatus.REFUNDED));
+    }
+
+    @ParameterizedTest
+    @EnumSource(PaymentStatus.class)
+    void losCodigosDePredecesoresCoincidenConLosEstados(PaymentStatus status) {
+        assertEquals(status.allowedPredecessors().size(), status.allowedPredecessorCodes().size());
+        for (PaymentStatus predecessor : status.allowedPredecessors()) {
+            assertTrue(status.allowedPredecessorCodes().contains(predecessor.code()));
+        }
+    }
+
+    @Test
+    void losCodigosSonUnicosYReversibles() {
+        Set<Short> codes = new HashSet<>();
+        for (PaymentStatus status : PaymentStatus.values()) {
+            assertTrue(codes.add(status.code()), "Codigo repetido: " + status.code());
+            assertEquals(status, PaymentStatus.fromCode(status.code()));
+        }
+    }
+
+    @Test
+    void fromAceptaLosAliasDeLaApiOrders() {
+        assertEquals(PaymentStatus.PENDING, PaymentStatus.from("created").orElseThrow());
+        assertEquals(PaymentStatus.IN_PROCESS, PaymentStatus.from("processing").orElseThrow());
+        assertEquals(PaymentStatus.CANCELLED, PaymentStatus.from("expired").orElseThrow());
+        assertEquals(PaymentStatus.REJECTED, PaymentStatus.from("failed").orElseThrow());
+        assertEquals(PaymentStatus.REJECTED, PaymentStatus.fromMercadoPago("failed"));
+        assertEquals(PaymentStatus.APPROVED, PaymentStatus.from("APPROVED").orElseThrow());
+        assertEquals(PaymentStatus.PENDING, PaymentStatus.fromMercadoPago("desconocido"));
+    }
+
+    @Test
+    void fromValueUsaLosValoresDeLaApi() {
+        // Los filtros del listado usan los valores propios, "failed" es el estado local
+        assertEquals(PaymentStatus.FAILED, PaymentStatus.fromValue("failed").orElseThrow());
+        assertEquals(PaymentStatus.CREATING, PaymentStatus.fromValue("creating").orElseThrow());
+        assertTrue(PaymentStatus.fromValue("expired").isEmpty());
+    }
+}
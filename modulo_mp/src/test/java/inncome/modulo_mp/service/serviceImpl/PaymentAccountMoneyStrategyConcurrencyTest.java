@@ -0,0 +1,150 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.mercadopago.client.preference.PreferenceClient;
+import com.mercadopago.client.preference.PreferenceRequest;
+import com.mercadopago.core.MPRequestOptions;
+import com.mercadopago.resources.common.Identification;
+import com.mercadopago.resources.preference.Preference;
+import com.mercadopago.resources.preference.PreferenceItem;
+import com.mercadopago.resources.preference.PreferencePayer;
+import inncome.modulo_mp.config.MPConfig;
+import inncome.modulo_mp.config.MPCredentialRegistry;
+import inncome.modulo_mp.persistence.dto.IdentificationDto;
+import inncome.modulo_mp.persistence.dto.PayerDto;
+import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
+import inncome.modulo_mp.persistence.entity.CompanyToken;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Stress test de pagos divididos concurrentes para distintas compañias: cada preferencia
+ * tiene que crearse con el access token de su propia compañia.
+ */
+class PaymentAccountMoneyStrategyConcurrencyTest {
+
+    private static final int COMPANIES = 16;
+    private static final int PAYMENTS_PER_COMPANY = 50;
+
+    @Test
+    void cadaPreferenciaSeCreaConElTokenDeSuCompania() throws Exception {
+        MPConfig mpConfig = mock(MPConfig.class);
+        when(mpConfig.getAccessToken()).thenReturn("PLATFORM-TOKEN");
+
+        RecordingPreferenceClient client = new RecordingPreferenceClient(stubPreference());
+        PaymentAccountMoneyStrategy strategy = new PaymentAccountMoneyStrategy(mpConfig, new MPCredentialRegistry(mpConfig), client);
+
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < COMPANIES * PAYMENTS_PER_COMPANY; i++) {
+                long companyId = i % COMPANIES + 1;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return strategy.generatePayment(splitRequest(companyId), company(companyId));
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(COMPANIES * PAYMENTS_PER_COMPANY, client.calls.size());
+        for (RecordedCall call : client.calls) {
+            assertEquals(tokenFor(call.companyTitle()), call.accessToken(),
+                    "La preferencia de " + call.companyTitle() + " se creo con otro token");
+        }
+    }
+
+    private static PaymentRequestDto splitRequest(long companyId) {
+        return PaymentRequestDto.builder()
+                .totalAmount(100f)
+                .companyId(Optional.of(companyId))
+                .description("Pago dividido")
+                .splitPayment(true)
+                .paymentTypeId("account_money")
+                .paymentMethodId("account_money")
+                .title("company-" + companyId)
+                .payerName("Juan Pérez")
+                .payer(PayerDto.builder()
+                        .email("juan.perez@email.com")
+                        .identification(IdentificationDto.builder().type("DNI").number("12345678").build())
+                        .build())
+                .currencyId(Optional.of("ARS"))
+                .build();
+    }
+
+    private static CompanyToken company(long companyId) {
+        return CompanyToken.builder()
+                .id(companyId)
+                .accessToken(tokenFor("company-" + companyId))
+                .build();
+    }
+
+    private static String tokenFor(String companyTitle) {
+        return "TOKEN-" + companyTitle;
+    }
+
+    private static Preference stubPreference() {
+        Identification identification = mock(Identification.class);
+        when(identification.getType()).thenReturn("DNI");
+        when(identification.getNumber()).thenReturn("12345678");
+
+        PreferencePayer payer = mock(PreferencePayer.class);
+        when(payer.getEmail()).thenReturn("juan.perez@email.com");
+        when(payer.getIdentification()).thenReturn(identification);
+
+        PreferenceItem item = mock(PreferenceItem.class);
+        when(item.getCurrencyId()).thenReturn("ARS");
+
+        Preference preference = mock(Preference.class);
+        when(preference.getId()).thenReturn("pref-1");
+        when(preference.getOperationType()).thenReturn("regular_payment");
+        when(preference.getPayer()).thenReturn(payer);
+        when(preference.getItems()).thenReturn(List.of(item));
+        when(preference.getDateCreated()).thenReturn(OffsetDateTime.now());
+        return preference;
+    }
+
+    private record RecordedCall(String companyTitle, String accessToken) {
+    }
+
+    private static class RecordingPreferenceClient extends PreferenceClient {
+
+        private final Queue<RecordedCall> calls = new ConcurrentLinkedQueue<>();
+
+        private final Preference preference;
+
+        RecordingPreferenceClient(Preference preference) {
+            this.preference = preference;
+        }
+
+        @Override
+        public Preference create(PreferenceRequest request, MPRequestOptions requestOptions) {
+            String title = request.getItems().getFirst().getTitle();
+            Thread.yield(); // Agranda la ventana en la que un token global se pisaria
+            calls.add(new RecordedCall(title, requestOptions.getAccessToken()));
+            return preference;
+        }
+    }
+}
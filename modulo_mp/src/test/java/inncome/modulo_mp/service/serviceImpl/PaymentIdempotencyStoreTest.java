@@ -0,0 +1,218 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import inncome.modulo_mp.exception.IdempotencyKeyConflictException;
+import inncome.modulo_mp.persistence.dto.IdentificationDto;
+import inncome.modulo_mp.persistence.dto.PayerDto;
+import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
+import inncome.modulo_mp.persistence.dto.PaymentResponseDto;
+import inncome.modulo_mp.persistence.entity.PaymentIdempotency;
+import inncome.modulo_mp.persistence.repository.PaymentIdempotencyRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@code Idempotency-Key} de {@code POST /payment} contra la tabla {@code payment_idempotency}.
+ *
+ * <p>Sin transaccion de test: las filas que escribe "otra instancia" tienen que verse desde el
+ * store mientras espera.</p>
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "mercado.pago.payment.idempotency.wait-timeout-ms=500",
+        "mercado.pago.payment.idempotency.poll-ms=20"
+})
+@Import({PaymentIdempotencyStore.class, PaymentIdempotencyStoreTest.Support.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PaymentIdempotencyStoreTest {
+
+    @TestConfiguration
+    static class Support {
+
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper().findAndRegisterModules();
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private PaymentIdempotencyStore store;
+
+    @Autowired
+    private PaymentIdempotencyRepository repository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void unReintentoRecibeLaMismaRespuestaSinVolverAPagar() throws Exception {
+        String key = UUID.randomUUID().toString();
+        AtomicInteger payments = new AtomicInteger();
+
+        PaymentResponseDto first = store.execute(key, request(1500f), () -> response("pago-" + payments.incrementAndGet()));
+        PaymentResponseDto retry = store.execute(key, request(1500f), () -> response("pago-" + payments.incrementAndGet()));
+
+        // Otra instancia no tiene la cache en memoria: la respuesta sale de la tabla
+        completedCache().invalidateAll();
+        PaymentResponseDto fromDb = store.execute(key, request(1500f), () -> response("pago-" + payments.incrementAndGet()));
+
+        assertEquals(1, payments.get());
+        assertEquals("pago-1", first.getId());
+        assertEquals(first, retry);
+        assertEquals(first, fromDb);
+    }
+
+    @Test
+    void laMismaClaveConOtroBodyDa409() throws Exception {
+        String key = UUID.randomUUID().toString();
+        store.execute(key, request(1500f), () -> response("pago-1"));
+
+        assertThrows(IdempotencyKeyConflictException.class, () -> store.execute(key, request(9999f), () -> response("pago-2")));
+
+        completedCache().invalidateAll();
+        assertThrows(IdempotencyKeyConflictException.class, () -> store.execute(key, request(9999f), () -> response("pago-2")));
+    }
+
+    @Test
+    void unDuplicadoConcurrenteEsperaAlPrimerIntento() throws Exception {
+        String key = UUID.randomUUID().toString();
+        AtomicInteger payments = new AtomicInteger();
+        CountDownLatch paying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<PaymentResponseDto> first = executor.submit(() -> store.execute(key, request(1500f), () -> {
+                payments.incrementAndGet();
+                paying.countDown();
+                release.await();
+                return response("pago-1");
+            }));
+            assertTrue(paying.await(5, TimeUnit.SECONDS));
+            Future<PaymentResponseDto> duplicate = executor.submit(() -> store.execute(key, request(1500f), () -> {
+                payments.incrementAndGet();
+                return response("pago-2");
+            }));
+
+            release.countDown();
+            assertEquals("pago-1", first.get(5, TimeUnit.SECONDS).getId());
+            assertEquals("pago-1", duplicate.get(5, TimeUnit.SECONDS).getId());
+            assertEquals(1, payments.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void unDuplicadoDeOtraInstanciaEsperaSuResultado() throws Exception {
+        String key = UUID.randomUUID().toString();
+        // Otra instancia tomo la clave y esta pagando
+        repository.insert(key, fingerprint(request(1500f)), LocalDateTime.now().plusSeconds(120));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<PaymentResponseDto> duplicate = executor.submit(() -> store.execute(key, request(1500f), () -> response("no-deberia-pagar")));
+            TimeUnit.MILLISECONDS.sleep(100);
+            repository.complete(key, objectMapper.writeValueAsString(response("pago-otra-instancia")), LocalDateTime.now().plusDays(1));
+
+            assertEquals("pago-otra-instancia", duplicate.get(5, TimeUnit.SECONDS).getId());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void unDuplicadoRecibe409RecienCuandoVenceLaEspera() throws Exception {
+        String key = UUID.randomUUID().toString();
+        repository.insert(key, fingerprint(request(1500f)), LocalDateTime.now().plusSeconds(120));
+
+        long start = System.nanoTime();
+        assertThrows(IdempotencyKeyConflictException.class, () -> store.execute(key, request(1500f), () -> response("no-deberia-pagar")));
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 500, "Respondio 409 sin esperar wait-timeout-ms");
+    }
+
+    @Test
+    void unIntentoAbandonadoSeTomaAlVencerSuLease() throws Exception {
+        String key = UUID.randomUUID().toString();
+        // La instancia que tenia la clave se cayo y su lease ya vencio
+        repository.insert(key, fingerprint(request(1500f)), LocalDateTime.now().minusSeconds(1));
+
+        PaymentResponseDto response = store.execute(key, request(1500f), () -> response("pago-reintento"));
+
+        assertEquals("pago-reintento", response.getId());
+        Optional<PaymentIdempotency> row = repository.findByIdempotencyKey(key);
+        assertTrue(row.isPresent());
+        assertNotNull(row.get().getResponse());
+        assertTrue(row.get().getExpiresAt().isAfter(LocalDateTime.now().plusHours(1)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Cache<String, ?> completedCache() {
+        return (Cache<String, ?>) ReflectionTestUtils.getField(store, "completed");
+    }
+
+    private String fingerprint(PaymentRequestDto dto) {
+        return ReflectionTestUtils.invokeMethod(store, "fingerprint", dto);
+    }
+
+    private static PaymentRequestDto request(float amount) {
+        return PaymentRequestDto.builder()
+                .totalAmount(amount)
+                .description("Expensas")
+                .title("Expensas")
+                .payerName("Juan Pérez")
+                .paymentTypeId("credit_card")
+                .paymentMethodId("visa")
+                .splitPayment(false)
+                .currencyId(Optional.of("ARS"))
+                .payer(PayerDto.builder()
+                        .email("juan.perez@email.com")
+                        .identification(IdentificationDto.builder().type("DNI").number("12345678").build())
+                        .build())
+                .build();
+    }
+
+    private static PaymentResponseDto response(String id) {
+        return PaymentResponseDto.builder()
+                .id(id)
+                .description("Expensas")
+                .status("approved")
+                .statusDetail("accredited")
+                .paymentMethodId("visa")
+                .paymentTypeId("credit_card")
+                .transactionAmount(1500f)
+                .build();
+    }
+}
@@ -0,0 +1,101 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import inncome.modulo_mp.persistence.entity.PaymentEntity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Journal de write-behind sobre un directorio temporal: reproduccion tras una caida y borrado de
+ * segmentos.
+ */
+class PaymentJournalTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void replayDescartaLaUltimaLineaIncompleta() throws Exception {
+        try (PaymentJournal journal = new PaymentJournal(directory, objectMapper, true, 1 << 20)) {
+            journal.replay();
+            journal.append(payment(1L, PaymentStatus.CREATING));
+            journal.append(payment(2L, PaymentStatus.APPROVED));
+        }
+        // Caida en el medio de la escritura de la tercera linea
+        Files.writeString(segment(1), "{\"id\":3,\"status\":\"crea", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (PaymentJournal journal = new PaymentJournal(directory, objectMapper, true, 1 << 20)) {
+            List<PaymentJournal.Entry> entries = journal.replay();
+
+            assertEquals(List.of(1L, 2L), entries.stream().map(entry -> entry.payment().getId()).toList());
+            assertEquals(PaymentStatus.APPROVED, entries.get(1).payment().getStatus());
+
+            // Se sigue escribiendo en un segmento nuevo, no detras de la linea rota
+            PaymentJournal.Entry next = journal.append(payment(4L, PaymentStatus.CREATING));
+            assertEquals(2, next.segment());
+
+            // El segmento con la linea rota se borra cuando se liberan sus entradas validas
+            journal.release(entries);
+            assertFalse(Files.exists(segment(1)));
+        }
+    }
+
+    @Test
+    void unSegmentoSeBorraRecienCuandoSeLiberanTodasSusEntradas() throws Exception {
+        // Entran dos lineas por segmento: la tercera rota al siguiente
+        long lineBytes = (objectMapper.writeValueAsString(payment(1L, PaymentStatus.CREATING)) + "\n").getBytes(StandardCharsets.UTF_8).length;
+
+        try (PaymentJournal journal = new PaymentJournal(directory, objectMapper, false, lineBytes + 1)) {
+            journal.replay();
+            PaymentJournal.Entry first = journal.append(payment(1L, PaymentStatus.CREATING));
+            PaymentJournal.Entry second = journal.append(payment(2L, PaymentStatus.CREATING));
+            PaymentJournal.Entry third = journal.append(payment(3L, PaymentStatus.CREATING));
+            assertEquals(1, first.segment());
+            assertEquals(1, second.segment());
+            assertEquals(2, third.segment());
+
+            journal.release(List.of(first));
+            assertTrue(Files.exists(segment(1)), "Se borro un segmento con entradas pendientes");
+
+            journal.release(List.of(second));
+            assertFalse(Files.exists(segment(1)));
+
+            // El segmento activo no se borra aunque quede sin pendientes
+            journal.release(List.of(third));
+            assertTrue(Files.exists(segment(2)));
+        }
+
+        // Al arrancar solo queda el segmento activo; reescribirlo no cambia nada gracias al upsert
+        try (PaymentJournal journal = new PaymentJournal(directory, objectMapper, false, lineBytes + 1)) {
+            assertEquals(List.of(3L), journal.replay().stream().map(entry -> entry.payment().getId()).toList());
+        }
+    }
+
+    private Path segment(long segment) {
+        return directory.resolve("payments-" + segment + ".log");
+    }
+
+    private static PaymentEntity payment(Long id, PaymentStatus status) {
+        return PaymentEntity.builder()
+                .id(id)
+                .status(status)
+                .externalReference("ref-" + id)
+                .createdAt(LocalDateTime.of(2026, 1, 1, 12, 0))
+                .version(0L)
+                .build();
+    }
+}
@@ -0,0 +1,147 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import inncome.modulo_mp.config.SnowflakeConfig;
+import inncome.modulo_mp.persistence.dto.IdentificationDto;
+import inncome.modulo_mp.persistence.dto.PayerDto;
+import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentType;
+import inncome.modulo_mp.persistence.entity.PaymentEntity;
+import inncome.modulo_mp.persistence.repository.PaymentRepository;
+import inncome.modulo_mp.service.serviceImpl.PaymentStatusReconciler.PaymentStatusUpdate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Cierre del registro "creating" cuando un webhook de la misma referencia externa llega mientras
+ * la estrategia todavia espera la respuesta de MercadoPago.
+ *
+ * <p>Sin transaccion de test: como en produccion, cada paso confirma su propia transaccion.</p>
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false",
+        "mercado.pago.snowflake.single-instance=true"
+})
+@Import({PaymentRecordService.class, SnowflakeConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class PaymentRecordServiceTest {
+
+    @Autowired
+    private PaymentRecordService recordService;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockitoBean
+    private PaymentWriteBehindService writeBehind; // Deshabilitado: isEnabled() devuelve false
+
+    @Test
+    void completeNoPisaElEstadoDeUnWebhookQueLlegoAntes() throws Exception {
+        PaymentEntity creating = recordService.begin(request());
+
+        // El webhook llega antes que la respuesta de la orden y ya asigna el id del pago
+        assertTrue(webhook(creating, 111L).applied().contains(111L));
+
+        PaymentEntity completed = recordService.complete(creating, mpResponse("order-1", PaymentStatus.PENDING));
+
+        assertEquals(PaymentStatus.APPROVED, completed.getStatus());
+        assertEquals("111", completed.getPayment_id());
+
+        PaymentEntity stored = paymentRepository.findLatestById(creating.getId()).orElseThrow();
+        assertEquals(PaymentStatus.APPROVED, stored.getStatus());
+        assertEquals("accredited", stored.getStatusDetail());
+        assertEquals("111", stored.getPayment_id());
+    }
+
+    @Test
+    void completeSinWebhookGuardaLaRespuestaDeMercadoPago() {
+        PaymentEntity creating = recordService.begin(request());
+
+        PaymentEntity completed = recordService.complete(creating, mpResponse("order-2", PaymentStatus.PROCESSED));
+
+        assertEquals(PaymentStatus.PROCESSED, completed.getStatus());
+        PaymentEntity stored = paymentRepository.findLatestById(creating.getId()).orElseThrow();
+        assertEquals(PaymentStatus.PROCESSED, stored.getStatus());
+        assertEquals("order-2", stored.getPayment_id());
+        assertEquals(creating.getExternalReference(), stored.getExternalReference());
+        assertEquals(creating.getVersion() + 1, stored.getVersion());
+    }
+
+    @Test
+    void failNoPisaElEstadoDeUnWebhookQueLlegoAntes() throws Exception {
+        PaymentEntity creating = recordService.begin(request());
+        webhook(creating, 333L);
+
+        recordService.fail(creating, new IllegalStateException("timeout"));
+
+        assertEquals(PaymentStatus.APPROVED, paymentRepository.findLatestById(creating.getId()).orElseThrow().getStatus());
+    }
+
+    /**
+     * Escribe el estado aprobado por el mismo camino que el worker de webhooks.
+     */
+    private PaymentStatusReconciler.ApplyResult webhook(PaymentEntity creating, Long paymentId) throws Exception {
+        PaymentStatusReconciler reconciler = new PaymentStatusReconciler();
+        ReflectionTestUtils.setField(reconciler, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(reconciler, "meterRegistry", new SimpleMeterRegistry());
+        reconciler.init();
+        return reconciler.apply(List.of(
+                new PaymentStatusUpdate(paymentId, "approved", "accredited", creating.getExternalReference())));
+    }
+
+    private static PaymentRequestDto request() {
+        return PaymentRequestDto.builder()
+                .totalAmount(1500f)
+                .description("Expensas")
+                .title("Expensas")
+                .payerName("Juan Pérez")
+                .paymentTypeId("credit_card")
+                .paymentMethodId("visa")
+                .splitPayment(false)
+                .currencyId(Optional.of("ARS"))
+                .payer(PayerDto.builder()
+                        .email("juan.perez@email.com")
+                        .identification(IdentificationDto.builder().type("DNI").number("12345678").build())
+                        .build())
+                .build();
+    }
+
+    private static PaymentEntity mpResponse(String orderId, PaymentStatus status) {
+        return PaymentEntity.builder()
+                .payment_id(orderId)
+                .status(status)
+                .description("Expensas")
+                .statusDetail(status.value())
+                .paymentType(PaymentType.CREDIT_CARD)
+                .paymentMethod("visa")
+                .payerType("DNI")
+                .payerEmail("juan.perez@email.com")
+                .payerNumber("12345678")
+                .totalAmount(new BigDecimal("1500.00"))
+                .marketplaceFee(BigDecimal.ZERO.setScale(2))
+                .netReceivedAmount(new BigDecimal("1500.00"))
+                .currencyId("ARS")
+                .dateCreated(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,92 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import inncome.modulo_mp.config.MPConfig;
+import inncome.modulo_mp.config.MPCredentialRegistry;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import inncome.modulo_mp.persistence.entity.PaymentEntity;
+import inncome.modulo_mp.persistence.repository.PaymentRepository;
+import inncome.modulo_mp.simulator.MercadoPagoSimulator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Recuperacion de un registro "creating" cuya referencia tiene varios intentos de pago en MP.
+ */
+class PaymentRecoveryServiceTest {
+
+    private MercadoPagoSimulator simulator;
+    private PaymentRepository paymentRepository;
+    private PaymentRecoveryService recovery;
+
+    @BeforeEach
+    void setUp() {
+        simulator = MercadoPagoSimulator.start();
+        paymentRepository = mock(PaymentRepository.class);
+        when(paymentRepository.completeIfStatus(any(), eq(PaymentStatus.CREATING), any())).thenReturn(1);
+
+        MPConfig mpConfig = mock(MPConfig.class);
+        when(mpConfig.getAccessToken()).thenReturn("PLATFORM-TOKEN");
+
+        recovery = new PaymentRecoveryService();
+        ReflectionTestUtils.setField(recovery, "paymentRepository", paymentRepository);
+        ReflectionTestUtils.setField(recovery, "credentialRegistry", new MPCredentialRegistry(mpConfig));
+        ReflectionTestUtils.setField(recovery, "mercadoPagoWebClient", WebClient.create(simulator.baseUrl()));
+        ReflectionTestUtils.setField(recovery, "staleAfterSeconds", 120L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        simulator.close();
+    }
+
+    @Test
+    void seRecuperaElIntentoAprobadoAunqueNoSeaElUltimo() throws Exception {
+        long approved = simulator.createPayment("approved", "accredited", "ref-1");
+        Thread.sleep(5);
+        simulator.createPayment("rejected", "cc_rejected_other_reason", "ref-1");
+
+        PaymentEntity payment = recover("ref-1");
+
+        assertEquals(String.valueOf(approved), payment.getPayment_id());
+        assertEquals(PaymentStatus.APPROVED, payment.getStatus());
+    }
+
+    @Test
+    void sinAprobadoSeRecuperaElUltimoActualizado() throws Exception {
+        simulator.createPayment("rejected", "cc_rejected_other_reason", "ref-1");
+        Thread.sleep(5);
+        long pending = simulator.createPayment("in_process", "pending_contingency", "ref-1");
+
+        PaymentEntity payment = recover("ref-1");
+
+        assertEquals(String.valueOf(pending), payment.getPayment_id());
+        assertEquals(PaymentStatus.IN_PROCESS, payment.getStatus());
+    }
+
+    private PaymentEntity recover(String externalReference) {
+        PaymentEntity creating = PaymentEntity.builder()
+                .id(1L)
+                .status(PaymentStatus.CREATING)
+                .statusDetail("creating")
+                .externalReference(externalReference)
+                .createdAt(LocalDateTime.now().minusMinutes(10))
+                .version(0L)
+                .build();
+        when(paymentRepository.findByStatusAndCreatedAtBefore(eq(PaymentStatus.CREATING), any())).thenReturn(List.of(creating));
+
+        recovery.recoverStalePayments();
+        return creating;
+    }
+}
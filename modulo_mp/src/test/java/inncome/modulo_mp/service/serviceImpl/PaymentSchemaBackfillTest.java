@@ -0,0 +1,81 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Arranque sobre una base creada con la entidad original: {@code payment_entity} como la generaba
+ * Hibernate para MySQL, mas las columnas nuevas que agrega {@code ddl-auto=update}.
+ */
+class PaymentSchemaBackfillTest {
+
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        jdbc = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:backfill;MODE=MySQL;DB_CLOSE_DELAY=-1"));
+        jdbc.execute("drop table if exists payment_entity");
+        // DDL de la entidad original: los @NotBlank y los double primitivos son NOT NULL
+        jdbc.execute("""
+                create table payment_entity (
+                    id bigint not null auto_increment, commission float(53) not null, currency_id varchar(255) not null,
+                    date_approved varchar(255) not null, date_created varchar(255) not null, description varchar(255) not null,
+                    net_received_amount float(53) not null, payer_email varchar(255) not null,
+                    payer_identification_number varchar(255) not null, payer_identification_type varchar(255) not null,
+                    payment_id varchar(255), payment_method_id varchar(255) not null, payment_type_id varchar(255) not null,
+                    status varchar(255) not null, status_detail varchar(255) not null, transaction_amount float(53) not null,
+                    primary key (id))
+                """);
+        jdbc.update("insert into payment_entity (commission, currency_id, date_approved, date_created, description, net_received_amount, "
+                        + "payer_email, payer_identification_number, payer_identification_type, payment_id, payment_method_id, payment_type_id, "
+                        + "status, status_detail, transaction_amount) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                150.0, "Optional[ARS]", "2025-01-02T10:00:00.000-04:00", "2025-01-02T09:59:00.000-04:00", "Expensas", 1350.0,
+                "juan.perez@email.com", "12345678", "DNI", "111", "visa", "credit_card", "approved", "accredited", 1500.0);
+        // Columnas que agrega ddl-auto=update con la entidad actual
+        jdbc.execute("""
+                alter table payment_entity add column (
+                    status_code smallint, payment_type_code smallint, amount decimal(15, 2), marketplace_fee decimal(15, 2),
+                    net_amount decimal(15, 2), currency char(3), mp_created_at timestamp, mp_approved_at timestamp,
+                    company_id bigint, external_reference varchar(64), created_at timestamp, version bigint not null default 0)
+                """);
+    }
+
+    @Test
+    void despuesDelArranqueSePuedeInsertarUnPagoNuevo() {
+        backfill().migrate();
+
+        // Insert de recordService.begin: no completa ninguna columna del esquema anterior
+        jdbc.update("insert into payment_entity (id, status_code, description, status_detail, payment_type_code, payment_method_id, "
+                        + "payer_identification_type, payer_email, payer_identification_number, amount, currency, external_reference, created_at) "
+                        + "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                1000L, PaymentStatus.CREATING.code(), "Expensas", "creating", (short) 1, "visa", "DNI", "juan.perez@email.com", "12345678",
+                new BigDecimal("1500.00"), "ARS", "ref-1", LocalDateTime.now());
+
+        Map<String, Object> migrated = jdbc.queryForMap("select status_code, amount, currency from payment_entity where payment_id = '111'");
+        assertEquals(PaymentStatus.APPROVED.code(), ((Number) migrated.get("STATUS_CODE")).shortValue());
+        assertEquals(0, new BigDecimal("1500.00").compareTo((BigDecimal) migrated.get("AMOUNT")));
+        assertEquals("ARS", migrated.get("CURRENCY"));
+        assertEquals(2, jdbc.queryForObject("select count(*) from payment_entity", Integer.class));
+    }
+
+    private PaymentSchemaBackfill backfill() {
+        PaymentSchemaBackfill backfill = new PaymentSchemaBackfill();
+        ReflectionTestUtils.setField(backfill, "jdbcTemplate", jdbc);
+        ReflectionTestUtils.setField(backfill, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(backfill, "enabled", true);
+        ReflectionTestUtils.setField(backfill, "batchSize", 1000);
+        ReflectionTestUtils.setField(backfill, "dropLegacyColumns", false);
+        return backfill;
+    }
+}
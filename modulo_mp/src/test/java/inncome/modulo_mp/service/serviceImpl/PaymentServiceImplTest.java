@@ -0,0 +1,73 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.mercadopago.exceptions.MPException;
+import inncome.modulo_mp.config.MPConfig;
+import inncome.modulo_mp.config.MPCredentialRegistry;
+import inncome.modulo_mp.factory.MPStrategyFactory;
+import inncome.modulo_mp.persistence.dto.IdentificationDto;
+import inncome.modulo_mp.persistence.dto.PayerDto;
+import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
+import inncome.modulo_mp.persistence.entity.PaymentEntity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Un request que la estrategia rechaza no tiene que dejar filas en {@code payment_entity}.
+ */
+class PaymentServiceImplTest {
+
+    private PaymentRecordService recordService;
+    private PaymentServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        MPStrategyFactory strategyFactory = mock(MPStrategyFactory.class);
+        MPConfig mpConfig = mock(MPConfig.class);
+        when(strategyFactory.getStrategy("credit_card")).thenReturn(new PaymentCardStrategy(mpConfig, new MPCredentialRegistry(mpConfig), null));
+        recordService = mock(PaymentRecordService.class);
+
+        service = new PaymentServiceImpl();
+        ReflectionTestUtils.setField(service, "strategyFactory", strategyFactory);
+        ReflectionTestUtils.setField(service, "recordService", recordService);
+    }
+
+    @Test
+    void unRequestInvalidoNoInsertaElRegistroCreating() {
+        MPException e = assertThrows(MPException.class, () -> service.generatePayment(cardRequest(Optional.empty())));
+
+        assertEquals("Token vacio en el dto", e.getMessage());
+        verify(recordService, never()).begin(any());
+        verify(recordService, never()).fail(any(PaymentEntity.class), any());
+    }
+
+    private static PaymentRequestDto cardRequest(Optional<String> token) {
+        return PaymentRequestDto.builder()
+                .totalAmount(1500f)
+                .description("Expensas")
+                .title("Expensas")
+                .payerName("Juan Pérez")
+                .paymentTypeId("credit_card")
+                .paymentMethodId("visa")
+                .splitPayment(false)
+                .currencyId(Optional.of("ARS"))
+                .token(token)
+                .installments(Optional.of(1))
+                .issuerId(Optional.of("24"))
+                .payer(PayerDto.builder()
+                        .email("juan.perez@email.com")
+                        .identification(IdentificationDto.builder().type("DNI").number("12345678").build())
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,197 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.mercadopago.client.payment.PaymentClient;
+import com.mercadopago.net.MPDefaultHttpClient;
+import inncome.modulo_mp.config.MPBaseUrlHttpClient;
+import inncome.modulo_mp.config.MPConfig;
+import inncome.modulo_mp.config.MPCredentialRegistry;
+import inncome.modulo_mp.persistence.entity.CompanyToken;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import inncome.modulo_mp.persistence.id.SnowflakeIdGenerator;
+import inncome.modulo_mp.service.serviceImpl.PaymentStatusReconciler.ApplyResult;
+import inncome.modulo_mp.service.serviceImpl.PaymentStatusReconciler.PaymentStatusUpdate;
+import inncome.modulo_mp.simulator.MercadoPagoSimulator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Resolucion en lote contra el simulador (cuanto recorre la busqueda y con que credenciales) y
+ * escritura de los estados resueltos en H2.
+ */
+class PaymentStatusReconcilerTest {
+
+    private static final String SEARCH = "GET /v1/payments/search";
+    private static final String GET = "GET /v1/payments/{id}";
+
+    private MercadoPagoSimulator simulator;
+    private JdbcTemplate jdbc;
+    private CompanyTokenCache companyTokenCache;
+    private PaymentStatusReconciler reconciler;
+
+    @BeforeEach
+    void setUp() {
+        SnowflakeIdGenerator.configure(0);
+        simulator = MercadoPagoSimulator.start();
+
+        jdbc = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:reconciler;DB_CLOSE_DELAY=-1"));
+        jdbc.execute("drop table if exists payment_entity");
+        jdbc.execute("""
+                create table payment_entity (
+                    id bigint auto_increment primary key, payment_id varchar(255) unique, status_code smallint, description varchar(255),
+                    status_detail varchar(255), payment_type_code smallint, payment_method_id varchar(32),
+                    payer_identification_type varchar(16), payer_email varchar(255), payer_identification_number varchar(255),
+                    amount decimal(15, 2), marketplace_fee decimal(15, 2), net_amount decimal(15, 2), currency char(3),
+                    mp_created_at timestamp, mp_approved_at timestamp, company_id bigint, external_reference varchar(64),
+                    created_at timestamp, version bigint not null default 0)
+                """);
+
+        MPConfig mpConfig = mock(MPConfig.class);
+        when(mpConfig.getAccessToken()).thenReturn("PLATFORM-TOKEN");
+        companyTokenCache = mock(CompanyTokenCache.class);
+
+        reconciler = new PaymentStatusReconciler();
+        ReflectionTestUtils.setField(reconciler, "mercadoPagoWebClient", WebClient.create(simulator.baseUrl()));
+        ReflectionTestUtils.setField(reconciler, "paymentClient",
+                new PaymentClient(new MPBaseUrlHttpClient(new MPDefaultHttpClient(), simulator.baseUrl())));
+        ReflectionTestUtils.setField(reconciler, "credentialRegistry", new MPCredentialRegistry(mpConfig));
+        ReflectionTestUtils.setField(reconciler, "companyTokenCache", companyTokenCache);
+        ReflectionTestUtils.setField(reconciler, "jdbcTemplate", jdbc);
+        ReflectionTestUtils.setField(reconciler, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(reconciler, "searchThreshold", 3);
+        ReflectionTestUtils.setField(reconciler, "searchWindowMinutes", 30);
+        ReflectionTestUtils.setField(reconciler, "pageSize", 1000);
+        ReflectionTestUtils.setField(reconciler, "maxPages", 5);
+        ReflectionTestUtils.setField(reconciler, "scanFactor", 4);
+        reconciler.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        simulator.close();
+    }
+
+    @Test
+    void unLoteChicoNoRecorreTodaLaVentana() {
+        Instant notifiedAt = Instant.now().minusSeconds(1);
+        long first = simulator.createPayment("approved", "accredited", "ref-1");
+        long second = simulator.createPayment("rejected", "cc_rejected_other_reason", "ref-2");
+        long third = simulator.createPayment("pending", "pending_contingency", "ref-3");
+        for (int i = 0; i < 3000; i++) {
+            simulator.createPayment("approved", "accredited", "otro-" + i);
+        }
+
+        Map<Long, PaymentStatusUpdate> resolved = reconciler.resolve(notified(notifiedAt, first, second, third));
+
+        assertEquals(3, resolved.size());
+        assertEquals("approved", resolved.get(first).status());
+        assertEquals("rejected", resolved.get(second).status());
+        assertEquals("pending_contingency", resolved.get(third).statusDetail());
+        // Sin el tope recorria la ventana entera (hasta 5 paginas de 1000); ahora 4 filas por pago y el resto por GET
+        assertEquals(1, simulator.requestCount(SEARCH));
+        assertTrue(simulator.searchResultCount() <= 12, "Se recorrieron " + simulator.searchResultCount() + " pagos");
+    }
+
+    @Test
+    void cadaCompaniaSeConsultaConSuToken() {
+        Instant notifiedAt = Instant.now().minusSeconds(1);
+        long first = simulator.createPayment("approved", "accredited", "ref-1");
+        long second = simulator.createPayment("approved", "accredited", "ref-2");
+        long third = simulator.createPayment("refunded", "refunded", "ref-3");
+        long platform = simulator.createPayment("approved", "accredited", "ref-4");
+        for (long paymentId : List.of(first, second, third)) {
+            jdbc.update("insert into payment_entity (payment_id, company_id) values (?, ?)", String.valueOf(paymentId), 7L);
+        }
+        when(companyTokenCache.get(Optional.of(7L)))
+                .thenReturn(Optional.of(CompanyToken.builder().id(7L).accessToken("COMPANY-7-TOKEN").build()));
+
+        Map<Long, PaymentStatusUpdate> resolved = reconciler.resolve(notified(notifiedAt, first, second, third, platform));
+
+        assertEquals(4, resolved.size());
+        assertEquals("refunded", resolved.get(third).status());
+        // Los de la compañia salen de una busqueda con su token; el que no esta en la base, por GET con el de la plataforma
+        assertEquals(List.of("COMPANY-7-TOKEN"), simulator.accessTokens(SEARCH));
+        assertEquals(List.of("PLATFORM-TOKEN"), simulator.accessTokens(GET));
+    }
+
+    @Test
+    void unResultadoDeLaBusquedaAnteriorALaNotificacionSeConsultaPorGet() {
+        long first = simulator.createPayment("pending", "pending_contingency", "ref-1");
+        long second = simulator.createPayment("pending", "pending_contingency", "ref-2");
+        long third = simulator.createPayment("approved", "accredited", "ref-3");
+
+        // La notificacion es posterior a lo que muestra la busqueda: su indice puede estar atrasado
+        Map<Long, PaymentStatusUpdate> resolved = reconciler.resolve(notified(Instant.now().plusSeconds(60), first, second, third));
+
+        assertEquals(3, resolved.size());
+        assertEquals(1, simulator.requestCount(SEARCH));
+        assertEquals(3, simulator.requestCount(GET));
+    }
+
+    @Test
+    void unIntentoAprobadoDespuesDeUnoRechazadoNoSePierde() throws Exception {
+        // Registro de Checkout Pro: todavia tiene el id de la preferencia
+        jdbc.update("insert into payment_entity (payment_id, status_code, status_detail, description, amount, currency, external_reference) "
+                + "values (?, ?, ?, ?, ?, ?, ?)", "202809963-920c288b-4ebb", PaymentStatus.PENDING.code(), "pending", "Expensas",
+                new BigDecimal("1500.00"), "ARS", "ref-1");
+
+        ApplyResult rejected = reconciler.apply(List.of(new PaymentStatusUpdate(111L, "rejected", "cc_rejected_other_reason", "ref-1")));
+        // El comprador reintenta con otra tarjeta en la misma preferencia
+        ApplyResult approved = reconciler.apply(List.of(new PaymentStatusUpdate(222L, "approved", "accredited", "ref-1")));
+
+        assertEquals(Set.of(111L), rejected.applied());
+        assertEquals(Set.of(222L), approved.applied());
+        assertTrue(approved.stale().isEmpty());
+        // Cada intento queda en su registro; el nuevo copia los datos del pedido
+        assertEquals(List.of("111", "222"),
+                jdbc.queryForList("select payment_id from payment_entity where external_reference = 'ref-1' order by payment_id", String.class));
+        assertEquals(PaymentStatus.REJECTED.code(), status("111"));
+        assertEquals(PaymentStatus.APPROVED.code(), status("222"));
+        assertEquals(0, new BigDecimal("1500.00").compareTo(
+                jdbc.queryForObject("select amount from payment_entity where payment_id = '222'", BigDecimal.class)));
+
+        // Una notificacion atrasada del rechazado sigue siendo atrasada, no toca al aprobado
+        ApplyResult late = reconciler.apply(List.of(new PaymentStatusUpdate(111L, "pending", "pending_contingency", "ref-1")));
+        assertEquals(Set.of(111L), late.stale());
+        assertEquals(PaymentStatus.APPROVED.code(), status("222"));
+    }
+
+    @Test
+    void unaReferenciaSinRegistroQuedaPendiente() throws Exception {
+        ApplyResult result = reconciler.apply(List.of(new PaymentStatusUpdate(333L, "approved", "accredited", "ref-sin-registro")));
+
+        assertTrue(result.applied().isEmpty());
+        assertFalse(result.isResolvedLocally(333L));
+    }
+
+    private static Map<Long, Instant> notified(Instant at, Long... paymentIds) {
+        Map<Long, Instant> notifications = new HashMap<>();
+        for (Long paymentId : paymentIds) {
+            notifications.put(paymentId, at);
+        }
+        return notifications;
+    }
+
+    private short status(String paymentId) {
+        return jdbc.queryForObject("select status_code from payment_entity where payment_id = ?", Short.class, paymentId);
+    }
+}
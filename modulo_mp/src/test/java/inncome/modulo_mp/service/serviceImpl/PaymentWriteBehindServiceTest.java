@@ -0,0 +1,108 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import inncome.modulo_mp.persistence.entity.PaymentEntity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reproduccion del journal al arrancar contra H2 en modo MySQL (el upsert usa
+ * {@code on duplicate key update}).
+ */
+class PaymentWriteBehindServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @TempDir
+    private Path directory;
+
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        jdbc = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:writebehind;MODE=MySQL;DB_CLOSE_DELAY=-1"));
+        jdbc.execute("drop table if exists payment_entity");
+        jdbc.execute("""
+                create table payment_entity (
+                    id bigint primary key, payment_id varchar(255), status_code smallint, description varchar(255),
+                    status_detail varchar(255), payment_type_code smallint, payment_method_id varchar(32),
+                    payer_identification_type varchar(16), payer_email varchar(255), payer_identification_number varchar(255),
+                    amount decimal(15, 2), marketplace_fee decimal(15, 2), net_amount decimal(15, 2), currency char(3),
+                    mp_created_at timestamp, mp_approved_at timestamp, company_id bigint, external_reference varchar(64),
+                    created_at timestamp, version bigint not null default 0)
+                """);
+    }
+
+    @Test
+    void unCreatingReproducidoNoPisaElEstadoDeUnWebhookPosterior() throws Exception {
+        // El proceso anterior se cayo con dos "creating" en el journal
+        try (PaymentJournal journal = new PaymentJournal(directory, objectMapper, false, 1 << 20)) {
+            journal.replay();
+            journal.append(creating(1L));
+            journal.append(creating(2L));
+        }
+        // El primero ya se habia escrito y despues un webhook lo aprobo
+        jdbc.update("insert into payment_entity (id, payment_id, status_code, status_detail, external_reference, version) values (?, ?, ?, ?, ?, ?)",
+                1L, "mp-payment-1", PaymentStatus.APPROVED.code(), "accredited", "ref-1", 3L);
+
+        PaymentWriteBehindService service = service();
+        service.init();
+
+        Map<String, Object> approved = jdbc.queryForMap("select payment_id, status_code, status_detail, version from payment_entity where id = 1");
+        assertEquals("mp-payment-1", approved.get("PAYMENT_ID"));
+        assertEquals(PaymentStatus.APPROVED.code(), ((Number) approved.get("STATUS_CODE")).shortValue());
+        assertEquals("accredited", approved.get("STATUS_DETAIL"));
+        assertEquals(3L, ((Number) approved.get("VERSION")).longValue());
+
+        // El que no llego a la base se inserta tal cual, para que lo resuelva la recuperacion
+        assertEquals(PaymentStatus.CREATING.code(),
+                jdbc.queryForObject("select status_code from payment_entity where id = 2", Number.class).shortValue());
+
+        // Todo lo reproducido quedo en la base: solo queda el segmento nuevo, vacio
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.allMatch(file -> file.toFile().length() == 0));
+        }
+        service.shutdown();
+    }
+
+    private PaymentWriteBehindService service() {
+        PaymentWriteBehindService service = new PaymentWriteBehindService();
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbc);
+        ReflectionTestUtils.setField(service, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "directory", directory.toString());
+        ReflectionTestUtils.setField(service, "fsync", false);
+        ReflectionTestUtils.setField(service, "segmentBytes", 1L << 20);
+        ReflectionTestUtils.setField(service, "batchSize", 500);
+        ReflectionTestUtils.setField(service, "holdCreatingSeconds", 30L);
+        return service;
+    }
+
+    private static PaymentEntity creating(Long id) {
+        return PaymentEntity.builder()
+                .id(id)
+                .status(PaymentStatus.CREATING)
+                .description("Expensas")
+                .statusDetail("creating")
+                .externalReference("ref-" + id)
+                .createdAt(LocalDateTime.of(2026, 1, 1, 12, 0))
+                .version(0L)
+                .build();
+    }
+}
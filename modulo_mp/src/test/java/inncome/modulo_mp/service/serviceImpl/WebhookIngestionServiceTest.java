@@ -0,0 +1,93 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import inncome.modulo_mp.persistence.entity.WebhookEvent;
+import inncome.modulo_mp.persistence.repository.WebhookDedupRepository;
+import inncome.modulo_mp.persistence.repository.WebhookEventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.when;
+
+/**
+ * Una notificacion que no se pudo encolar no puede quedar marcada como vista: el reintento de
+ * MP es la unica forma de recuperarla.
+ */
+class WebhookIngestionServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private WebhookEventRepository eventRepository;
+    private WebhookDedupRepository dedupRepository;
+    private WebhookDeduplicator deduplicator;
+    private WebhookIngestionService ingestion;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository = mock(WebhookEventRepository.class);
+        dedupRepository = mock(WebhookDedupRepository.class);
+
+        deduplicator = new WebhookDeduplicator();
+        ReflectionTestUtils.setField(deduplicator, "dedupRepository", dedupRepository);
+        ReflectionTestUtils.setField(deduplicator, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(deduplicator, "mode", "memory");
+        ReflectionTestUtils.setField(deduplicator, "ttlS", 600L);
+        ReflectionTestUtils.setField(deduplicator, "maxSize", 1000L);
+        deduplicator.init();
+
+        ingestion = new WebhookIngestionService();
+        ReflectionTestUtils.setField(ingestion, "eventRepository", eventRepository);
+        ReflectionTestUtils.setField(ingestion, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(ingestion, "deduplicator", deduplicator);
+        ReflectionTestUtils.setField(ingestion, "meterRegistry", meterRegistry);
+    }
+
+    @Test
+    void siFallaLaConsultaDePendientesElReintentoSeEncola() {
+        when(eventRepository.collapseIntoPending(eq("111"), any(Instant.class)))
+                .thenThrow(new DataAccessResourceFailureException("Sin conexiones"));
+        assertThrows(DataAccessResourceFailureException.class, () -> ingestion.enqueue(notification(), "111"));
+
+        reset(eventRepository);
+        when(eventRepository.save(any(WebhookEvent.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        Optional<WebhookEvent> retry = ingestion.enqueue(notification(), "111");
+
+        assertTrue(retry.isPresent());
+    }
+
+    @Test
+    void siFallaLaTablaDeDeduplicacionElReintentoSeEncola() {
+        ReflectionTestUtils.setField(deduplicator, "mode", "db");
+        doThrow(new DataAccessResourceFailureException("Sin conexiones")).when(dedupRepository).insert(any(), any());
+        assertThrows(DataAccessResourceFailureException.class, () -> ingestion.enqueue(notification(), "111"));
+
+        reset(dedupRepository);
+        when(eventRepository.save(any(WebhookEvent.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        Optional<WebhookEvent> retry = ingestion.enqueue(notification(), "111");
+
+        assertTrue(retry.isPresent());
+    }
+
+    private static Map<String, Object> notification() {
+        return Map.of(
+                "id", 12345678L,
+                "type", "payment",
+                "action", "payment.updated",
+                "date_created", "2026-01-01T12:00:00Z",
+                "data", Map.of("id", "111"));
+    }
+}
@@ -0,0 +1,127 @@
+package inncome.modulo_mp.service.serviceImpl;
+
+import inncome.modulo_mp.persistence.entity.Enum.WebhookEventStatus;
+import inncome.modulo_mp.persistence.entity.WebhookEvent;
+import inncome.modulo_mp.persistence.repository.WebhookEventRepository;
+import inncome.modulo_mp.service.serviceImpl.PaymentStatusReconciler.ApplyResult;
+import inncome.modulo_mp.service.serviceImpl.PaymentStatusReconciler.PaymentStatusUpdate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Cierre de los eventos de un lote contra {@code webhook_event}: un worker que termina despues de
+ * que vencio su lock no pisa el evento que ya tomo otro.
+ *
+ * <p>Sin transaccion de test: cada update confirma su propia transaccion, como en produccion.</p>
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class WebhookWorkerTest {
+
+    private static final PaymentStatusUpdate APPROVED = new PaymentStatusUpdate(111L, "approved", "accredited", "ref-1");
+
+    @Autowired
+    private WebhookEventRepository eventRepository;
+
+    private PaymentStatusReconciler reconciler;
+    private WebhookWorker worker;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        reconciler = mock(PaymentStatusReconciler.class);
+
+        worker = new WebhookWorker();
+        ReflectionTestUtils.setField(worker, "eventRepository", eventRepository);
+        ReflectionTestUtils.setField(worker, "reconciler", reconciler);
+        ReflectionTestUtils.setField(worker, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(worker, "maxAttempts", 8);
+        ReflectionTestUtils.setField(worker, "backoffInitialMs", 1000L);
+        ReflectionTestUtils.setField(worker, "backoffMaxMs", 300000L);
+    }
+
+    @Test
+    void unLoteProcesadoQuedaEnDone() throws Exception {
+        Long id = pending("111");
+        eventRepository.claim(List.of(id), "lote-1", LocalDateTime.now().plusSeconds(120));
+        when(reconciler.resolve(any())).thenReturn(Map.of(111L, APPROVED));
+        when(reconciler.apply(anyCollection())).thenReturn(new ApplyResult(Set.of(111L), Set.of()));
+
+        worker.process("lote-1");
+
+        WebhookEvent event = eventRepository.findById(id).orElseThrow();
+        assertEquals(WebhookEventStatus.DONE, event.getStatus());
+        assertNull(event.getLockedUntil());
+    }
+
+    @Test
+    void unWorkerConElLockVencidoNoPisaAlQueLoRetomo() throws Exception {
+        Long id = pending("111");
+        eventRepository.claim(List.of(id), "lote-lento", LocalDateTime.now().plusSeconds(120));
+        // Mientras el primer lote espera a MP, su lock vence y otro worker retoma el evento
+        when(reconciler.resolve(any())).thenAnswer(invocation -> {
+            eventRepository.releaseExpiredLocks(LocalDateTime.now().plusSeconds(121));
+            eventRepository.claim(List.of(id), "lote-nuevo", LocalDateTime.now().plusSeconds(120));
+            return Map.of(111L, APPROVED);
+        });
+        when(reconciler.apply(anyCollection())).thenReturn(new ApplyResult(Set.of(111L), Set.of()));
+
+        worker.process("lote-lento");
+
+        WebhookEvent event = eventRepository.findById(id).orElseThrow();
+        assertEquals(WebhookEventStatus.PROCESSING, event.getStatus());
+        assertEquals("lote-nuevo", event.getClaimToken());
+        assertEquals(2, event.getAttempts());
+    }
+
+    @Test
+    void unFalloConElLockVencidoNoDevuelveElEventoALaCola() throws Exception {
+        Long id = pending("111");
+        eventRepository.claim(List.of(id), "lote-lento", LocalDateTime.now().plusSeconds(120));
+        when(reconciler.resolve(any())).thenAnswer(invocation -> {
+            eventRepository.releaseExpiredLocks(LocalDateTime.now().plusSeconds(121));
+            eventRepository.claim(List.of(id), "lote-nuevo", LocalDateTime.now().plusSeconds(120));
+            throw new IllegalStateException("timeout");
+        });
+
+        worker.process("lote-lento");
+
+        WebhookEvent event = eventRepository.findById(id).orElseThrow();
+        assertEquals(WebhookEventStatus.PROCESSING, event.getStatus());
+        assertEquals("lote-nuevo", event.getClaimToken());
+        assertNull(event.getLastError());
+    }
+
+    private Long pending(String dataId) {
+        LocalDateTime now = LocalDateTime.now();
+        return eventRepository.save(WebhookEvent.builder()
+                .type("payment")
+                .action("payment.updated")
+                .dataId(dataId)
+                .status(WebhookEventStatus.PENDING)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build()).getId();
+    }
+}
@@ -0,0 +1,510 @@
+package inncome.modulo_mp.simulator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Simulador en proceso de la API de MercadoPago para tests, benchmarks y pruebas de carga.
+ *
+ * <p>Implementa los endpoints que usa el modulo: {@code POST /v1/orders},
+ * {@code POST /checkout/preferences}, {@code GET /v1/payments/{id}},
+ * {@code GET /v1/payments/search} y {@code POST /oauth/token}. Permite configurar la
+ * distribucion de latencia, una tasa de errores 500, throttling con 429 y respeta
+ * {@code X-Idempotency-Key}: el mismo key devuelve la misma respuesta sin crear nada nuevo.</p>
+ *
+ * <p>Uso tipico: {@code mercado.pago.base-url=simulator.baseUrl()}.</p>
+ */
+public class MercadoPagoSimulator implements AutoCloseable {
+
+    private static final DateTimeFormatter MP_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+    private static final Pattern PAYMENT_PATH = Pattern.compile("^/v1/payments/(\\d+)$");
+    private static final Pattern RELATIVE_DATE = Pattern.compile("^NOW-(\\d+)(MINUTES|HOURS|DAYS)$");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<Long, ObjectNode> payments = new ConcurrentHashMap<>();
+    private final Map<String, Response> idempotentResponses = new ConcurrentHashMap<>();
+    private final AtomicLong paymentSequence = new AtomicLong(1_000_000_000L);
+    private final AtomicLong orderSequence = new AtomicLong(1);
+
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final Map<String, Queue<String>> accessTokens = new ConcurrentHashMap<>();
+    private final LongAdder searchResults = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+
+    private final AtomicLong rateWindow = new AtomicLong();
+    private final AtomicInteger rateWindowCount = new AtomicInteger();
+
+    private volatile LatencyDistribution latency = LatencyDistribution.none();
+    private volatile double errorRate;
+    private volatile int rateLimitPerSecond;
+    private volatile boolean autoCreateUnknownPayments;
+
+    private MercadoPagoSimulator(int port) throws IOException {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 4096);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Levanta el simulador en un puerto libre.
+     */
+    public static MercadoPagoSimulator start() {
+        try {
+            return new MercadoPagoSimulator(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public MercadoPagoSimulator withLatency(LatencyDistribution latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * @param errorRate proporcion de requests (0..1) que responden 500
+     */
+    public MercadoPagoSimulator withErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * @param rateLimitPerSecond requests por segundo aceptados antes de responder 429; 0 lo desactiva
+     */
+    public MercadoPagoSimulator withRateLimit(int rateLimitPerSecond) {
+        this.rateLimitPerSecond = rateLimitPerSecond;
+        return this;
+    }
+
+    /**
+     * Si esta activo, {@code GET /v1/payments/{id}} de un id desconocido crea un pago aprobado
+     * en lugar de responder 404. Util para tormentas de webhooks.
+     */
+    public MercadoPagoSimulator withAutoCreateUnknownPayments(boolean autoCreate) {
+        this.autoCreateUnknownPayments = autoCreate;
+        return this;
+    }
+
+    /**
+     * Crea un pago directamente en el simulador, como si el comprador hubiera pagado.
+     *
+     * @return id numerico del pago en MercadoPago
+     */
+    public long createPayment(String status, String statusDetail, String externalReference) {
+        long id = paymentSequence.incrementAndGet();
+        payments.put(id, payment(id, status, statusDetail, "credit_card", "visa", externalReference, 100.0));
+        return id;
+    }
+
+    public void updatePaymentStatus(long id, String status, String statusDetail) {
+        ObjectNode payment = payments.get(id);
+        if (payment != null) {
+            payment.put("status", status);
+            payment.put("status_detail", statusDetail);
+            payment.put("date_last_updated", now());
+        }
+    }
+
+    public long requestCount(String endpoint) {
+        LongAdder count = requests.get(endpoint);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * @return los access tokens (header {@code Authorization: Bearer}) recibidos en el endpoint, en orden
+     */
+    public List<String> accessTokens(String endpoint) {
+        Queue<String> tokens = accessTokens.get(endpoint);
+        return tokens == null ? List.of() : new ArrayList<>(tokens);
+    }
+
+    /**
+     * @return total de pagos devueltos por {@code GET /v1/payments/search}, sumando todas las paginas
+     */
+    public long searchResultCount() {
+        return searchResults.sum();
+    }
+
+    public long throttledCount() {
+        return throttled.sum();
+    }
+
+    public long failedCount() {
+        return failed.sum();
+    }
+
+    public long replayedCount() {
+        return replayed.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            String endpoint = endpointOf(method, path);
+            requests.computeIfAbsent(endpoint, key -> new LongAdder()).increment();
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if (authorization != null && authorization.startsWith("Bearer ")) {
+                accessTokens.computeIfAbsent(endpoint, key -> new ConcurrentLinkedQueue<>()).add(authorization.substring(7));
+            }
+
+            sleep(latency.sampleMillis(ThreadLocalRandom.current()));
+
+            if (isThrottled()) {
+                throttled.increment();
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                send(exchange, error(429, "too_many_requests"));
+                return;
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                failed.increment();
+                send(exchange, error(500, "internal_error"));
+                return;
+            }
+
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            String query = exchange.getRequestURI().getRawQuery();
+            String idempotencyKey = exchange.getRequestHeaders().getFirst("X-Idempotency-Key");
+
+            if ("POST".equals(method) && idempotencyKey != null) {
+                boolean[] created = new boolean[1];
+                Response response = idempotentResponses.computeIfAbsent(endpoint + ":" + idempotencyKey, key -> {
+                    created[0] = true;
+                    return route(method, path, query, body);
+                });
+                if (!created[0]) {
+                    replayed.increment();
+                }
+                send(exchange, response);
+            } else {
+                send(exchange, route(method, path, query, body));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Response route(String method, String path, String query, byte[] body) {
+        try {
+            if ("POST".equals(method) && "/v1/orders".equals(path)) {
+                return createOrder(objectMapper.readTree(body));
+            }
+            if ("POST".equals(method) && "/checkout/preferences".equals(path)) {
+                return createPreference(objectMapper.readTree(body));
+            }
+            if ("POST".equals(method) && "/oauth/token".equals(path)) {
+                return oauthToken(parseQuery(new String(body, StandardCharsets.UTF_8)));
+            }
+            if ("GET".equals(method) && "/v1/payments/search".equals(path)) {
+                return searchPayments(parseQuery(query));
+            }
+            Matcher matcher = PAYMENT_PATH.matcher(path);
+            if ("GET".equals(method) && matcher.matches()) {
+                return getPayment(Long.parseLong(matcher.group(1)));
+            }
+            return error(404, "resource not found");
+        } catch (IOException | RuntimeException e) {
+            return error(400, "bad_request: " + e.getMessage());
+        }
+    }
+
+    private Response createOrder(JsonNode request) {
+        JsonNode requestPayment = request.path("transactions").path("payments").path(0);
+        JsonNode method = requestPayment.path("payment_method");
+        String amount = request.path("total_amount").asText("0");
+        String externalReference = request.path("external_reference").asText(null);
+
+        long paymentId = paymentSequence.incrementAndGet();
+        payments.put(paymentId, payment(paymentId, "approved", "accredited",
+                method.path("type").asText("credit_card"), method.path("id").asText("visa"),
+                externalReference, Double.parseDouble(amount)));
+
+        String now = now();
+        ObjectNode order = objectMapper.createObjectNode();
+        order.put("id", String.format("ORD01SIM%012d", orderSequence.incrementAndGet()));
+        order.put("type", "online");
+        order.put("external_reference", externalReference);
+        order.put("total_amount", amount);
+        order.put("total_paid_amount", amount);
+        order.put("status", "processed");
+        order.put("status_detail", "accredited");
+        order.put("created_date", now);
+        order.put("last_updated_date", now);
+
+        ObjectNode orderPayment = objectMapper.createObjectNode();
+        orderPayment.put("id", "PAY01SIM" + paymentId);
+        orderPayment.put("amount", requestPayment.path("amount").asText(amount));
+        orderPayment.put("status", "processed");
+        orderPayment.put("status_detail", "accredited");
+        orderPayment.set("payment_method", method.deepCopy());
+        order.putObject("transactions").putArray("payments").add(orderPayment);
+
+        return new Response(201, order.toString());
+    }
+
+    private Response createPreference(JsonNode request) {
+        ObjectNode preference = objectMapper.createObjectNode();
+        preference.put("id", "123456789-" + UUID.randomUUID());
+        preference.put("collector_id", 123456789L);
+        preference.put("operation_type", "regular_payment");
+        preference.put("date_created", now());
+        preference.put("init_point", "https://www.mercadopago.com.ar/checkout/v1/redirect?pref_id=sim");
+        preference.set("items", request.path("items").deepCopy());
+        preference.set("payer", request.path("payer").deepCopy());
+        if (request.hasNonNull("external_reference")) {
+            preference.put("external_reference", request.get("external_reference").asText());
+        }
+        if (request.hasNonNull("marketplace_fee")) {
+            preference.set("marketplace_fee", request.get("marketplace_fee"));
+        }
+        return new Response(201, preference.toString());
+    }
+
+    private Response getPayment(long id) {
+        ObjectNode payment = payments.get(id);
+        if (payment == null && autoCreateUnknownPayments) {
+            payment = payments.computeIfAbsent(id, key -> payment(key, "approved", "accredited", "credit_card", "visa", null, 100.0));
+        }
+        return payment == null ? error(404, "Payment not found") : new Response(200, payment.toString());
+    }
+
+    private Response searchPayments(Map<String, String> params) {
+        int limit = Math.min(Integer.parseInt(params.getOrDefault("limit", "30")), 1000);
+        int offset = Integer.parseInt(params.getOrDefault("offset", "0"));
+        String externalReference = params.get("external_reference");
+        String status = params.get("status");
+        OffsetDateTime begin = parseDate(params.get("begin_date"));
+        OffsetDateTime end = parseDate(params.get("end_date"));
+
+        List<ObjectNode> matches = payments.values().stream()
+                .filter(payment -> externalReference == null || externalReference.equals(payment.path("external_reference").asText(null)))
+                .filter(payment -> status == null || status.equals(payment.path("status").asText()))
+                .filter(payment -> {
+                    OffsetDateTime updated = OffsetDateTime.parse(payment.get("date_last_updated").asText(), MP_DATE);
+                    return (begin == null || !updated.isBefore(begin)) && (end == null || !updated.isAfter(end));
+                })
+                .sorted(Comparator.comparing((ObjectNode payment) -> payment.get("date_last_updated").asText()).reversed())
+                .toList();
+
+        ObjectNode response = objectMapper.createObjectNode();
+        ObjectNode paging = response.putObject("paging");
+        paging.put("total", matches.size());
+        paging.put("limit", limit);
+        paging.put("offset", offset);
+        ArrayNode results = response.putArray("results");
+        matches.stream().skip(offset).limit(limit).forEach(results::add);
+        searchResults.add(results.size());
+        return new Response(200, response.toString());
+    }
+
+    private Response oauthToken(Map<String, String> form) {
+        if (!form.containsKey("grant_type")) {
+            return error(400, "invalid_request");
+        }
+        ObjectNode token = objectMapper.createObjectNode();
+        token.put("access_token", "APP_USR-SIM-" + UUID.randomUUID());
+        token.put("token_type", "Bearer");
+        token.put("expires_in", 15552000L);
+        token.put("scope", "offline_access read write");
+        token.put("user_id", "123456789");
+        token.put("refresh_token", "TG-SIM-" + UUID.randomUUID());
+        token.put("public_key", "APP_USR-SIM-PUBLIC-KEY");
+        token.put("live_mode", false);
+        return new Response(200, token.toString());
+    }
+
+    private ObjectNode payment(long id, String status, String statusDetail, String paymentType, String paymentMethod,
+                               String externalReference, double amount) {
+        String now = now();
+        ObjectNode payment = objectMapper.createObjectNode();
+        payment.put("id", id);
+        payment.put("status", status);
+        payment.put("status_detail", statusDetail);
+        payment.put("payment_type_id", paymentType);
+        payment.put("payment_method_id", paymentMethod);
+        payment.put("external_reference", externalReference);
+        payment.put("transaction_amount", amount);
+        payment.put("currency_id", "ARS");
+        payment.put("date_created", now);
+        payment.put("date_last_updated", now);
+        if ("approved".equals(status)) {
+            payment.put("date_approved", now);
+        } else {
+            payment.putNull("date_approved");
+        }
+        return payment;
+    }
+
+    private boolean isThrottled() {
+        int limit = rateLimitPerSecond;
+        if (limit <= 0) {
+            return false;
+        }
+        long second = System.currentTimeMillis() / 1000;
+        long window = rateWindow.get();
+        if (window != second && rateWindow.compareAndSet(window, second)) {
+            rateWindowCount.set(0);
+        }
+        return rateWindowCount.incrementAndGet() > limit;
+    }
+
+    private void send(HttpExchange exchange, Response response) throws IOException {
+        byte[] bytes = response.body().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(response.status(), bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private Response error(int status, String message) {
+        ObjectNode error = objectMapper.createObjectNode();
+        error.put("message", message);
+        error.put("error", message);
+        error.put("status", status);
+        error.putArray("cause");
+        return new Response(status, error.toString());
+    }
+
+    private static String endpointOf(String method, String path) {
+        if (PAYMENT_PATH.matcher(path).matches()) {
+            return method + " /v1/payments/{id}";
+        }
+        return method + " " + path;
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null || query.isBlank()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            String key = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static OffsetDateTime parseDate(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        if ("NOW".equals(value)) {
+            return OffsetDateTime.now(ZoneOffset.UTC);
+        }
+        Matcher relative = RELATIVE_DATE.matcher(value);
+        if (relative.matches()) {
+            long amount = Long.parseLong(relative.group(1));
+            Duration duration = switch (relative.group(2)) {
+                case "MINUTES" -> Duration.ofMinutes(amount);
+                case "HOURS" -> Duration.ofHours(amount);
+                default -> Duration.ofDays(amount);
+            };
+            return OffsetDateTime.now(ZoneOffset.UTC).minus(duration);
+        }
+        return OffsetDateTime.parse(value);
+    }
+
+    private static String now() {
+        return OffsetDateTime.now(ZoneOffset.UTC).format(MP_DATE);
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Response(int status, String body) {
+    }
+
+    /**
+     * Distribucion de latencia simulada por request.
+     */
+    @FunctionalInterface
+    public interface LatencyDistribution {
+
+        long sampleMillis(Random random);
+
+        static LatencyDistribution none() {
+            return random -> 0;
+        }
+
+        static LatencyDistribution fixed(long millis) {
+            return random -> millis;
+        }
+
+        static LatencyDistribution uniform(long minMillis, long maxMillis) {
+            return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+        }
+
+        static LatencyDistribution exponential(long meanMillis) {
+            return random -> (long) (-meanMillis * Math.log(1 - random.nextDouble()));
+        }
+
+        /**
+         * Log-normal: la forma tipica de latencias de una API remota, con cola larga.
+         *
+         * @param medianMillis mediana de la latencia
+         * @param sigma dispersion; 0.5 da un p99 de ~3x la mediana
+         */
+        static LatencyDistribution logNormal(long medianMillis, double sigma) {
+            return random -> (long) (medianMillis * Math.exp(sigma * random.nextGaussian()));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package inncome.modulo_mp.simulator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mercadopago.client.payment.PaymentClient;
+import com.mercadopago.core.MPRequestOptions;
+import com.mercadopago.net.MPDefaultHttpClient;
+import com.mercadopago.resources.payment.Payment;
+import inncome.modulo_mp.config.MPBaseUrlHttpClient;
+import inncome.modulo_mp.config.MPConfig;
+import inncome.modulo_mp.config.MPCredentialRegistry;
+import inncome.modulo_mp.persistence.dto.IdentificationDto;
+import inncome.modulo_mp.persistence.dto.PayerDto;
+import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentStatus;
+import inncome.modulo_mp.persistence.entity.Enum.PaymentType;
+import inncome.modulo_mp.persistence.entity.PaymentEntity;
+import inncome.modulo_mp.service.serviceImpl.PaymentCardStrategy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MercadoPagoSimulatorTest {
+
+    private static final String ORDER_BODY = """
+            {"type":"online","total_amount":"100.00","external_reference":"ref-1",
+             "transactions":{"payments":[{"amount":"100.00","payment_method":{"id":"visa","type":"credit_card"}}]}}
+            """;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient http = HttpClient.newHttpClient();
+
+    private MercadoPagoSimulator simulator;
+
+    @BeforeEach
+    void setUp() {
+        simulator = MercadoPagoSimulator.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        simulator.close();
+    }
+
+    @Test
+    void laEstrategiaDeTarjetaCreaLaOrdenEnElSimulador() throws Exception {
+        MPConfig mpConfig = mock(MPConfig.class);
+        when(mpConfig.getAccessToken()).thenReturn("TEST-TOKEN");
+
+        PaymentCardStrategy strategy = new PaymentCardStrategy(mpConfig, new MPCredentialRegistry(mpConfig), null);
+        ReflectionTestUtils.setField(strategy, "mercadoPagoWebClient", WebClient.create(simulator.baseUrl()));
+        ReflectionTestUtils.setField(strategy, "objectMapper", objectMapper);
+
+        PaymentEntity payment = strategy.generatePayment(cardRequest(), null);
+
+        assertEquals(PaymentStatus.PROCESSED, payment.getStatus());
+        assertEquals(PaymentType.CREDIT_CARD, payment.getPaymentType());
+        assertEquals(1, simulator.requestCount("POST /v1/orders"));
+    }
+
+    @Test
+    void elClienteDelSdkConsultaElPagoEnElSimulador() throws Exception {
+        long paymentId = simulator.createPayment("approved", "accredited", "ref-sdk");
+
+        PaymentClient client = new PaymentClient(new MPBaseUrlHttpClient(new MPDefaultHttpClient(), simulator.baseUrl()));
+        Payment payment = client.get(paymentId, MPRequestOptions.builder().accessToken("TEST-TOKEN").build());
+
+        assertEquals(paymentId, payment.getId());
+        assertEquals("approved", payment.getStatus());
+        assertEquals("ref-sdk", payment.getExternalReference());
+    }
+
+    @Test
+    void elMismoIdempotencyKeyDevuelveLaMismaOrden() throws Exception {
+        HttpResponse<String> first = postOrder("key-1");
+        HttpResponse<String> second = postOrder("key-1");
+        HttpResponse<String> other = postOrder("key-2");
+
+        assertEquals(first.body(), second.body());
+        assertTrue(!first.body().equals(other.body()));
+        assertEquals(1, simulator.replayedCount());
+
+        JsonNode search = get("/v1/payments/search?external_reference=ref-1");
+        assertEquals(2, search.get("paging").get("total").asInt());
+    }
+
+    @Test
+    void respondeTooManyRequestsAlSuperarElLimite() throws Exception {
+        simulator.withRateLimit(2);
+
+        int throttled = 0;
+        for (int i = 0; i < 10; i++) {
+            HttpResponse<String> response = postOrder(null);
+            if (response.statusCode() == 429) {
+                assertTrue(response.headers().firstValue("Retry-After").isPresent());
+                throttled++;
+            }
+        }
+
+        assertTrue(throttled >= 7, "Se esperaban al menos 7 respuestas 429, hubo " + throttled);
+        assertEquals(throttled, simulator.throttledCount());
+    }
+
+    @Test
+    void devuelveTokensOAuth() throws Exception {
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(simulator.baseUrl() + "/oauth/token"))
+                        .header("Content-Type", "application/x-www-form-urlencoded")
+                        .POST(HttpRequest.BodyPublishers.ofString("grant_type=refresh_token&refresh_token=TG-1"))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        JsonNode token = objectMapper.readTree(response.body());
+        assertEquals(200, response.statusCode());
+        assertTrue(token.get("access_token").asText().startsWith("APP_USR-"));
+        assertTrue(token.has("refresh_token"));
+    }
+
+    private HttpResponse<String> postOrder(String idempotencyKey) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(simulator.baseUrl() + "/v1/orders"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(ORDER_BODY));
+        if (idempotencyKey != null) {
+            request.header("X-Idempotency-Key", idempotencyKey);
+        }
+        return http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private JsonNode get(String path) throws Exception {
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(simulator.baseUrl() + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readTree(response.body());
+    }
+
+    private static PaymentRequestDto cardRequest() {
+        return PaymentRequestDto.builder()
+                .totalAmount(100f)
+                .description("Simulador")
+                .splitPayment(false)
+                .paymentTypeId("credit_card")
+                .paymentMethodId("visa")
+                .title("Simulador")
+                .payerName("Juan Pérez")
+                .payer(PayerDto.builder()
+                        .email("juan.perez@email.com")
+                        .identification(IdentificationDto.builder().type("DNI").number("12345678").build())
+                        .build())
+                .currencyId(Optional.of("ARS"))
+                .token(Optional.of("card-token"))
+                .installments(Optional.of(1))
+                .issuerId(Optional.of("24"))
+                .build();
+    }
+}
@@ -0,0 +1,194 @@
+package inncome.modulo_mp.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Agrupamiento de llamadas concurrentes: una sola ejecucion por clave en curso, el mismo
+ * resultado o excepcion para todos, y la clave libre apenas termina.
+ */
+class SingleFlightTest {
+
+    private static final int CALLERS = 16;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final SingleFlight<Long, String> flight = new SingleFlight<>("test", meterRegistry);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+    @AfterEach
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void llamadasConcurrentesDeLaMismaClaveEjecutanUnaSolaVez() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> first = executor.submit(() -> flight.execute(1L, () -> {
+            executions.incrementAndGet();
+            running.countDown();
+            release.await();
+            return "pago-1";
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        List<Future<String>> others = new ArrayList<>();
+        for (int i = 1; i < CALLERS; i++) {
+            others.add(executor.submit(() -> flight.execute(1L, () -> {
+                executions.incrementAndGet();
+                return "otro";
+            })));
+        }
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        assertEquals("pago-1", first.get(5, TimeUnit.SECONDS));
+        for (Future<String> other : others) {
+            assertEquals("pago-1", other.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, executions.get());
+        assertEquals(1.0, calls("executed"));
+        assertEquals(CALLERS - 1.0, calls("coalesced"));
+    }
+
+    @Test
+    void laExcepcionSeComparteConLosQueEsperaban() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> first = executor.submit(() -> flight.execute(1L, () -> {
+            running.countDown();
+            release.await();
+            throw new IllegalStateException("MP no responde");
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        Future<String> second = executor.submit(() -> flight.execute(1L, () -> "no deberia ejecutarse"));
+        awaitCoalesced(1);
+        release.countDown();
+
+        for (Future<String> future : List.of(first, second)) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+        }
+    }
+
+    @Test
+    void laClaveSeLiberaAlTerminar() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+
+        assertEquals("1", flight.execute(1L, () -> String.valueOf(executions.incrementAndGet())));
+        assertEquals("2", flight.execute(1L, () -> String.valueOf(executions.incrementAndGet())));
+        assertThrows(IllegalStateException.class, () -> flight.execute(1L, () -> {
+            throw new IllegalStateException("falla");
+        }));
+        assertEquals("3", flight.execute(1L, () -> String.valueOf(executions.incrementAndGet())));
+    }
+
+    @Test
+    void clavesDistintasNoSeEsperanEntreSi() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> blocked = executor.submit(() -> flight.execute(1L, () -> {
+            release.await();
+            return "pago-1";
+        }));
+
+        assertEquals("pago-2", executor.submit(() -> flight.execute(2L, () -> "pago-2")).get(5, TimeUnit.SECONDS));
+        release.countDown();
+        assertEquals("pago-1", blocked.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void lotesQueSeCruzanEscribenCadaClaveUnaSolaVez() throws Exception {
+        List<Long> written = new ArrayList<>();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // El primer lote toma 1, 2 y 3 y queda escribiendo
+        Future<Map<Long, String>> first = executor.submit(() -> flight.executeAll(List.of(1L, 2L, 3L), keys -> {
+            running.countDown();
+            release.await();
+            return write(keys, written);
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        // El segundo comparte 2 y 3: solo escribe 4 y espera el resto
+        Future<Map<Long, String>> second = executor.submit(() -> flight.executeAll(List.of(2L, 3L, 4L, 4L), keys -> write(keys, written)));
+        awaitCoalesced(2);
+        release.countDown();
+
+        assertEquals(Map.of(1L, "ok-1", 2L, "ok-2", 3L, "ok-3"), first.get(5, TimeUnit.SECONDS));
+        assertEquals(Map.of(2L, "ok-2", 3L, "ok-3", 4L, "ok-4"), second.get(5, TimeUnit.SECONDS));
+        synchronized (written) {
+            assertEquals(List.of(1L, 2L, 3L, 4L), written.stream().sorted().toList());
+        }
+        assertEquals(4.0, calls("executed"));
+        assertEquals(2.0, calls("coalesced"));
+    }
+
+    @Test
+    void loteFallidoPropagaLaExcepcionYLiberaLasClaves() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<Map<Long, String>> first = executor.submit(() -> flight.executeAll(List.of(1L, 2L), keys -> {
+            running.countDown();
+            release.await();
+            throw new IllegalStateException("deadlock en la base");
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        Future<Map<Long, String>> second = executor.submit(() -> flight.executeAll(List.of(2L), keys -> Map.of(2L, "no deberia")));
+        awaitCoalesced(1);
+        release.countDown();
+
+        for (Future<Map<Long, String>> future : List.of(first, second)) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+        }
+        assertEquals(Map.of(1L, "ok-1", 2L, "ok-2"), flight.executeAll(Set.of(1L, 2L), keys -> write(keys, new ArrayList<>())));
+    }
+
+    private static Map<Long, String> write(List<Long> keys, List<Long> written) {
+        synchronized (written) {
+            written.addAll(keys);
+        }
+        return keys.stream().collect(Collectors.toMap(key -> key, key -> "ok-" + key));
+    }
+
+    private double calls(String result) {
+        return meterRegistry.counter("mp.singleflight.calls", "name", "test", "result", result).count();
+    }
+
+    /**
+     * Espera a que los llamadores se sumen a la ejecucion en curso antes de liberarla.
+     */
+    private void awaitCoalesced(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (calls("coalesced") < expected) {
+            assertTrue(System.nanoTime() < deadline, "Los llamadores no se sumaron a la ejecucion en curso");
+            Thread.sleep(5);
+        }
+    }
+}
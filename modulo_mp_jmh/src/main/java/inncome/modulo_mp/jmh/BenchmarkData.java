@@ -0,0 +1,57 @@
+package inncome.modulo_mp.jmh;
+
+import inncome.modulo_mp.persistence.dto.IdentificationDto;
+import inncome.modulo_mp.persistence.dto.PayerDto;
+import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
+
+import java.util.Optional;
+
+/**
+ * Datos fijos compartidos por los benchmarks, equivalentes a un checkout real.
+ */
+final class BenchmarkData {
+
+    static final String ORDER_RESPONSE = """
+            {"id":"ORD01JQ4S4KY8HWQ6NA5PXB65B3D3","type":"online","processing_mode":"automatic",
+             "external_reference":"ext_ref_1234","total_amount":"1500.00","total_paid_amount":"1500.00",
+             "country_code":"ARG","user_id":"1245621468","status":"processed","status_detail":"accredited",
+             "capture_mode":"automatic","created_date":"2025-01-10T17:03:12.123Z",
+             "last_updated_date":"2025-01-10T17:03:14.456Z","integration_data":{"application_id":"130106526144588"},
+             "transactions":{"payments":[{"id":"PAY01JQ4S4KY8HWQ6NA5PXB65B3D3","amount":"1500.00",
+             "paid_amount":"1500.00","reference_id":"0001hyd7bt","status":"processed","status_detail":"accredited",
+             "payment_method":{"id":"visa","type":"credit_card","token":"12345","installments":1}}]}}
+            """;
+
+    static final String PREFERENCE_RESPONSE = """
+            {"id":"123456789-6f1e7a2c-5b8d-4c41-a7e5-3c0f9e1d2b4a","collector_id":123456789,
+             "operation_type":"regular_payment","marketplace":"Inncome","marketplace_fee":150.0,
+             "date_created":"2025-01-10T17:03:12.123-03:00",
+             "items":[{"id":"Expensas","title":"Expensas","description":"Expensas enero","quantity":1,
+                       "currency_id":"ARS","unit_price":1500.0}],
+             "payer":{"email":"juan.perez@email.com","identification":{"type":"DNI","number":"12345678"}},
+             "init_point":"https://www.mercadopago.com.ar/checkout/v1/redirect?pref_id=123456789"}
+            """;
+
+    private BenchmarkData() {
+    }
+
+    static PaymentRequestDto cardRequest() {
+        return PaymentRequestDto.builder()
+                .totalAmount(1500f)
+                .description("Expensas enero")
+                .splitPayment(false)
+                .paymentTypeId("credit_card")
+                .paymentMethodId("visa")
+                .title("Expensas")
+                .payerName("Juan Pérez")
+                .payer(PayerDto.builder()
+                        .email("juan.perez@email.com")
+                        .identification(IdentificationDto.builder().type("DNI").number("12345678").build())
+                        .build())
+                .currencyId(Optional.of("ARS"))
+                .token(Optional.of("ff8080814c11e237014c1ff593b57b4d"))
+                .installments(Optional.of(1))
+                .issuerId(Optional.of("24"))
+                .build();
+    }
+}
@@ -0,0 +1,26 @@
+package inncome.modulo_mp.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Punto de entrada de {@code benchmarks.jar}.
+ *
+ * <p>Acepta los mismos argumentos que {@code org.openjdk.jmh.Main} (filtro por regex,
+ * {@code -f}, {@code -wi}, {@code -rf json}, etc.) y siempre agrega el {@link GCProfiler},
+ * para que cada corrida reporte {@code gc.alloc.rate.norm} (bytes por operacion) junto al tiempo.</p>
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
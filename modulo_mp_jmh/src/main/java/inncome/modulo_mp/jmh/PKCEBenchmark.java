@@ -0,0 +1,58 @@
+package inncome.modulo_mp.jmh;
+
+import inncome.modulo_mp.utils.PKCEUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo del inicio del flujo OAuth: code verifier aleatorio y code challenge SHA-256.
+ *
+ * <p>Se corre tambien con 4 hilos para ver contencion sobre las fuentes de entropia.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class PKCEBenchmark {
+
+    private String verifier;
+
+    @Setup
+    public void setUp() {
+        verifier = PKCEUtil.generateCodeVerifier();
+    }
+
+    @Benchmark
+    public String generateCodeVerifier() {
+        return PKCEUtil.generateCodeVerifier();
+    }
+
+    @Benchmark
+    public String generateCodeChallenge() throws Exception {
+        return PKCEUtil.generateCodeChallenge(verifier);
+    }
+
+    @Benchmark
+    public String verifierAndChallenge() throws Exception {
+        return PKCEUtil.generateCodeChallenge(PKCEUtil.generateCodeVerifier());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String verifierAndChallengeContended() throws Exception {
+        return PKCEUtil.generateCodeChallenge(PKCEUtil.generateCodeVerifier());
+    }
+}
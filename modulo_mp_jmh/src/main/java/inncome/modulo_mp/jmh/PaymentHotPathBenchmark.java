@@ -0,0 +1,93 @@
+package inncome.modulo_mp.jmh;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mercadopago.client.preference.PreferenceItemRequest;
+import com.mercadopago.resources.preference.Preference;
+import com.mercadopago.serialization.Serializer;
+import inncome.modulo_mp.persistence.dto.PaymentRequestDto;
+import inncome.modulo_mp.persistence.entity.PaymentEntity;
+import inncome.modulo_mp.service.serviceImpl.PaymentCardStrategy;
+import inncome.modulo_mp.utils.PaymentUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo de CPU y de allocations por pago de los pasos locales del checkout, sin red.
+ *
+ * <p>Cada metodo mide una pieza que se ejecuta una vez por pago: armado y serializacion
+ * del body de {@code /v1/orders}, parseo de la respuesta, armado de items y de la entidad
+ * a partir de la preferencia del SDK y generacion de la referencia externa.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class PaymentHotPathBenchmark {
+
+    private ObjectMapper objectMapper;
+
+    private PaymentRequestDto dto;
+
+    private byte[] orderResponse;
+
+    private Preference preference;
+
+    private List<PreferenceItemRequest> items;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        dto = BenchmarkData.cardRequest();
+        orderResponse = BenchmarkData.ORDER_RESPONSE.getBytes(StandardCharsets.UTF_8);
+        preference = Serializer.deserializeFromJson(Preference.class, BenchmarkData.PREFERENCE_RESPONSE);
+        items = PaymentUtils.createItemRequest(dto.getTitle(), dto.getDescription(), "ARS", BigDecimal.valueOf(dto.getTotalAmount()));
+    }
+
+    @Benchmark
+    public Map<String, Object> buildOrderBody() {
+        return PaymentUtils.buildOrderBody(dto, "ext_ref_1234");
+    }
+
+    @Benchmark
+    public byte[] buildAndSerializeOrderBody() throws Exception {
+        return objectMapper.writeValueAsBytes(PaymentUtils.buildOrderBody(dto, "ext_ref_1234"));
+    }
+
+    @Benchmark
+    public PaymentEntity parseOrderResponse() throws Exception {
+        JsonNode orderJson = objectMapper.readTree(orderResponse);
+        return PaymentUtils.getPaymentEntityFromOrder(dto, orderJson);
+    }
+
+    @Benchmark
+    public List<PreferenceItemRequest> createItemRequest() {
+        return PaymentUtils.createItemRequest(dto.getTitle(), dto.getDescription(), "ARS", BigDecimal.valueOf(dto.getTotalAmount()));
+    }
+
+    @Benchmark
+    public PaymentEntity getPaymentEntity() {
+        return PaymentUtils.getPaymentEntity(dto, 150.0, 1350.0, items, preference);
+    }
+
+    @Benchmark
+    public String generateExternalReference() {
+        return PaymentCardStrategy.generateExternalReference();
+    }
+}